@@ -0,0 +1,71 @@
+package win.doyto.query.benchmark;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.EntityRowMapper;
+import win.doyto.query.core.JdbcDataAccess;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchInsertBenchmark
+ * <p>
+ * {@code JdbcDataAccess.batchInsert} by multi-row INSERT statements
+ * or by JDBC batches, with different rows per statement.
+ *
+ * @author f0rb on 2021-07-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    @Param({"10000"})
+    private int size;
+
+    @Param({"0", "100", "1000"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean jdbcBatch;
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcDataAccess<BenchEntity, Long, BenchQuery> dataAccess;
+    private List<BenchEntity> entities;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        GlobalConfiguration.instance().setBatchInsertSize(batchSize);
+        GlobalConfiguration.instance().setJdbcBatchInsert(jdbcBatch);
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(
+                new JDBCDriver(), "jdbc:hsqldb:mem:batch" + System.nanoTime(), "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(JdbcDataAccessBenchmark.DDL);
+        dataAccess = new JdbcDataAccess<>(jdbcTemplate, BenchEntity.class, Long.class, EntityRowMapper.of(BenchEntity.class));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        jdbcTemplate.execute("TRUNCATE TABLE t_bench");
+        entities = BenchEntity.build(1, size);
+        entities.forEach(entity -> entity.setId(null));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Benchmark
+    public int batchInsert() {
+        return dataAccess.batchInsert(entities);
+    }
+}
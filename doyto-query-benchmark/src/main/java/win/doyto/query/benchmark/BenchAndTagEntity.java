@@ -0,0 +1,24 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.entity.AbstractPersistable;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * BenchAndTagEntity
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "t_bench_and_tag")
+public class BenchAndTagEntity extends AbstractPersistable<Long> {
+
+    private Long benchId;
+    private Long tagId;
+
+}
@@ -0,0 +1,15 @@
+package win.doyto.query.benchmark;
+
+import win.doyto.query.core.Dialect;
+
+/**
+ * BenchDialect
+ *
+ * @author f0rb on 2021-07-22
+ */
+public class BenchDialect implements Dialect {
+    @Override
+    public String buildPageSql(String sql, int limit, long offset) {
+        return sql + " LIMIT " + limit + (sql.startsWith("SELECT") ? " OFFSET " + offset : "");
+    }
+}
@@ -0,0 +1,61 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.entity.AbstractPersistable;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * BenchEntity
+ *
+ * @author f0rb on 2021-07-22
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = BenchEntity.TABLE)
+public class BenchEntity extends AbstractPersistable<Long> {
+    public static final String TABLE = "t_bench";
+
+    private String name;
+    private String code;
+    private String email;
+    private String mobile;
+    private String nickname;
+    private String memo;
+    private Integer score;
+    private Integer age;
+    private Integer level;
+    private Integer status;
+    private Long amount;
+    private Boolean valid;
+
+    public static BenchEntity build(long i) {
+        BenchEntity entity = new BenchEntity();
+        entity.setName("name" + i);
+        entity.setCode("code" + (i % 1000));
+        entity.setEmail("user" + i + "@doyto.win");
+        entity.setMobile(String.valueOf(17700000000L + i));
+        entity.setNickname("nick" + (i % 100));
+        entity.setMemo(i % 10 == 0 ? null : "memo" + i);
+        entity.setScore((int) (i % 100));
+        entity.setAge((int) (i % 60) + 18);
+        entity.setLevel((int) (i % 5));
+        entity.setStatus((int) (i % 3));
+        entity.setAmount(i * 10);
+        entity.setValid(i % 2 == 0);
+        return entity;
+    }
+
+    public static List<BenchEntity> build(int from, int size) {
+        List<BenchEntity> entities = new ArrayList<>(size);
+        for (int i = from; i < from + size; i++) {
+            entities.add(build(i));
+        }
+        return entities;
+    }
+}
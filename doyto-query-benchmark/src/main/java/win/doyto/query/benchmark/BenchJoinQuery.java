@@ -0,0 +1,29 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.annotation.QueryTableAlias;
+import win.doyto.query.core.PageQuery;
+
+import java.util.List;
+
+/**
+ * BenchJoinQuery
+ *
+ * @author f0rb on 2021-07-22
+ */
+@Getter
+@Setter
+public class BenchJoinQuery extends PageQuery {
+
+    private Boolean tagValid;
+
+    @QueryTableAlias("b")
+    private Integer scoreGe;
+
+    @QueryTableAlias("b")
+    private List<Integer> levelIn;
+
+    @QueryTableAlias("t")
+    private String nameLikeOrCodeLike;
+}
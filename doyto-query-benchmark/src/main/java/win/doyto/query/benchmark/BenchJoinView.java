@@ -0,0 +1,30 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.annotation.Joins;
+
+import javax.persistence.Column;
+import javax.persistence.Table;
+
+/**
+ * BenchJoinView
+ *
+ * @author f0rb on 2021-07-22
+ */
+@Getter
+@Setter
+@Table(name = "t_bench b")
+@Joins(value = {
+    @Joins.Join("left join t_bench_and_tag bt on bt.benchId = b.id"),
+    @Joins.Join("inner join t_tag t on t.id = bt.tagId and t.valid = #{tagValid}")
+}, groupBy = "t.name")
+public class BenchJoinView {
+
+    @Column(name = "t.name")
+    private String tagName;
+
+    @Column(name = "count(b.id)")
+    private Integer benchCount;
+
+}
@@ -0,0 +1,82 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import win.doyto.query.core.PageQuery;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * BenchQuery
+ *
+ * @author f0rb on 2021-07-22
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class BenchQuery extends PageQuery {
+    private List<Long> idIn;
+    private Integer levelGe;
+    private Integer status;
+    private String nameStart;
+    private Boolean valid;
+
+    private Integer scoreGe;
+    private Integer scoreLt;
+    private Integer ageGt;
+    private Integer ageLe;
+    private Long amountGe;
+
+    private Long amountLt;
+    private String codeStart;
+    private String emailLike;
+    private String mobileStart;
+    private String nicknameNotLike;
+
+    private List<Integer> levelIn;
+    private List<Integer> statusNotIn;
+    private Long idGt;
+    private Long idLe;
+    private boolean memoNotNull;
+
+    /**
+     * Build a query which populates the first {@code fieldCount} fields,
+     * and all the collections contain {@code inSize} elements.
+     * All the populated conditions keep most of the rows.
+     */
+    public static BenchQuery build(int fieldCount, int inSize) {
+        BenchQuery query = new BenchQuery();
+        List<Long> ids = LongStream.rangeClosed(1, inSize).boxed().collect(Collectors.toList());
+        List<Integer> ints = IntStream.range(0, inSize).boxed().collect(Collectors.toList());
+        Runnable[] setters = {
+            () -> query.setIdIn(ids),
+            () -> query.setLevelGe(0),
+            () -> query.setStatus(1),
+            () -> query.setNameStart("name"),
+            () -> query.setValid(true),
+            () -> query.setScoreGe(0),
+            () -> query.setScoreLt(100),
+            () -> query.setAgeGt(0),
+            () -> query.setAgeLe(100),
+            () -> query.setAmountGe(0L),
+            () -> query.setAmountLt(Long.MAX_VALUE),
+            () -> query.setCodeStart("code"),
+            () -> query.setEmailLike("doyto"),
+            () -> query.setMobileStart("177"),
+            () -> query.setNicknameNotLike("none"),
+            () -> query.setLevelIn(ints),
+            () -> query.setStatusNotIn(ints),
+            () -> query.setIdGt(0L),
+            () -> query.setIdLe(Long.MAX_VALUE),
+            () -> query.setMemoNotNull(true),
+        };
+        for (int i = 0; i < fieldCount && i < setters.length; i++) {
+            setters[i].run();
+        }
+        return query;
+    }
+}
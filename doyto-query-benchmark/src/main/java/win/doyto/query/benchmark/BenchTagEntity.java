@@ -0,0 +1,25 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.entity.AbstractPersistable;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * BenchTagEntity
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "t_tag")
+public class BenchTagEntity extends AbstractPersistable<Long> {
+
+    private String name;
+    private String code;
+    private Boolean valid;
+
+}
@@ -0,0 +1,22 @@
+package win.doyto.query.benchmark;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.annotation.NestedQuery;
+import win.doyto.query.core.PageQuery;
+
+/**
+ * BenchTagQuery
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+public class BenchTagQuery extends PageQuery {
+
+    @NestedQueries(@NestedQuery(select = "benchId", from = "t_bench_and_tag"))
+    private Long tagId;
+
+    private Integer scoreGe;
+}
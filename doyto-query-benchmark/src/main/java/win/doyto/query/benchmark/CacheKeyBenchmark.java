@@ -0,0 +1,52 @@
+package win.doyto.query.benchmark;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.BuildHelper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheKeyBenchmark
+ * <p>
+ * Query cache keys built by reflection over all the fields
+ * versus by the compiled WHERE clause and the arguments.
+ *
+ * @author f0rb on 2021-07-26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    @Param({"1", "5", "20"})
+    private int fieldCount;
+
+    @Param({"10"})
+    private int inSize;
+
+    private BenchQuery query;
+
+    @Setup
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        query = BenchQuery.build(fieldCount, inSize);
+        query.setPageNumber(3);
+        query.setSort("score,desc;id,asc");
+    }
+
+    @Benchmark
+    public String reflectionToString() {
+        return ToStringBuilder.reflectionToString(query, ToStringStyle.NO_CLASS_NAME_STYLE);
+    }
+
+    @Benchmark
+    public String buildCacheKey() {
+        return BuildHelper.buildCacheKey(query);
+    }
+}
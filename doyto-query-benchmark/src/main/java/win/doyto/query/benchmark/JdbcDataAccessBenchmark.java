@@ -0,0 +1,81 @@
+package win.doyto.query.benchmark;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.JdbcDataAccess;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JdbcDataAccessBenchmark
+ * <p>
+ * Round-trips against an in-memory HSQLDB.
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcDataAccessBenchmark {
+
+    static final String DDL = "create table t_bench (id bigint generated by default as identity (start with 1), " +
+            "name varchar(64), code varchar(64), email varchar(64), mobile varchar(32), nickname varchar(64), " +
+            "memo varchar(255), score int, age int, level int, status int, amount bigint, valid boolean, primary key (id))";
+
+    @Param({"10000"})
+    private int size;
+
+    @Param({"1", "5", "20"})
+    private int fieldCount;
+
+    @Param({"10", "1000"})
+    private int pageSize;
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcDataAccess<BenchEntity, Long, BenchQuery> dataAccess;
+    private BenchQuery query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(
+                new JDBCDriver(), "jdbc:hsqldb:mem:bench" + System.nanoTime(), "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(DDL);
+        dataAccess = new JdbcDataAccess<>(jdbcTemplate, BenchEntity.class, Long.class, new BeanPropertyRowMapper<>(BenchEntity.class));
+        dataAccess.batchInsert(BenchEntity.build(1, size));
+
+        query = BenchQuery.build(fieldCount, 10);
+        query.setIdIn(null);
+        query.setPageSize(pageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Benchmark
+    public List<BenchEntity> query() {
+        return dataAccess.query(query);
+    }
+
+    @Benchmark
+    public long count() {
+        return dataAccess.count(query);
+    }
+
+    @Benchmark
+    public BenchEntity get() {
+        return dataAccess.get(ThreadLocalRandom.current().nextLong(1, size + 1L));
+    }
+}
@@ -0,0 +1,43 @@
+package win.doyto.query.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.JoinQueryBuilder;
+import win.doyto.query.core.SqlAndArgs;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JoinQueryBuilderBenchmark
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JoinQueryBuilderBenchmark {
+
+    private JoinQueryBuilder joinQueryBuilder;
+    private BenchJoinQuery query;
+
+    @Setup
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        joinQueryBuilder = new JoinQueryBuilder(BenchJoinView.class);
+        query = new BenchJoinQuery();
+        query.setTagValid(true);
+        query.setScoreGe(60);
+        query.setLevelIn(Arrays.asList(1, 2, 3));
+        query.setNameLikeOrCodeLike("doyto");
+        query.setPageSize(20);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildJoinSelectAndArgs() {
+        return joinQueryBuilder.buildJoinSelectAndArgs(query);
+    }
+}
@@ -0,0 +1,66 @@
+package win.doyto.query.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.core.MemoryDataAccess;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryDataAccessBenchmark
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MemoryDataAccessBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"1", "5", "20"})
+    private int fieldCount;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    private MemoryDataAccess<BenchEntity, Long, BenchQuery> dataAccess;
+    private BenchQuery query;
+    private BenchQuery pageQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataAccess = new MemoryDataAccess<>(BenchEntity.class, offHeap);
+        for (int i = 0; i < size; i += BATCH_SIZE) {
+            dataAccess.batchInsert(BenchEntity.build(i, Math.min(BATCH_SIZE, size - i)));
+        }
+        query = BenchQuery.build(fieldCount, 10);
+        query.setIdIn(null);
+
+        pageQuery = BenchQuery.build(fieldCount, 10);
+        pageQuery.setIdIn(null);
+        pageQuery.setSort("score,desc;id,asc");
+        pageQuery.setPageNumber(2);
+    }
+
+    @Benchmark
+    public List<BenchEntity> query() {
+        return dataAccess.query(query);
+    }
+
+    @Benchmark
+    public List<BenchEntity> queryPageWithSort() {
+        return dataAccess.query(pageQuery);
+    }
+
+    @Benchmark
+    public long count() {
+        return dataAccess.count(query);
+    }
+}
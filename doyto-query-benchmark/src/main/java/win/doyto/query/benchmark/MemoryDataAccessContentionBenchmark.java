@@ -0,0 +1,89 @@
+package win.doyto.query.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.core.MemoryDataAccess;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * MemoryDataAccessContentionBenchmark
+ * <p>
+ * Patch and read random rows of the same data access from 32 threads.
+ *
+ * @author f0rb on 2021-07-28
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MemoryDataAccessContentionBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"100000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    private MemoryDataAccess<BenchEntity, Long, BenchQuery> dataAccess;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataAccess = new MemoryDataAccess<>(BenchEntity.class, offHeap);
+        for (int i = 0; i < size; i += BATCH_SIZE) {
+            dataAccess.batchInsert(BenchEntity.build(i, Math.min(BATCH_SIZE, size - i)));
+        }
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    private int patchById() {
+        BenchEntity patch = new BenchEntity();
+        patch.setId(randomId());
+        patch.setScore(ThreadLocalRandom.current().nextInt(100));
+        patch.setMemo("patched");
+        return dataAccess.patch(patch);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public int patch() {
+        return patchById();
+    }
+
+    /**
+     * The ids of the threads overlap, so the rows are patched concurrently.
+     */
+    @Benchmark
+    @Threads(32)
+    public int patchByQuery() {
+        long from = ThreadLocalRandom.current().nextLong(100) + 1;
+        BenchQuery query = new BenchQuery();
+        query.setIdIn(LongStream.range(from, from + 10).boxed().collect(Collectors.toList()));
+        BenchEntity patch = new BenchEntity();
+        patch.setScore(ThreadLocalRandom.current().nextInt(100));
+        return dataAccess.patch(patch, query);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(16)
+    public BenchEntity readWriteGet() {
+        return dataAccess.get(randomId());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(16)
+    public int readWritePatch() {
+        return patchById();
+    }
+}
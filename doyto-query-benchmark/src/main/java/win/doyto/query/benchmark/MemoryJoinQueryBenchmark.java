@@ -0,0 +1,92 @@
+package win.doyto.query.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.core.MemoryDataAccess;
+import win.doyto.query.core.MemoryJoinQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryJoinQueryBenchmark
+ * <p>
+ * Each bench row is tagged by 2 of the 100 tags, and the joins and the nested queries run over the tables in memory.
+ *
+ * @author f0rb on 2021-07-28
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MemoryJoinQueryBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int TAG_SIZE = 100;
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    private MemoryJoinQuery<BenchJoinView> memoryJoinQuery;
+    private MemoryDataAccess<BenchEntity, Long, BenchTagQuery> dataAccess;
+    private BenchJoinQuery joinQuery;
+    private BenchTagQuery tagQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataAccess = new MemoryDataAccess<>(BenchEntity.class, false);
+        MemoryDataAccess<BenchAndTagEntity, Long, BenchTagQuery> benchAndTagDataAccess = new MemoryDataAccess<>(BenchAndTagEntity.class, false);
+        for (int i = 0; i < size; i += BATCH_SIZE) {
+            dataAccess.batchInsert(BenchEntity.build(i, Math.min(BATCH_SIZE, size - i)));
+            List<BenchAndTagEntity> benchAndTags = new ArrayList<>();
+            for (long benchId = i + 1L; benchId <= Math.min(i + BATCH_SIZE, size); benchId++) {
+                benchAndTags.add(benchAndTag(benchId, benchId % TAG_SIZE + 1));
+                benchAndTags.add(benchAndTag(benchId, (benchId * 7) % TAG_SIZE + 1));
+            }
+            benchAndTagDataAccess.batchInsert(benchAndTags);
+        }
+        MemoryDataAccess<BenchTagEntity, Long, BenchTagQuery> tagDataAccess = new MemoryDataAccess<>(BenchTagEntity.class, false);
+        List<BenchTagEntity> tags = new ArrayList<>();
+        for (int i = 0; i < TAG_SIZE; i++) {
+            BenchTagEntity tag = new BenchTagEntity();
+            tag.setName("tag" + i);
+            tag.setCode("code" + i);
+            tag.setValid(i % 4 != 0);
+            tags.add(tag);
+        }
+        tagDataAccess.batchInsert(tags);
+
+        memoryJoinQuery = new MemoryJoinQuery<>(BenchJoinView.class);
+        joinQuery = new BenchJoinQuery();
+        joinQuery.setTagValid(true);
+        joinQuery.setScoreGe(60);
+        joinQuery.setLevelIn(Arrays.asList(1, 2, 3));
+        joinQuery.setNameLikeOrCodeLike("1");
+        joinQuery.setSort("benchCount,desc");
+        joinQuery.setPageSize(20);
+
+        tagQuery = new BenchTagQuery();
+        tagQuery.setTagId(8L);
+        tagQuery.setScoreGe(60);
+    }
+
+    private static BenchAndTagEntity benchAndTag(long benchId, long tagId) {
+        BenchAndTagEntity benchAndTag = new BenchAndTagEntity();
+        benchAndTag.setBenchId(benchId);
+        benchAndTag.setTagId(tagId);
+        return benchAndTag;
+    }
+
+    @Benchmark
+    public List<BenchJoinView> hashJoinWithGroupBy() {
+        return memoryJoinQuery.query(joinQuery);
+    }
+
+    @Benchmark
+    public long semiJoin() {
+        return dataAccess.count(tagQuery);
+    }
+}
@@ -0,0 +1,52 @@
+package win.doyto.query.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.QueryBuilder;
+import win.doyto.query.core.SqlAndArgs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueryBuilderBenchmark
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuilderBenchmark {
+
+    @Param({"1", "5", "20"})
+    private int fieldCount;
+
+    @Param({"1", "10", "100"})
+    private int inSize;
+
+    private QueryBuilder queryBuilder;
+    private BenchQuery query;
+    private String[] columns;
+
+    @Setup
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        queryBuilder = new QueryBuilder(BenchEntity.class);
+        query = BenchQuery.build(fieldCount, inSize);
+        query.setPageNumber(3);
+        query.setSort("score,desc;id,asc");
+        columns = new String[]{"id", "name", "code", "score"};
+    }
+
+    @Benchmark
+    public SqlAndArgs buildSelectColumnsAndArgs() {
+        return queryBuilder.buildSelectColumnsAndArgs(query, columns);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildCountAndArgs() {
+        return queryBuilder.buildCountAndArgs(query);
+    }
+}
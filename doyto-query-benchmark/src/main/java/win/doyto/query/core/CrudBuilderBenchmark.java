@@ -0,0 +1,65 @@
+package win.doyto.query.core;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.benchmark.BenchDialect;
+import win.doyto.query.benchmark.BenchEntity;
+import win.doyto.query.benchmark.BenchQuery;
+import win.doyto.query.config.GlobalConfiguration;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CrudBuilderBenchmark
+ * <p>
+ * Located in the core package since {@link CrudBuilder} is package-private.
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrudBuilderBenchmark {
+
+    @Param({"1", "5", "20"})
+    private int fieldCount;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private CrudBuilder<BenchEntity> crudBuilder;
+    private BenchEntity entity;
+    private BenchEntity patch;
+    private List<BenchEntity> entities;
+    private BenchQuery query;
+
+    @Setup
+    public void setUp() {
+        GlobalConfiguration.instance().setDialect(new BenchDialect());
+        crudBuilder = new CrudBuilder<>(BenchEntity.class);
+        entity = BenchEntity.build(1);
+        entities = BenchEntity.build(0, batchSize);
+        patch = new BenchEntity();
+        patch.setMemo("patched");
+        patch.setValid(false);
+        query = BenchQuery.build(fieldCount, 10);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildCreateAndArgs() {
+        return crudBuilder.buildCreateAndArgs(entity);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildBatchCreateAndArgs() {
+        return crudBuilder.buildCreateAndArgs(entities);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildPatchAndArgsWithQuery() {
+        return crudBuilder.buildPatchAndArgsWithQuery(patch, query);
+    }
+}
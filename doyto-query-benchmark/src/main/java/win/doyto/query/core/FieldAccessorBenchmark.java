@@ -0,0 +1,66 @@
+package win.doyto.query.core;
+
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import win.doyto.query.benchmark.BenchEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FieldAccessorBenchmark
+ * <p>
+ * Per-field read cost of the lookup by {@link MethodUtils} used before,
+ * the bound {@link FieldAccessor} and the direct getter as baseline.
+ *
+ * @author f0rb on 2021-07-22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessorBenchmark {
+
+    private BenchEntity entity;
+    private FieldAccessor nameAccessor;
+    private FieldAccessor scoreAccessor;
+
+    @Setup
+    public void setUp() {
+        entity = BenchEntity.build(1);
+        nameAccessor = FieldAccessor.of(BenchEntity.class, "name");
+        scoreAccessor = FieldAccessor.of(BenchEntity.class, "score");
+    }
+
+    @Benchmark
+    public void methodUtils(Blackhole blackhole) throws Exception {
+        blackhole.consume(MethodUtils.invokeMethod(entity, true, "getName"));
+        blackhole.consume(MethodUtils.invokeMethod(entity, true, "getScore"));
+    }
+
+    @Benchmark
+    public void fieldAccessorGetter(Blackhole blackhole) {
+        blackhole.consume(nameAccessor.get(entity));
+        blackhole.consume(scoreAccessor.get(entity));
+    }
+
+    @Benchmark
+    public void fieldAccessorField(Blackhole blackhole) {
+        blackhole.consume(nameAccessor.read(entity));
+        blackhole.consume(scoreAccessor.read(entity));
+    }
+
+    @Benchmark
+    public void registryLookup(Blackhole blackhole) {
+        blackhole.consume(FieldAccessor.of(BenchEntity.class, "name").get(entity));
+        blackhole.consume(FieldAccessor.of(BenchEntity.class, "score").get(entity));
+    }
+
+    @Benchmark
+    public void directGetter(Blackhole blackhole) {
+        blackhole.consume(entity.getName());
+        blackhole.consume(entity.getScore());
+    }
+}
@@ -0,0 +1,17 @@
+package win.doyto.query.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.Map;
+
+/**
+ * BatchCache
+ * <p>
+ * Cache which writes multiple entries by one call, e.g. by a pipeline or MSET of Redis.
+ *
+ * @author f0rb on 2021-07-26
+ */
+public interface BatchCache extends Cache {
+
+    void putAll(Map<Object, Object> entries);
+}
@@ -0,0 +1,29 @@
+package win.doyto.query.cache;
+
+import java.util.function.BiConsumer;
+
+/**
+ * CacheInvalidationBroadcaster
+ * <p>
+ * Hook to broadcast the evictions of the near caches to the other nodes,
+ * e.g. by a Redis channel or a message queue.
+ *
+ * @author f0rb on 2021-07-26
+ */
+public interface CacheInvalidationBroadcaster {
+
+    /**
+     * Broadcast the eviction of the key, or the clearing of the cache when the key is null.
+     */
+    void publish(String cacheName, Object key);
+
+    /**
+     * Register the listener receiving the cache name and the key of every eviction.
+     */
+    void subscribe(BiConsumer<String, Object> listener);
+
+    /**
+     * Remove the listener registered by {@link #subscribe}.
+     */
+    void unsubscribe(BiConsumer<String, Object> listener);
+}
@@ -0,0 +1,95 @@
+package win.doyto.query.cache;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CacheStats
+ * <p>
+ * Counters of the coalesced cache loads grouped by the cache name,
+ * and counters of the puts of the write-behind queue.
+ *
+ * @author f0rb on 2021-07-26
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CacheStats {
+
+    private static final Map<String, LongAdder> coalescedLoadMap = new ConcurrentHashMap<>();
+    static final LongAdder enqueuedWrites = new LongAdder();
+    static final LongAdder coalescedWrites = new LongAdder();
+    static final LongAdder droppedWrites = new LongAdder();
+    static final LongAdder writtenWrites = new LongAdder();
+    static final LongAdder failedWrites = new LongAdder();
+
+    static void recordCoalescedLoad(String cacheName) {
+        coalescedLoadMap.computeIfAbsent(cacheName, name -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return the number of the cache misses which waited for the in-flight load of the same key
+     * instead of loading again
+     */
+    public static long getCoalescedLoads(String cacheName) {
+        LongAdder adder = coalescedLoadMap.get(cacheName);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    public static long getCoalescedLoads() {
+        return coalescedLoadMap.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * @return the number of the puts added to the write-behind queue
+     */
+    public static long getEnqueuedWrites() {
+        return enqueuedWrites.sum();
+    }
+
+    /**
+     * @return the number of the puts which replaced the pending values of the same keys
+     */
+    public static long getCoalescedWrites() {
+        return coalescedWrites.sum();
+    }
+
+    /**
+     * @return the number of the puts dropped since the write-behind queue was full
+     */
+    public static long getDroppedWrites() {
+        return droppedWrites.sum();
+    }
+
+    /**
+     * @return the number of the entries written into the caches
+     */
+    public static long getWrittenWrites() {
+        return writtenWrites.sum();
+    }
+
+    /**
+     * @return the number of the entries failed to write into the caches
+     */
+    public static long getFailedWrites() {
+        return failedWrites.sum();
+    }
+
+    /**
+     * @return the number of the puts waiting in the write-behind queue
+     */
+    public static int getPendingWrites() {
+        return CacheUtil.cacheWriter.size();
+    }
+
+    public static void reset() {
+        coalescedLoadMap.clear();
+        enqueuedWrites.reset();
+        coalescedWrites.reset();
+        droppedWrites.reset();
+        writtenWrites.reset();
+        failedWrites.reset();
+    }
+}
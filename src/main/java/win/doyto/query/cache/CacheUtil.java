@@ -7,7 +7,9 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.support.NoOpCache;
 import win.doyto.query.core.Invocable;
 
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 /**
  * CacheUtil
@@ -18,13 +20,13 @@ import java.util.concurrent.*;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class CacheUtil {
 
-    private static final int MAXIMUM_POOL_SIZE = 4;
-    private static final ExecutorService executorService = new ThreadPoolExecutor(
-            Math.min(Runtime.getRuntime().availableProcessors() / 4 + 1, MAXIMUM_POOL_SIZE), MAXIMUM_POOL_SIZE,
-            1, TimeUnit.MINUTES, new SynchronousQueue<>(),
-            new RenameThreadFactory(), new ThreadPoolExecutor.DiscardOldestPolicy());
+    static final CacheWriter cacheWriter = CacheWriter.createDefault(new RenameThreadFactory());
 
     public static final Cache noOpCache = new NoOpCache("noop");
+    /**
+     * The in-flight loads striped by the cache name, so that clearing a cache only visits its own loads.
+     */
+    private static final Map<String, Map<Object, Flight>> inFlightMap = new ConcurrentHashMap<>();
 
     @SuppressWarnings("unchecked")
     public static <V> V invoke(Cache cache, Object key, Invocable<V> invocable) {
@@ -39,9 +41,193 @@ class CacheUtil {
         } catch (Exception e) {
             log.error(String.format("Cache#get failed: [cache=%s, key=%s]", cache.getName(), key), e);
         }
-        V value = invocable.invoke();
-        executorService.execute(() -> cache.put(key, value));
-        return value;
+        return load(cache, key, invocable);
+    }
+
+    private static Map<Object, Flight> flights(Cache cache) {
+        return inFlightMap.computeIfAbsent(cache.getName(), name -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Concurrent misses of the same key share a single in-flight load.
+     * The load invalidated by {@link #evict} or {@link #clear} is not written to the cache,
+     * and the misses after the invalidation start a new load.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V load(Cache cache, Object key, Invocable<V> invocable) {
+        String cacheName = cache.getName();
+        Map<Object, Flight> flights = flights(cache);
+        Flight flight = new Flight();
+        Flight inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            // intentionally use ==
+            if (inFlight.owner == Thread.currentThread()) {
+                return invocable.invoke();
+            }
+            CacheStats.recordCoalescedLoad(cacheName);
+            return (V) inFlight.await();
+        }
+        try {
+            V value = invocable.invoke();
+            complete(cache, key, flight, value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static void complete(Cache cache, Object key, Flight flight, Object value) {
+        flight.future.complete(value);
+        synchronized (flight) {
+            if (!flight.invalidated) {
+                cacheWriter.write(cache, key, value);
+            }
+        }
+    }
+
+    /**
+     * The batch version of {@link #invoke}: the misses are loaded by one call of the loader,
+     * and share the in-flight loads of the same keys the same way as {@link #load}.
+     * The flights of this batch are completed before waiting for the others,
+     * so the concurrent batches never wait for each other.
+     *
+     * @param keyMap the cache keys of the ids
+     * @param loader load the values of the missed ids, and the absent ones are cached as null
+     * @return the values of the ids, including the null ones
+     */
+    @SuppressWarnings("unchecked")
+    static <I, V> Map<I, V> invokeAll(Cache cache, Map<I, String> keyMap, Function<List<I>, Map<I, V>> loader) {
+        if (cache instanceof NoOpCache) {
+            return loader.apply(new ArrayList<>(keyMap.keySet()));
+        }
+        Map<I, V> valueMap = new HashMap<>();
+        List<I> missedIds = new ArrayList<>();
+        keyMap.forEach((id, key) -> {
+            Cache.ValueWrapper valueWrapper = get(cache, key);
+            if (valueWrapper == null) {
+                missedIds.add(id);
+            } else {
+                valueMap.put(id, (V) valueWrapper.get());
+            }
+        });
+        if (!missedIds.isEmpty()) {
+            loadAll(cache, keyMap, missedIds, loader, valueMap);
+        }
+        return valueMap;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <I, V> void loadAll(Cache cache, Map<I, String> keyMap, List<I> missedIds,
+                                       Function<List<I>, Map<I, V>> loader, Map<I, V> valueMap) {
+        Map<Object, Flight> flights = flights(cache);
+        Map<I, Flight> ownFlights = new HashMap<>();
+        Map<I, Flight> otherFlights = new LinkedHashMap<>();
+        List<I> loadIds = new ArrayList<>();
+        for (I id : missedIds) {
+            Flight flight = new Flight();
+            Flight inFlight = flights.putIfAbsent(keyMap.get(id), flight);
+            if (inFlight == null) {
+                ownFlights.put(id, flight);
+                loadIds.add(id);
+                continue;
+            }
+            // intentionally use ==
+            if (inFlight.owner == Thread.currentThread()) {
+                loadIds.add(id);
+            } else {
+                otherFlights.put(id, inFlight);
+            }
+        }
+        try {
+            Map<I, V> loaded = loadIds.isEmpty() ? Collections.emptyMap() : loader.apply(loadIds);
+            for (I id : loadIds) {
+                valueMap.put(id, loaded.get(id));
+            }
+            ownFlights.forEach((id, flight) -> complete(cache, keyMap.get(id), flight, loaded.get(id)));
+        } catch (RuntimeException | Error e) {
+            ownFlights.values().forEach(flight -> flight.future.completeExceptionally(e));
+            throw e;
+        } finally {
+            ownFlights.forEach((id, flight) -> flights.remove(keyMap.get(id), flight));
+        }
+        otherFlights.forEach((id, flight) -> {
+            CacheStats.recordCoalescedLoad(cache.getName());
+            valueMap.put(id, (V) flight.await());
+        });
+    }
+
+    /**
+     * @return null if the key is not cached or the cache fails
+     */
+    static Cache.ValueWrapper get(Cache cache, Object key) {
+        if (cache instanceof NoOpCache) {
+            return null;
+        }
+        try {
+            return cache.get(key);
+        } catch (Exception e) {
+            log.error(String.format("Cache#get failed: [cache=%s, key=%s]", cache.getName(), key), e);
+            return null;
+        }
+    }
+
+    static void put(Cache cache, Object key, Object value) {
+        if (!(cache instanceof NoOpCache)) {
+            cacheWriter.write(cache, key, value);
+        }
+    }
+
+    static void evict(Cache cache, Object key) {
+        Flight flight = flights(cache).remove(key);
+        if (flight != null) {
+            flight.invalidate();
+        }
+        cacheWriter.cancel(cache, key);
+        cache.evict(key);
+    }
+
+    static void clear(Cache cache) {
+        Map<Object, Flight> flights = flights(cache);
+        for (Object key : flights.keySet()) {
+            Flight flight = flights.remove(key);
+            if (flight != null) {
+                flight.invalidate();
+            }
+        }
+        cacheWriter.cancel(cache);
+        cache.clear();
+    }
+
+    private static final class Flight {
+        private final Thread owner = Thread.currentThread();
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private boolean invalidated;
+
+        /**
+         * Synchronized with the cache write of the owner, so the write is either skipped
+         * or enqueued before the pending writes of the key are canceled.
+         */
+        synchronized void invalidate() {
+            invalidated = true;
+        }
+
+        Object await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
     }
 
     private static class RenameThreadFactory implements ThreadFactory {
@@ -3,6 +3,10 @@ package win.doyto.query.cache;
 import org.springframework.cache.Cache;
 import win.doyto.query.core.Invocable;
 
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
 /**
  * CacheWrapper
  *
@@ -18,15 +22,35 @@ public interface CacheWrapper<T> {
         return CacheUtil.invoke(getCache(), key, invocable);
     }
 
+    /**
+     * @param keyMap the cache keys of the ids
+     * @param loader load the values of the missed ids by one call
+     * @return the values of the ids, including the null ones
+     */
+    default <I> Map<I, T> executeAll(Map<I, String> keyMap, Function<List<I>, Map<I, T>> loader) {
+        return CacheUtil.invokeAll(getCache(), keyMap, loader);
+    }
+
+    /**
+     * @return null if the key is not cached
+     */
+    default Cache.ValueWrapper get(String key) {
+        return CacheUtil.get(getCache(), key);
+    }
+
+    default void put(String key, T value) {
+        CacheUtil.put(getCache(), key, value);
+    }
+
     void setCache(Cache cache);
 
     Cache getCache();
 
     default void evict(String key) {
-        getCache().evict(key);
+        CacheUtil.evict(getCache(), key);
     }
 
     default void clear() {
-        getCache().clear();
+        CacheUtil.clear(getCache());
     }
 }
@@ -0,0 +1,183 @@
+package win.doyto.query.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import win.doyto.query.config.GlobalConfiguration;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * CacheWriter
+ * <p>
+ * Write-behind queue of the cache puts. The pending puts are bounded by
+ * {@link GlobalConfiguration#getCacheWriteQueueCapacity()}, a put to a key which is still pending
+ * replaces the pending value, and the puts exceeding the capacity are dropped.
+ * The puts are written by a single drain task in batches, and caches implementing
+ * {@link BatchCache} receive each batch by one call.
+ *
+ * @author f0rb on 2021-07-26
+ */
+@Slf4j
+final class CacheWriter {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Executor defaultExecutor;
+    private final Object lock = new Object();
+    private final LinkedHashMap<WriteKey, Object> pendingMap = new LinkedHashMap<>();
+    private boolean draining = false;
+
+    CacheWriter(Executor defaultExecutor) {
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    static CacheWriter createDefault(ThreadFactory threadFactory) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return new CacheWriter(executor);
+    }
+
+    void write(Cache cache, Object key, Object value) {
+        boolean schedule;
+        synchronized (lock) {
+            WriteKey writeKey = new WriteKey(cache, key);
+            if (pendingMap.containsKey(writeKey)) {
+                pendingMap.put(writeKey, value);
+                CacheStats.coalescedWrites.increment();
+                return;
+            }
+            if (pendingMap.size() >= GlobalConfiguration.instance().getCacheWriteQueueCapacity()) {
+                CacheStats.droppedWrites.increment();
+                return;
+            }
+            pendingMap.put(writeKey, value);
+            CacheStats.enqueuedWrites.increment();
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        Executor executor = GlobalConfiguration.instance().getCacheWriteExecutor();
+        try {
+            (executor == null ? defaultExecutor : executor).execute(this::drain);
+        } catch (RuntimeException e) {
+            log.error("Failed to schedule the cache writer: {}", e.getMessage());
+            synchronized (lock) {
+                CacheStats.droppedWrites.add(pendingMap.size());
+                pendingMap.clear();
+                draining = false;
+            }
+        }
+    }
+
+    /**
+     * Discard the pending put of the key, which is called before the key is evicted.
+     */
+    void cancel(Cache cache, Object key) {
+        synchronized (lock) {
+            pendingMap.remove(new WriteKey(cache, key));
+        }
+    }
+
+    /**
+     * Discard the pending puts of the cache, which is called before the cache is cleared.
+     */
+    void cancel(Cache cache) {
+        synchronized (lock) {
+            // intentionally use ==
+            pendingMap.keySet().removeIf(writeKey -> writeKey.cache == cache);
+        }
+    }
+
+    int size() {
+        synchronized (lock) {
+            return pendingMap.size();
+        }
+    }
+
+    private void drain() {
+        List<Map.Entry<WriteKey, Object>> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            synchronized (lock) {
+                if (pendingMap.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                Iterator<Map.Entry<WriteKey, Object>> iterator = pendingMap.entrySet().iterator();
+                while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                    Map.Entry<WriteKey, Object> entry = iterator.next();
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                    iterator.remove();
+                }
+            }
+            try {
+                writeBatch(batch);
+            } catch (Error e) {
+                synchronized (lock) {
+                    draining = false;
+                }
+                throw e;
+            }
+            batch.clear();
+        }
+    }
+
+    private static void writeBatch(List<Map.Entry<WriteKey, Object>> batch) {
+        Map<Cache, Map<Object, Object>> cacheEntriesMap = new IdentityHashMap<>();
+        for (Map.Entry<WriteKey, Object> entry : batch) {
+            cacheEntriesMap.computeIfAbsent(entry.getKey().cache, cache -> new LinkedHashMap<>())
+                           .put(entry.getKey().key, entry.getValue());
+        }
+        cacheEntriesMap.forEach((cache, entries) -> {
+            if (cache instanceof BatchCache && entries.size() > 1) {
+                write(cache, entries.size(), () -> ((BatchCache) cache).putAll(entries));
+            } else {
+                entries.forEach((key, value) -> write(cache, 1, () -> cache.put(key, value)));
+            }
+        });
+    }
+
+    private static void write(Cache cache, int size, Runnable writer) {
+        try {
+            writer.run();
+            CacheStats.writtenWrites.add(size);
+        } catch (RuntimeException e) {
+            CacheStats.failedWrites.add(size);
+            log.error("Cache#put failed: [cache={}, size={}]: {}", cache.getName(), size, e.getMessage());
+        }
+    }
+
+    private static final class WriteKey {
+        private final Cache cache;
+        private final Object key;
+
+        WriteKey(Cache cache, Object key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WriteKey)) {
+                return false;
+            }
+            WriteKey writeKey = (WriteKey) o;
+            // intentionally use ==
+            return cache == writeKey.cache && key.equals(writeKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cache) + key.hashCode();
+        }
+    }
+}
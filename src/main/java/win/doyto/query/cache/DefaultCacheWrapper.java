@@ -1,8 +1,11 @@
 package win.doyto.query.cache;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.support.NoOpCache;
 import win.doyto.query.config.GlobalConfiguration;
 
 /**
@@ -15,10 +18,23 @@ import win.doyto.query.config.GlobalConfiguration;
 class DefaultCacheWrapper<V> implements CacheWrapper<V> {
 
     private Cache cache = CacheUtil.noOpCache;
+    @Getter(AccessLevel.NONE)
+    private NearCache nearCache;
 
     @Override
-    public void setCache(Cache cache) {
-        this.cache = GlobalConfiguration.instance().isIgnoreCacheException() ? CacheProxy.wrap(cache) : cache;
+    public synchronized void setCache(Cache cache) {
+        GlobalConfiguration globalConfiguration = GlobalConfiguration.instance();
+        if (nearCache != null) {
+            nearCache.close();
+            nearCache = null;
+        }
+        Cache target = cache;
+        if (globalConfiguration.getNearCacheSize() > 0 && !(cache instanceof NoOpCache || cache instanceof ConcurrentMapCache)) {
+            nearCache = new NearCache(cache, globalConfiguration.getNearCacheSize(),
+                                      globalConfiguration.getNearCacheTtl(), globalConfiguration.getCacheInvalidationBroadcaster());
+            target = nearCache;
+        }
+        this.cache = globalConfiguration.isIgnoreCacheException() ? CacheProxy.wrap(target) : target;
     }
 
 }
@@ -0,0 +1,33 @@
+package win.doyto.query.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * LocalCacheInvalidationBroadcaster
+ * <p>
+ * In-process stand-in of {@link CacheInvalidationBroadcaster} which delivers
+ * the evictions to the listeners synchronously, for tests and single node deployment.
+ *
+ * @author f0rb on 2021-07-26
+ */
+public class LocalCacheInvalidationBroadcaster implements CacheInvalidationBroadcaster {
+
+    private final List<BiConsumer<String, Object>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String cacheName, Object key) {
+        listeners.forEach(listener -> listener.accept(cacheName, key));
+    }
+
+    @Override
+    public void subscribe(BiConsumer<String, Object> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(BiConsumer<String, Object> listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,215 @@
+package win.doyto.query.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+
+/**
+ * NearCache
+ * <p>
+ * Two-level cache which keeps the hot entries of a remote cache in a bounded in-process
+ * LRU map, and the entries expire after the TTL so that a missed invalidation
+ * only leaves a stale entry for a limited time. The evictions and the clearings are
+ * broadcast to the near caches of the other nodes by the {@link CacheInvalidationBroadcaster}.
+ * <p>
+ * A value read from the remote cache is not kept locally if any entry is invalidated during the read,
+ * otherwise an eviction racing with the read would leave the stale value until the TTL.
+ *
+ * @author f0rb on 2021-07-26
+ */
+public class NearCache implements BatchCache {
+
+    private final Cache remote;
+    private final long ttlMillis;
+    private final CacheInvalidationBroadcaster broadcaster;
+    private final Map<Object, LocalEntry> localMap;
+    private final BiConsumer<String, Object> listener = this::onInvalidated;
+    private long invalidations;
+
+    public NearCache(Cache remote, int maximumSize, long ttlMillis, CacheInvalidationBroadcaster broadcaster) {
+        this.remote = remote;
+        this.ttlMillis = ttlMillis;
+        this.broadcaster = broadcaster;
+        this.localMap = new LinkedHashMap<Object, LocalEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, LocalEntry> eldest) {
+                return size() > maximumSize;
+            }
+        };
+        if (broadcaster != null) {
+            broadcaster.subscribe(listener);
+        }
+    }
+
+    /**
+     * Stop receiving the invalidations broadcast by the other nodes, when the near cache is replaced.
+     */
+    public void close() {
+        if (broadcaster != null) {
+            broadcaster.unsubscribe(listener);
+        }
+    }
+
+    private void onInvalidated(String cacheName, Object key) {
+        if (getName().equals(cacheName)) {
+            if (key == null) {
+                clearLocal();
+            } else {
+                evictLocal(key);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper valueWrapper = getLocal(key);
+        if (valueWrapper == null) {
+            long version = currentInvalidations();
+            valueWrapper = remote.get(key);
+            if (valueWrapper != null) {
+                putLocal(key, valueWrapper, version);
+            }
+        }
+        return valueWrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        Object value = valueWrapper == null ? null : valueWrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            return (T) valueWrapper.get();
+        }
+        long version = currentInvalidations();
+        T value = remote.get(key, valueLoader);
+        putLocal(key, new SimpleValueWrapper(value), version);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        putLocal(key, new SimpleValueWrapper(value));
+    }
+
+    @Override
+    public void putAll(Map<Object, Object> entries) {
+        if (remote instanceof BatchCache) {
+            ((BatchCache) remote).putAll(entries);
+        } else {
+            entries.forEach(remote::put);
+        }
+        entries.forEach((key, value) -> putLocal(key, new SimpleValueWrapper(value)));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        evictLocal(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        evictLocal(key);
+        if (broadcaster != null) {
+            broadcaster.publish(getName(), key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        clearLocal();
+        if (broadcaster != null) {
+            broadcaster.publish(getName(), null);
+        }
+    }
+
+    private ValueWrapper getLocal(Object key) {
+        synchronized (localMap) {
+            LocalEntry localEntry = localMap.get(key);
+            if (localEntry == null) {
+                return null;
+            }
+            if (localEntry.expireAt < System.currentTimeMillis()) {
+                localMap.remove(key);
+                return null;
+            }
+            return localEntry.valueWrapper;
+        }
+    }
+
+    private long currentInvalidations() {
+        synchronized (localMap) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * Keep the value read from the remote cache unless any entry is invalidated since the version.
+     */
+    private void putLocal(Object key, ValueWrapper valueWrapper, long version) {
+        synchronized (localMap) {
+            if (invalidations == version) {
+                putLocal(key, valueWrapper);
+            }
+        }
+    }
+
+    private void putLocal(Object key, ValueWrapper valueWrapper) {
+        synchronized (localMap) {
+            localMap.put(key, new LocalEntry(valueWrapper, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    private void evictLocal(Object key) {
+        synchronized (localMap) {
+            invalidations++;
+            localMap.remove(key);
+        }
+    }
+
+    private void clearLocal() {
+        synchronized (localMap) {
+            invalidations++;
+            localMap.clear();
+        }
+    }
+
+    private static final class LocalEntry {
+        private final ValueWrapper valueWrapper;
+        private final long expireAt;
+
+        LocalEntry(ValueWrapper valueWrapper, long expireAt) {
+            this.valueWrapper = valueWrapper;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -23,6 +23,51 @@ public class DoytoQueryInitializer implements ApplicationContextInitializer<Conf
         configIgnoreCacheException(globalConfiguration, environment);
         configDialect(globalConfiguration, environment);
         configStartPageNumber(globalConfiguration, environment);
+        configBatchInsert(globalConfiguration, environment);
+        configStreamFetchSize(globalConfiguration, environment);
+        configApproximateCount(globalConfiguration, environment);
+        configCacheEviction(globalConfiguration, environment);
+        configParallelScan(globalConfiguration, environment);
+        configMemoryPersistence(globalConfiguration, environment);
+    }
+
+    private void configMemoryPersistence(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setMemoryDataDirectory(environment.getProperty(
+                getKey("memory-data-directory"), globalConfiguration.getMemoryDataDirectory()));
+        globalConfiguration.setMemorySnapshotInterval(environment.getProperty(
+                getKey("memory-snapshot-interval"), int.class, globalConfiguration.getMemorySnapshotInterval()));
+        globalConfiguration.setMemoryOffHeap(environment.getProperty(
+                getKey("memory-off-heap"), boolean.class, globalConfiguration.isMemoryOffHeap()));
+    }
+
+    private void configParallelScan(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setParallelScanThreshold(environment.getProperty(
+                getKey("parallel-scan-threshold"), int.class, globalConfiguration.getParallelScanThreshold()));
+    }
+
+    private void configCacheEviction(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setFineGrainedCacheEviction(environment.getProperty(
+                getKey("fine-grained-cache-eviction"), boolean.class, globalConfiguration.isFineGrainedCacheEviction()));
+        globalConfiguration.setCacheWriteQueueCapacity(environment.getProperty(
+                getKey("cache-write-queue-capacity"), int.class, globalConfiguration.getCacheWriteQueueCapacity()));
+        globalConfiguration.setNearCacheSize(environment.getProperty(
+                getKey("near-cache-size"), int.class, globalConfiguration.getNearCacheSize()));
+        globalConfiguration.setNearCacheTtl(environment.getProperty(
+                getKey("near-cache-ttl"), long.class, globalConfiguration.getNearCacheTtl()));
+    }
+
+    private void configApproximateCount(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setApproximateCountThreshold(environment.getProperty(
+                getKey("approximate-count-threshold"), long.class, globalConfiguration.getApproximateCountThreshold()));
+    }
+
+    private void configStreamFetchSize(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setStreamFetchSize(environment.getProperty(getKey("stream-fetch-size"), int.class, globalConfiguration.getStreamFetchSize()));
+    }
+
+    private void configBatchInsert(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
+        globalConfiguration.setBatchInsertSize(environment.getProperty(getKey("batch-insert-size"), int.class, globalConfiguration.getBatchInsertSize()));
+        globalConfiguration.setJdbcBatchInsert(environment.getProperty(getKey("jdbc-batch-insert"), boolean.class, globalConfiguration.isJdbcBatchInsert()));
     }
 
     private void configStartPageNumber(GlobalConfiguration globalConfiguration, ConfigurableEnvironment environment) {
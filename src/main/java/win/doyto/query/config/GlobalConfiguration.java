@@ -4,8 +4,10 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import win.doyto.query.cache.CacheInvalidationBroadcaster;
 import win.doyto.query.core.Dialect;
 
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 /**
@@ -22,6 +24,70 @@ public class GlobalConfiguration {
     private boolean ignoreCacheException = true;
     private Dialect dialect = new MySQLDialect();
     private Function<Integer, Integer> startPageNumberAdjuster;
+    /**
+     * Max rows per INSERT statement or per JDBC batch for batchInsert, non-positive for unlimited.
+     */
+    private int batchInsertSize = 1000;
+    /**
+     * Execute batchInsert by JDBC batch of single-row INSERT statements instead of multi-row INSERT statements.
+     */
+    private boolean jdbcBatchInsert;
+    /**
+     * Fetch size of the streaming query, 0 for the default of the driver.
+     */
+    private int streamFetchSize = 1000;
+    /**
+     * Count the total of page() concurrently with the query by this executor outside transactions,
+     * null to count after the query.
+     */
+    private Executor pageCountExecutor;
+    /**
+     * Use the approximate count of the dialect for the count without conditions
+     * when the estimated rows reach this threshold, non-positive to always count exactly.
+     */
+    private long approximateCountThreshold;
+    /**
+     * Evict only the cached query results affected by the update or the delete of an entity
+     * instead of clearing them all, which only tracks the results cached by the current node.
+     */
+    private boolean fineGrainedCacheEviction;
+    /**
+     * Max pending puts of the write-behind cache writer, the puts exceeding it are dropped.
+     */
+    private int cacheWriteQueueCapacity = 10000;
+    /**
+     * Executor to run the write-behind cache writer, e.g. a virtual-thread-per-task executor,
+     * null for a single thread which exits when idle.
+     */
+    private Executor cacheWriteExecutor;
+    /**
+     * Max entries of the in-process near cache in front of each remote cache, non-positive to disable.
+     */
+    private int nearCacheSize;
+    /**
+     * Milliseconds for the entries of the near caches to live.
+     */
+    private long nearCacheTtl = 60000L;
+    /**
+     * Hook to broadcast the evictions of the near caches to the other nodes.
+     */
+    private CacheInvalidationBroadcaster cacheInvalidationBroadcaster;
+    /**
+     * Min entities for MemoryDataAccess to filter them by a parallel stream, non-positive to always filter sequentially.
+     */
+    private int parallelScanThreshold = 10000;
+    /**
+     * Directory to persist the entities of MemoryDataAccess by snapshots and write-ahead logs, null to keep them only in memory.
+     */
+    private String memoryDataDirectory;
+    /**
+     * Records of the write-ahead log to trigger a new snapshot, non-positive to write snapshots only on demand.
+     */
+    private int memorySnapshotInterval = 100000;
+    /**
+     * Store the entities of MemoryDataAccess encoded in direct buffers off the heap, which are decoded on every read.
+     */
+    private boolean memoryOffHeap;
 
     public static int adjustStartPageNumber(Integer page) {
         return instance().getStartPageNumberAdjuster().apply(page);
@@ -0,0 +1,17 @@
+package win.doyto.query.config;
+
+/**
+ * MySQL8Dialect
+ * <p>
+ * MySQL supports the window functions since 8.0, so the total count of a page
+ * is queried along with the rows by <i>COUNT(*) OVER()</i>.
+ * Enable it by <i>doyto.query.config.dialect=win.doyto.query.config.MySQL8Dialect</i>.
+ *
+ * @author f0rb on 2021-07-28
+ */
+public class MySQL8Dialect extends MySQLDialect {
+    @Override
+    public boolean supportCountOver() {
+        return true;
+    }
+}
@@ -1,14 +1,21 @@
 package win.doyto.query.config;
 
 import win.doyto.query.core.Dialect;
+import win.doyto.query.core.SqlAndArgs;
 
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * MySQLDialect
+ * <p>
+ * The page of a single table is fetched by a deferred join on the ids,
+ * except for the query selecting a window function like <i>COUNT(*) OVER()</i>,
+ * which must be evaluated over all the rows before the LIMIT.
  *
  * @author f0rb on 2019-07-22
+ * @see MySQL8Dialect
  */
 public class MySQLDialect implements Dialect {
     private static final String LIMIT = " LIMIT ";
@@ -16,13 +23,20 @@ public class MySQLDialect implements Dialect {
     private Pattern fromPtn = Pattern.compile("FROM \\w+", Pattern.CASE_INSENSITIVE);
     private Pattern joinPtn = Pattern.compile("JOIN", Pattern.CASE_INSENSITIVE);
     private Pattern alias = Pattern.compile("(,|SELECT)\\s*([\\w*]+)");
+    private Pattern overPtn = Pattern.compile("\\sOVER\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    @Override
+    public SqlAndArgs buildApproximateCount(String tableName) {
+        return new SqlAndArgs("SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?", Collections.singletonList(tableName));
+    }
 
     @Override
     public String buildPageSql(String sql, int limit, long offset) {
         if (!sql.startsWith("SELECT")) {
             return sql + LIMIT + limit;
         }
-        if (joinPtn.matcher(sql).find()) {
+        if (joinPtn.matcher(sql).find() || overPtn.matcher(sql).find()) {
             return sql + LIMIT + limit + OFFSET + offset;
         }
         return buildPageForSelect(sql, limit, offset);
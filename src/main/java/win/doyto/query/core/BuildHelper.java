@@ -5,15 +5,12 @@ import lombok.NoArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import win.doyto.query.config.GlobalConfiguration;
 
-import java.lang.reflect.Field;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
-import static win.doyto.query.core.CommonUtil.isValidValue;
-import static win.doyto.query.core.CommonUtil.readFieldGetter;
 import static win.doyto.query.core.Constant.*;
 
 /**
@@ -24,36 +21,46 @@ import static win.doyto.query.core.Constant.*;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class BuildHelper {
     private static final Pattern PTN_SORT = Pattern.compile(",(asc|desc)", Pattern.CASE_INSENSITIVE);
-    private static final Map<Class<?>, Field[]> classFieldsMap = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, QueryPlan> queryPlanMap = new ConcurrentHashMap<>();
 
     static String buildStart(String[] columns, String from) {
         return Constant.SELECT + StringUtils.join(columns, SEPARATOR) + FROM + from;
     }
 
     public static String buildWhere(PageQuery query, List<Object> argList) {
-        Class<? extends PageQuery> clazz = query.getClass();
-        initFields(clazz);
-        Field[] fields = classFieldsMap.get(clazz);
-        StringJoiner whereJoiner = new StringJoiner(" AND ", fields.length);
-        for (Field field : fields) {
-            Object value = readFieldGetter(field, query);
-            if (isValidValue(value, field)) {
-                String and = FieldProcessor.execute(field, argList, value);
-                whereJoiner.append(and);
-            }
-        }
-        if (whereJoiner.isEmpty()) {
-            return "";
-        }
-        return WHERE + whereJoiner.toString();
+        return resolveQueryPlan(query.getClass()).buildWhere(query, argList);
+    }
+
+    /**
+     * Build the key for caching the result of the query.
+     */
+    public static String buildCacheKey(PageQuery query) {
+        return resolveQueryPlan(query.getClass()).buildCacheKey(query, true);
     }
 
-    private static void initFields(Class<?> queryClass) {
-        classFieldsMap.computeIfAbsent(queryClass, c -> {
-            Field[] fields = Arrays.stream(c.getDeclaredFields()).filter(CommonUtil::fieldFilter).toArray(Field[]::new);
-            Arrays.stream(fields).forEach(FieldProcessor::init);
-            return fields;
-        });
+    /**
+     * Build the key for caching the count of the query, which is irrelevant to the paging and the sorting.
+     */
+    public static String buildCountCacheKey(PageQuery query) {
+        return resolveQueryPlan(query.getClass()).buildCacheKey(query, false);
+    }
+
+    /**
+     * Resolve the entity properties which the conditions and the sorting of the query depend on.
+     *
+     * @return null if unknown
+     */
+    public static Set<String> resolveQueryProperties(PageQuery query) {
+        return resolveQueryPlan(query.getClass()).resolveProperties(query);
+    }
+
+    static QueryPlan resolveQueryPlan(Class<?> queryClass) {
+        QueryPlan queryPlan = queryPlanMap.get(queryClass);
+        if (queryPlan == null || !queryPlan.isUpToDate()) {
+            queryPlan = new QueryPlan(queryClass);
+            queryPlanMap.put(queryClass, queryPlan);
+        }
+        return queryPlan;
     }
 
     static String buildOrderBy(PageQuery pageQuery) {
@@ -0,0 +1,530 @@
+package win.doyto.query.core;
+
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.core.MemoryDataAccess.FilterExecutor;
+import win.doyto.query.entity.Persistable;
+import win.doyto.query.util.BeanUtil;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import static win.doyto.query.core.CommonUtil.*;
+
+/**
+ * ColumnarDataAccess
+ * <p>
+ * In-memory storage of the entities with Integer or Long ids, as an alternative to {@link MemoryDataAccess}.
+ * Rows are located by a primitive open-addressing map from the ids, and the fields are stored
+ * by {@link MemoryColumn}s, so that the conditions are evaluated by loops over the arrays
+ * and only the entities of the matched rows are built.
+ * <p>
+ * The nested queries are resolved by {@link MemoryNestedQuery} over the tables of {@link MemoryDataAccess}.
+ * <p>
+ * The rows of the deleted entities are compacted when they are more than half of all the rows.
+ * Secondary indexes and persistence are not supported.
+ *
+ * @author f0rb on 2021-07-28
+ */
+@SuppressWarnings({"unchecked", "java:S3740"})
+public class ColumnarDataAccess<E extends Persistable<I>, I extends Serializable, Q extends PageQuery> implements DataAccess<E, I, Q> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private final Class<E> entityClass;
+    private final MethodHandle constructor;
+    private final MemoryColumn[] columns;
+    private final MemoryColumn[] patchColumns;
+    private final Map<String, MemoryColumn> columnMap = new HashMap<>();
+    private final MemoryColumn idColumn;
+    private final FieldAccessor idAccessor;
+    private final boolean longId;
+    private final boolean generateId;
+    private final Map<Class<?>, ColumnCondition[]> conditionsMap = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MemoryNestedQuery[]> nestedQueriesMap = new ConcurrentHashMap<>();
+    private final LongIntHashMap rowMap = new LongIntHashMap();
+    private final BitSet liveRows = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int rowCount;
+    private int deletedRows;
+    private int capacity;
+    private long lastId;
+
+    public ColumnarDataAccess(Class<E> entityClass) {
+        this.entityClass = entityClass;
+        Field[] idFields = FieldUtils.getFieldsWithAnnotation(entityClass, Id.class);
+        Field idField = idFields.length == 1 ? idFields[0] : FieldUtils.getField(entityClass, "id", true);
+        Class<?> idType = idField == null ? null : idField.getType();
+        if (idField != null && !(idField.getGenericType() instanceof Class)) {
+            try {
+                idType = (Class<?>) BeanUtil.getActualTypeArguments(entityClass)[0];
+            } catch (ClassCastException | ArrayIndexOutOfBoundsException e) {
+                // keep the erased type of the id field
+            }
+        }
+        if (idField == null || (idType != Integer.class && idType != Long.class)) {
+            throw new IllegalArgumentException("Integer or Long id is required for columnar storage: " + entityClass.getName());
+        }
+        this.longId = idType == Long.class;
+        this.generateId = idField.isAnnotationPresent(GeneratedValue.class);
+        this.idAccessor = FieldAccessor.of(entityClass, idField);
+
+        List<MemoryColumn> columnList = new ArrayList<>();
+        List<MemoryColumn> patchList = new ArrayList<>();
+        boolean constructible = true;
+        for (Field field : FieldUtils.getAllFields(entityClass)) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            constructible &= !Modifier.isFinal(field.getModifiers());
+            MemoryColumn column = MemoryColumn.of(entityClass, field);
+            columnList.add(column);
+            columnMap.putIfAbsent(field.getName(), column);
+            if (fieldFilter(field) && !field.equals(idField)) {
+                patchList.add(column);
+            }
+        }
+        this.constructor = constructible ? EntityCopier.resolveConstructor(entityClass) : null;
+        if (constructor == null) {
+            throw new IllegalArgumentException("No-arg constructor and non-final fields are required for columnar storage: " + entityClass.getName());
+        }
+        this.columns = columnList.toArray(new MemoryColumn[0]);
+        this.patchColumns = patchList.toArray(new MemoryColumn[0]);
+        this.idColumn = columnMap.get(idField.getName());
+        resize(INITIAL_CAPACITY);
+    }
+
+    private <T> T read(Supplier<T> supplier) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> supplier) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static long toKey(Object id) {
+        return ((Number) id).longValue();
+    }
+
+    @SneakyThrows
+    private E materialize(int row) {
+        E entity = (E) constructor.invoke();
+        for (MemoryColumn column : columns) {
+            column.getAccessor().write(entity, column.copy(row));
+        }
+        return entity;
+    }
+
+    private List<E> materialize(BitSet rows) {
+        List<E> list = new ArrayList<>(rows.cardinality());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            list.add(materialize(row));
+        }
+        return list;
+    }
+
+    private void store(int row, E entity) {
+        for (MemoryColumn column : columns) {
+            column.set(row, column.getAccessor().read(entity));
+        }
+    }
+
+    /**
+     * Insert or replace the row of the entity.
+     *
+     * @return true if the row is replaced
+     */
+    private boolean put(E entity) {
+        Object id = entity.getId();
+        long key = toKey(id);
+        int row = rowMap.get(key);
+        boolean replaced = row != LongIntHashMap.ABSENT;
+        if (!replaced) {
+            if (rowCount == capacity) {
+                resize(capacity << 1);
+            }
+            row = rowCount++;
+            rowMap.put(key, row);
+            liveRows.set(row);
+        }
+        store(row, entity);
+        lastId = Math.max(lastId, key);
+        return replaced;
+    }
+
+    private void resize(int newCapacity) {
+        for (MemoryColumn column : columns) {
+            column.resize(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private void remove(int row) {
+        rowMap.remove(toKey(idColumn.get(row)));
+        for (MemoryColumn column : columns) {
+            column.set(row, null);
+        }
+        liveRows.clear(row);
+        deletedRows++;
+    }
+
+    /**
+     * Move the live rows to the front in order and shrink the columns to fit them,
+     * when the rows of the deleted entities are too many.
+     */
+    private void compactIfSparse() {
+        if (deletedRows <= COMPACT_THRESHOLD || deletedRows <= rowCount >> 1) {
+            return;
+        }
+        int size = 0;
+        for (int row = liveRows.nextSetBit(0); row >= 0; row = liveRows.nextSetBit(row + 1)) {
+            if (row != size) {
+                for (MemoryColumn column : columns) {
+                    column.move(row, size);
+                }
+                rowMap.put(toKey(idColumn.get(size)), size);
+            }
+            size++;
+        }
+        liveRows.clear();
+        liveRows.set(0, size);
+        rowCount = size;
+        deletedRows = 0;
+        resize(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 1));
+    }
+
+    @Override
+    public E get(IdWrapper<I> idWrapper) {
+        return read(() -> {
+            int row = rowMap.get(toKey(idWrapper.getId()));
+            return row == LongIntHashMap.ABSENT ? null : materialize(row);
+        });
+    }
+
+    @Override
+    public List<E> get(Collection<I> ids) {
+        return read(() -> {
+            List<E> list = new ArrayList<>(ids.size());
+            for (I id : ids) {
+                int row = rowMap.get(toKey(id));
+                if (row != LongIntHashMap.ABSENT) {
+                    list.add(materialize(row));
+                }
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public void create(E e) {
+        write(() -> {
+            if (generateId) {
+                long newId = ++lastId;
+                idAccessor.write(e, longId ? (Object) newId : (Object) (int) newId);
+            }
+            return put(e);
+        });
+    }
+
+    @Override
+    public int update(E e) {
+        return write(() -> put(e) ? 1 : 0);
+    }
+
+    @Override
+    public int patch(E patch) {
+        return write(() -> {
+            int row = rowMap.get(toKey(patch.getId()));
+            if (row == LongIntHashMap.ABSENT) {
+                return 0;
+            }
+            patchRow(row, patch);
+            return 1;
+        });
+    }
+
+    private void patchRow(int row, E patch) {
+        for (MemoryColumn column : patchColumns) {
+            Object value = column.getAccessor().read(patch);
+            if (value != null) {
+                column.set(row, value);
+            }
+        }
+    }
+
+    /**
+     * The patch is applied to the rows matching the query, and the id of the patch is left untouched.
+     */
+    @Override
+    public int patch(E p, Q q) {
+        return write(() -> {
+            BitSet rows = filter(q);
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                patchRow(row, p);
+            }
+            return rows.cardinality();
+        });
+    }
+
+    @Override
+    public int delete(IdWrapper<I> idWrapper) {
+        return write(() -> {
+            int row = rowMap.get(toKey(idWrapper.getId()));
+            if (row == LongIntHashMap.ABSENT) {
+                return 0;
+            }
+            remove(row);
+            compactIfSparse();
+            return 1;
+        });
+    }
+
+    @Override
+    public int delete(Q query) {
+        return write(() -> {
+            BitSet rows = filter(query);
+            int count = rows.cardinality();
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                remove(row);
+            }
+            compactIfSparse();
+            return count;
+        });
+    }
+
+    @Override
+    public List<E> query(Q query) {
+        return queryWithTotal(query, total -> {});
+    }
+
+    /**
+     * Only the entities of the rows within the page are built, unless the query is in keyset pagination mode
+     * or sorted by the properties which are not columns.
+     */
+    @Override
+    public List<E> queryWithTotal(Q query, LongConsumer totalConsumer) {
+        return read(() -> {
+            BitSet rows = filter(query);
+            Comparator<Integer> rowComparator = query.getSort() == null ? null : buildRowComparator(query.getSort());
+            if (query.isKeysetPaging() || (query.getSort() != null && rowComparator == null)) {
+                return MemoryDataAccess.paginate(materialize(rows), query,
+                                                 sort -> MemoryDataAccess.comparing(entityClass, sort), totalConsumer);
+            }
+            if (rowComparator != null) {
+                List<Integer> rowList = new ArrayList<>(rows.cardinality());
+                rows.stream().forEach(rowList::add);
+                rowList = MemoryDataAccess.paginate(rowList, query, sort -> rowComparator, totalConsumer);
+                List<E> list = new ArrayList<>(rowList.size());
+                rowList.forEach(row -> list.add(materialize(row)));
+                return list;
+            }
+            totalConsumer.accept(rows.cardinality());
+            return materialize(page(rows, query));
+        });
+    }
+
+    /**
+     * Compare the rows by the values of the columns in the same order as {@link MemoryDataAccess#buildComparator(String)}.
+     *
+     * @return null if any of the sort properties is not a column
+     */
+    private Comparator<Integer> buildRowComparator(String sort) {
+        Comparator<Integer> comparator = null;
+        for (String order : sort.split(";")) {
+            String[] pd = order.split(",");
+            MemoryColumn column = columnMap.get(toCamelCase(pd[0]));
+            if (column == null || pd.length != 2) {
+                return null;
+            }
+            Comparator<Integer> next = (r1, r2) -> MemoryDataAccess.compareValue(column.get(r1), column.get(r2));
+            next = "asc".equalsIgnoreCase(pd[1]) ? next : next.reversed();
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    private static BitSet page(BitSet rows, PageQuery query) {
+        if (!query.needPaging()) {
+            return rows;
+        }
+        BitSet paged = new BitSet();
+        int offset = query.calcOffset();
+        int end = offset + query.getPageSize();
+        int index = 0;
+        for (int row = rows.nextSetBit(0); row >= 0 && index < end; row = rows.nextSetBit(row + 1), index++) {
+            if (index >= offset) {
+                paged.set(row);
+            }
+        }
+        return paged;
+    }
+
+    @Override
+    public long count(Q query) {
+        return read(() -> (long) filter(query).cardinality());
+    }
+
+    @Override
+    public List<I> queryIds(Q query) {
+        return queryColumns(query, (Class<I>) (longId ? Long.class : Integer.class), "id");
+    }
+
+    /**
+     * A single column is read from the rows directly when the query is not sorted.
+     */
+    @Override
+    public <V> List<V> queryColumns(Q q, Class<V> classV, String... columnNames) {
+        MemoryColumn column = columnNames.length == 1 ? columnMap.get(columnNames[0]) : null;
+        if (column == null || q.getSort() != null || q.isKeysetPaging()) {
+            List<E> entities = query(q);
+            List<V> objects = new ArrayList<>(entities.size());
+            for (E e : entities) {
+                objects.add(columnNames.length == 1 ? (V) readField(e, columnNames[0]) : BeanUtil.convertTo(e, classV));
+            }
+            return objects;
+        }
+        return read(() -> {
+            BitSet rows = page(filter(q), q);
+            List<V> objects = new ArrayList<>(rows.cardinality());
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                objects.add((V) column.copy(row));
+            }
+            return objects;
+        });
+    }
+
+    private BitSet filter(Q query) {
+        BitSet rows = (BitSet) liveRows.clone();
+        for (ColumnCondition condition : resolveConditions(query)) {
+            if (rows.isEmpty()) {
+                break;
+            }
+            Object value = readField(condition.queryField, query);
+            if (isValidValue(value, condition.queryField)) {
+                condition.filter(value, rows);
+            }
+        }
+        for (MemoryNestedQuery nestedQuery : resolveNestedQueries(query)) {
+            if (rows.isEmpty()) {
+                break;
+            }
+            Object value = readField(nestedQuery.getQueryField(), query);
+            if (isValidValue(value, nestedQuery.getQueryField())) {
+                filterByNestedQuery(nestedQuery, value, rows);
+            }
+        }
+        return rows;
+    }
+
+    private void filterByNestedQuery(MemoryNestedQuery nestedQuery, Object value, BitSet rows) {
+        MemoryColumn column = columnMap.get(nestedQuery.getColumnName());
+        if (column == null) {
+            throw new IllegalArgumentException("Field [" + nestedQuery.getColumnName() + "] not found in " + entityClass.getName());
+        }
+        Predicate<Object> predicate = nestedQuery.compileColumn(value);
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (!predicate.test(column.get(row))) {
+                rows.clear(row);
+            }
+        }
+    }
+
+    private ColumnCondition[] resolveConditions(Q query) {
+        return conditionsMap.computeIfAbsent(query.getClass(), queryClass -> Arrays
+                .stream(queryClass.getDeclaredFields())
+                .filter(field -> fieldFilter(field) && !field.isAnnotationPresent(NestedQueries.class))
+                .map(field -> new ColumnCondition(field, field.getName(), columnMap, entityClass))
+                .toArray(ColumnCondition[]::new));
+    }
+
+    private MemoryNestedQuery[] resolveNestedQueries(Q query) {
+        return nestedQueriesMap.computeIfAbsent(query.getClass(), queryClass -> Arrays
+                .stream(queryClass.getDeclaredFields())
+                .filter(field -> fieldFilter(field) && field.isAnnotationPresent(NestedQueries.class))
+                .map(field -> new MemoryNestedQuery(field, entityClass))
+                .toArray(MemoryNestedQuery[]::new));
+    }
+
+    /**
+     * Condition of a query field on a column, and a field containing <i>Or</i>
+     * keeps the rows matching any of its split conditions.
+     */
+    private static final class ColumnCondition {
+        private final Field queryField;
+        private final QuerySuffix querySuffix;
+        private final String columnName;
+        private final FilterExecutor.Matcher matcher;
+        private final MemoryColumn column;
+        private final ColumnCondition[] orConditions;
+        private final Class<?> entityClass;
+
+        ColumnCondition(Field queryField, String fieldName, Map<String, MemoryColumn> columnMap, Class<?> entityClass) {
+            this.queryField = queryField;
+            this.entityClass = entityClass;
+            if (containsOr(fieldName)) {
+                this.querySuffix = null;
+                this.columnName = null;
+                this.matcher = null;
+                this.column = null;
+                this.orConditions = Arrays.stream(splitByOr(fieldName))
+                                          .map(name -> new ColumnCondition(queryField, name, columnMap, entityClass))
+                                          .toArray(ColumnCondition[]::new);
+            } else {
+                this.querySuffix = QuerySuffix.resolve(fieldName);
+                this.columnName = querySuffix.resolveColumnName(fieldName);
+                this.matcher = FilterExecutor.get(querySuffix);
+                this.column = columnMap.get(columnName);
+                this.orConditions = null;
+            }
+        }
+
+        void filter(Object value, BitSet rows) {
+            if (orConditions != null) {
+                BitSet matched = new BitSet();
+                for (ColumnCondition orCondition : orConditions) {
+                    BitSet part = (BitSet) rows.clone();
+                    orCondition.filter(value, part);
+                    matched.or(part);
+                }
+                rows.and(matched);
+                return;
+            }
+            if (column == null) {
+                throw new IllegalArgumentException("Field [" + columnName + "] not found in " + entityClass.getName());
+            }
+            if (!column.filter(querySuffix, matcher, value, rows)) {
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    if (!matcher.match(value, column.get(row))) {
+                        rows.clear(row);
+                    }
+                }
+            }
+        }
+    }
+}
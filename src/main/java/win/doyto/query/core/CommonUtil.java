@@ -2,17 +2,12 @@ package win.doyto.query.core;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
-import lombok.SneakyThrows;
-import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.reflect.FieldUtils;
-import org.apache.commons.lang3.reflect.MethodUtils;
 import win.doyto.query.config.GlobalConfiguration;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.persistence.*;
@@ -22,7 +17,6 @@ import javax.persistence.*;
  *
  * @author f0rb on 2019-05-31
  */
-@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 class CommonUtil {
 
@@ -54,26 +48,15 @@ class CommonUtil {
     }
 
     static Object readFieldGetter(Object target, String fieldName) {
-        Object value;
-        try {
-            value = MethodUtils.invokeMethod(target, true, "get" + StringUtils.capitalize(fieldName));
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            log.warn("is/get调用异常 : {}-{}", e.getClass().getName(), e.getMessage());
-            value = readField(target, fieldName);
-        }
-        return value;
+        return FieldAccessor.of(target.getClass(), fieldName).get(target);
     }
 
     static Object readFieldGetter(Field field, Object target) {
-        Object value;
-        try {
-            String fieldName = field.getName();
-            String prefix = field.getType().isAssignableFrom(boolean.class) ? "is" : "get";
-            value = MethodUtils.invokeMethod(target, true, prefix + StringUtils.capitalize(fieldName));
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            log.warn("is/get调用异常 : {}-{}", e.getClass().getName(), e.getMessage());
-            value = readField(field, target);
-        }
+        Object value = FieldAccessor.of(target.getClass(), field).get(target);
+        return convertEnum(field, value);
+    }
+
+    static Object convertEnum(Field field, Object value) {
         if (value instanceof Enum<?>) {
             Enumerated enumerated = field.getAnnotation(Enumerated.class);
             if (enumerated != null && enumerated.value() == EnumType.STRING) {
@@ -85,26 +68,16 @@ class CommonUtil {
         return value;
     }
 
-    @SneakyThrows
     static Object readField(Field field, Object target) {
-        return FieldUtils.readField(field, target, true);
+        return FieldAccessor.of(field).read(target);
     }
 
     static Object readField(Object target, String fieldName) {
-        return readField(getField(target, fieldName), target);
-    }
-
-    static Field getField(Object target, String fieldName) {
-        Field field = FieldUtils.getField(target.getClass(), fieldName, true);
-        if (field == null) {
-            log.warn("Field [{}] not found", fieldName);
-        }
-        return field;
+        return FieldAccessor.of(target.getClass(), fieldName).read(target);
     }
 
-    @SneakyThrows
     static void writeField(Field field, Object target, Object value) {
-        FieldUtils.writeField(field, target, value, true);
+        FieldAccessor.of(field).write(target, value);
     }
 
     public static boolean fieldFilter(Field field) {
@@ -184,4 +157,18 @@ class CommonUtil {
     static boolean isSingleColumn(String... columns) {
         return columns.length == 1 && !columns[0].contains(",");
     }
+
+    /**
+     * @return the values mapped by the keys in the order of the keys, without the absent ones
+     */
+    static <K, V> List<V> mapInOrder(Collection<K> keys, Map<K, V> valueMap) {
+        List<V> list = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            V value = valueMap.get(key);
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
 }
@@ -22,29 +22,33 @@ import static win.doyto.query.core.Constant.*;
 @Slf4j
 final class CrudBuilder<E extends Persistable<?>> extends QueryBuilder {
 
-    private final Field idField;
-    private final List<Field> fields;
+    private final FieldAccessor idAccessor;
+    private final FieldAccessor[] fieldAccessors;
     private final int fieldsSize;
     private final String wildInsertValue;   // ?, ?, ?
     private final String insertColumns;
     private final String wildSetClause;     // column1 = ?, column2 = ?
+    private final boolean dynamicInsert;
 
     public CrudBuilder(Class<E> entityClass) {
         super(entityClass);
-        idField = FieldUtils.getFieldsWithAnnotation(entityClass, Id.class)[0];
+        Field idField = FieldUtils.getFieldsWithAnnotation(entityClass, Id.class)[0];
+        idAccessor = FieldAccessor.of(idField);
 
         // init fields
         Field[] allFields = FieldUtils.getAllFields(entityClass);
         List<Field> tempFields = new ArrayList<>(allFields.length);
         Arrays.stream(allFields).filter(CommonUtil::fieldFilter).forEachOrdered(tempFields::add);
-        fields = Collections.unmodifiableList(tempFields);
+        List<Field> fields = Collections.unmodifiableList(tempFields);
         fieldsSize = fields.size();
+        fieldAccessors = fields.stream().map(field -> FieldAccessor.of(entityClass, field)).toArray(FieldAccessor[]::new);
 
         wildInsertValue = wrapWithParenthesis(StringUtils.join(IntStream.range(0, fieldsSize).mapToObj(i -> PLACE_HOLDER).collect(Collectors.toList()), SEPARATOR));
 
         List<String> columnList = fields.stream().map(CommonUtil::resolveColumn).collect(Collectors.toList());
         insertColumns = wrapWithParenthesis(StringUtils.join(columnList, SEPARATOR));
         wildSetClause = StringUtils.join(columnList.stream().map(c -> c + EQUALS_PLACE_HOLDER).collect(Collectors.toList()), SEPARATOR);
+        dynamicInsert = isDynamicTable(tableName) || isDynamicTable(insertColumns);
 
     }
 
@@ -67,24 +71,30 @@ final class CrudBuilder<E extends Persistable<?>> extends QueryBuilder {
         return updateSql.toString();
     }
 
-    private static void readValueToArgList(List<Field> fields, Object entity, List<Object> argList) {
-        fields.stream().map(field -> readFieldGetter(field, entity)).forEach(argList::add);
+    void readValueToArgList(Object entity, List<Object> argList) {
+        for (FieldAccessor fieldAccessor : fieldAccessors) {
+            argList.add(readValue(fieldAccessor, entity));
+        }
     }
 
-    private static void readValueToArgList(List<Field> fields, Object entity, List<Object> argList, StringJoiner setClauses) {
-        for (Field field : fields) {
-            Object o = readFieldGetter(field, entity);
+    private void readValueToArgList(Object entity, List<Object> argList, StringJoiner setClauses) {
+        for (FieldAccessor fieldAccessor : fieldAccessors) {
+            Object o = readValue(fieldAccessor, entity);
             if (o != null) {
-                setClauses.append(resolveColumn(field) + EQUALS_PLACE_HOLDER);
+                setClauses.append(resolveColumn(fieldAccessor.getField()) + EQUALS_PLACE_HOLDER);
                 argList.add(o);
             }
         }
     }
 
+    private static Object readValue(FieldAccessor fieldAccessor, Object entity) {
+        return convertEnum(fieldAccessor.getField(), fieldAccessor.get(entity));
+    }
+
     public SqlAndArgs buildCreateAndArgs(E testEntity) {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
             String table = resolveTableName(testEntity);
-            readValueToArgList(fields, testEntity, argList);
+            readValueToArgList(testEntity, argList);
             return buildInsertSql(table, replaceHolderInString(testEntity, insertColumns), wildInsertValue);
         });
     }
@@ -93,33 +103,50 @@ final class CrudBuilder<E extends Persistable<?>> extends QueryBuilder {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
             Iterator<E> iterator = entities.iterator();
             E next = iterator.next();
-
-            String insertSql = buildInsertSql(resolveTableName(next), insertColumns, wildInsertValue);
-            StringBuilder insertSqlBuilder = new StringBuilder(insertSql);
-            readValueToArgList(fields, next, argList);
+            readValueToArgList(next, argList);
+            int rows = 1;
             while (iterator.hasNext()) {
-                E entity = iterator.next();
-                readValueToArgList(fields, entity, argList);
-                insertSqlBuilder.append(SEPARATOR).append(wildInsertValue);
+                readValueToArgList(iterator.next(), argList);
+                rows++;
             }
-            if (columns.length > 0) {
-                insertSqlBuilder.append(" ON DUPLICATE KEY UPDATE ");
-                StringJoiner stringJoiner = new StringJoiner(SEPARATOR, columns.length);
-                for (String column : columns) {
-                    stringJoiner.append(column + EQUAL + "VALUES (" + column + ")");
-                }
-                insertSqlBuilder.append(stringJoiner.toString());
+            return buildInsertSql(next, rows, columns);
+        });
+    }
+
+    /**
+     * Build an INSERT statement with placeholders for the given number of rows,
+     * the table and the columns are resolved by the first entity.
+     */
+    String buildInsertSql(E first, int rows, String... columns) {
+        String insertSql = buildInsertSql(resolveTableName(first), insertColumns, wildInsertValue);
+        StringBuilder insertSqlBuilder = new StringBuilder(insertSql.length() + (rows - 1) * (wildInsertValue.length() + SEPARATOR.length()));
+        insertSqlBuilder.append(insertSql);
+        for (int i = 1; i < rows; i++) {
+            insertSqlBuilder.append(SEPARATOR).append(wildInsertValue);
+        }
+        if (columns.length > 0) {
+            insertSqlBuilder.append(" ON DUPLICATE KEY UPDATE ");
+            StringJoiner stringJoiner = new StringJoiner(SEPARATOR, columns.length);
+            for (String column : columns) {
+                stringJoiner.append(column + EQUAL + "VALUES (" + column + ")");
             }
+            insertSqlBuilder.append(stringJoiner.toString());
+        }
+        return replaceHolderInString(first, insertSqlBuilder.toString());
+    }
 
-            return replaceHolderInString(next, insertSqlBuilder.toString());
-        });
+    /**
+     * @return true if the INSERT statement varies with the entities
+     */
+    boolean isDynamicInsert() {
+        return dynamicInsert;
     }
 
     public SqlAndArgs buildUpdateAndArgs(E entity) {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
             String table = resolveTableName(entity);
-            readValueToArgList(fields, entity, argList);
-            argList.add(readField(idField, entity));
+            readValueToArgList(entity, argList);
+            argList.add(idAccessor.read(entity));
             return buildUpdateSql(table, replaceHolderInString(entity, wildSetClause)) + whereId;
         });
     }
@@ -127,7 +154,7 @@ final class CrudBuilder<E extends Persistable<?>> extends QueryBuilder {
     private String buildPatchAndArgs(E entity, List<Object> argList) {
         String table = resolveTableName(entity);
         StringJoiner setClauses = new StringJoiner(SEPARATOR, fieldsSize);
-        readValueToArgList(fields, entity, argList, setClauses);
+        readValueToArgList(entity, argList, setClauses);
         String setClausesText = replaceHolderInString(entity, setClauses.toString());
         return buildUpdateSql(table, setClausesText);
     }
@@ -135,7 +162,7 @@ final class CrudBuilder<E extends Persistable<?>> extends QueryBuilder {
     public SqlAndArgs buildPatchAndArgsWithId(E entity) {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
             String sql = buildPatchAndArgs(entity, argList) + whereId;
-            argList.add(readField(idField, entity));
+            argList.add(idAccessor.read(entity));
             return sql;
         });
     }
@@ -3,7 +3,11 @@ package win.doyto.query.core;
 import win.doyto.query.entity.Persistable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 /**
  * DataAccess
@@ -14,8 +18,26 @@ public interface DataAccess<E extends Persistable<I>, I extends Serializable, Q>
 
     List<E> query(Q query);
 
+    /**
+     * Query entities lazily, the stream should be closed after use.
+     */
+    default Stream<E> stream(Q query) {
+        return query(query).stream();
+    }
+
     long count(Q query);
 
+    /**
+     * Query entities along with the total count of the query if it could be resolved in the same round-trip.
+     *
+     * @param query         query object
+     * @param totalConsumer receives the total count when it is resolved
+     * @return entities
+     */
+    default List<E> queryWithTotal(Q query, LongConsumer totalConsumer) {
+        return query(query);
+    }
+
     <V> List<V> queryColumns(Q q, Class<V> clazz, String... columns);
 
     default E get(I id) {
@@ -24,6 +46,20 @@ public interface DataAccess<E extends Persistable<I>, I extends Serializable, Q>
 
     E get(IdWrapper<I> w);
 
+    /**
+     * Get the entities of the ids, in the order of the ids and without the absent ones.
+     */
+    default List<E> get(Collection<I> ids) {
+        List<E> list = new ArrayList<>(ids.size());
+        for (I id : ids) {
+            E e = get(id);
+            if (e != null) {
+                list.add(e);
+            }
+        }
+        return list;
+    }
+
     default int delete(I id) {
         return delete(IdWrapper.build(id));
     }
@@ -11,4 +11,21 @@ public interface Dialect {
     default String wrapLabel(String fieldName) {
         return fieldName;
     }
+
+    /**
+     * @return true if the total count of a page can be queried along with the rows by <i>COUNT(*) OVER()</i>
+     */
+    default boolean supportCountOver() {
+        return false;
+    }
+
+    /**
+     * Build the query of the estimated row count of a table from the statistics,
+     * which is used instead of <i>SELECT COUNT(*)</i> for large tables without conditions.
+     *
+     * @return null if not supported
+     */
+    default SqlAndArgs buildApproximateCount(String tableName) {
+        return null;
+    }
 }
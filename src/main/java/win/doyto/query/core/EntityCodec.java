@@ -0,0 +1,302 @@
+package win.doyto.query.core;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * EntityCodec
+ * <p>
+ * Compact binary form of the entities for {@link MemoryJournal}. The values are written
+ * field by field in the order of {@link #getFieldNames()}, each with a type tag, so that
+ * the records written by an older layout of the class are still readable by the field names.
+ * Values of unsupported types are written by Java serialization, and so are the whole entities
+ * of classes without a no-arg constructor or with final instance fields.
+ *
+ * @author f0rb on 2021-07-27
+ */
+final class EntityCodec<E> {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte SHORT = 7;
+    private static final byte BYTE = 8;
+    private static final byte CHAR = 9;
+    private static final byte DATE = 10;
+    private static final byte TIMESTAMP = 11;
+    private static final byte DECIMAL = 12;
+    private static final byte ENUM = 13;
+    private static final byte SERIALIZED = 14;
+
+    private final Class<E> entityClass;
+    private final MethodHandle constructor;
+    private final String[] fieldNames;
+    private final FieldAccessor[] fieldAccessors;
+
+    EntityCodec(Class<E> entityClass) {
+        this.entityClass = entityClass;
+        List<Field> fields = new ArrayList<>();
+        boolean codable = true;
+        for (Field field : FieldUtils.getAllFields(entityClass)) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                codable &= !Modifier.isFinal(modifiers);
+                fields.add(field);
+            }
+        }
+        this.constructor = codable ? EntityCopier.resolveConstructor(entityClass) : null;
+        if (constructor == null) {
+            fields.clear();
+        }
+        this.fieldNames = constructor == null ? null : fields.stream().map(Field::getName).toArray(String[]::new);
+        this.fieldAccessors = fields.stream().map(field -> FieldAccessor.of(entityClass, field)).toArray(FieldAccessor[]::new);
+    }
+
+    /**
+     * @return the names of the fields in the written order, null if the entities are written by Java serialization
+     */
+    String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * Resolve the accessors of the fields written by the layout, null for the fields absent now.
+     */
+    FieldAccessor[] resolveLayout(String[] writtenNames) {
+        if (writtenNames == null) {
+            return null;
+        }
+        Map<String, FieldAccessor> accessorMap = new HashMap<>();
+        for (int i = 0; i < fieldAccessors.length; i++) {
+            accessorMap.put(fieldNames[i], fieldAccessors[i]);
+        }
+        return Arrays.stream(writtenNames).map(accessorMap::get).toArray(FieldAccessor[]::new);
+    }
+
+    void writeEntity(DataOutput out, E entity) throws IOException {
+        if (constructor == null) {
+            writeSerialized(out, entity);
+            return;
+        }
+        for (FieldAccessor fieldAccessor : fieldAccessors) {
+            writeValue(out, fieldAccessor.read(entity));
+        }
+    }
+
+    E readEntity(ByteBuffer buffer, FieldAccessor[] layout) {
+        return readEntity(buffer, layout, null);
+    }
+
+    /**
+     * @param selected whether to read the field at the same index of the layout, null to read all the fields
+     */
+    @SuppressWarnings("unchecked")
+    E readEntity(ByteBuffer buffer, FieldAccessor[] layout, boolean[] selected) {
+        if (layout == null) {
+            buffer.get();
+            return (E) readSerialized(buffer);
+        }
+        E entity = newInstance();
+        for (int i = 0; i < layout.length; i++) {
+            FieldAccessor fieldAccessor = layout[i];
+            if (selected != null && !selected[i]) {
+                skipValue(buffer);
+                continue;
+            }
+            Class<?> type = fieldAccessor == null ? null : fieldAccessor.getField().getType();
+            Object value = readValue(buffer, type);
+            // the values no longer fitting the type of the field are skipped
+            if (type != null && (value == null ? !type.isPrimitive() : ClassUtils.primitiveToWrapper(type).isInstance(value))) {
+                fieldAccessor.write(entity, value);
+            }
+        }
+        return entity;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException("No-arg constructor is required to read the fields of " + entityClass.getName());
+        }
+        try {
+            return (E) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create " + entityClass.getName(), e);
+        }
+    }
+
+    static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (Date.class.equals(value.getClass())) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeString(out, ((Enum<?>) value).name());
+        } else {
+            writeSerialized(out, value);
+        }
+    }
+
+    /**
+     * @param type type of the field to read the value into, null to skip the value
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object readValue(ByteBuffer buffer, Class<?> type) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case DOUBLE:
+                return buffer.getDouble();
+            case FLOAT:
+                return buffer.getFloat();
+            case SHORT:
+                return buffer.getShort();
+            case BYTE:
+                return buffer.get();
+            case CHAR:
+                return buffer.getChar();
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(buffer.getLong());
+                timestamp.setNanos(buffer.getInt());
+                return timestamp;
+            case DATE:
+                return new Date(buffer.getLong());
+            case DECIMAL:
+                return new BigDecimal(readString(buffer));
+            case ENUM:
+                String name = readString(buffer);
+                return type != null && type.isEnum() ? Enum.valueOf((Class<Enum>) type, name) : null;
+            case SERIALIZED:
+                return readSerialized(buffer);
+            default:
+                throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    static void skipValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return;
+            case BOOLEAN:
+            case BYTE:
+                buffer.position(buffer.position() + 1);
+                return;
+            case SHORT:
+            case CHAR:
+                buffer.position(buffer.position() + 2);
+                return;
+            case INT:
+            case FLOAT:
+                buffer.position(buffer.position() + 4);
+                return;
+            case LONG:
+            case DOUBLE:
+            case DATE:
+                buffer.position(buffer.position() + 8);
+                return;
+            case TIMESTAMP:
+                buffer.position(buffer.position() + 12);
+                return;
+            case STRING:
+            case DECIMAL:
+            case ENUM:
+            case SERIALIZED:
+                int length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+                return;
+            default:
+                throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSerialized(DataOutput out, Object value) throws IOException {
+        if (!(value instanceof Serializable)) {
+            throw new IOException("Value is not serializable: " + value.getClass().getName());
+        }
+        byte[] bytes = SerializationUtils.serialize((Serializable) value);
+        out.writeByte(SERIALIZED);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Object readSerialized(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return SerializationUtils.deserialize(bytes);
+    }
+}
@@ -0,0 +1,130 @@
+package win.doyto.query.core;
+
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * EntityCopier
+ * <p>
+ * Copies entities field by field with the accessors resolved once per class.
+ * Values of dates, arrays, collections and maps are copied one level deep,
+ * and the other values are shared with the source entity. Classes without a no-arg constructor
+ * or with final instance fields are copied by Java serialization instead.
+ *
+ * @author f0rb on 2021-07-27
+ */
+final class EntityCopier<E> {
+
+    private static final Map<Class<?>, EntityCopier<?>> copierMap = new ConcurrentHashMap<>();
+
+    private final Class<E> entityClass;
+    private final MethodHandle constructor;
+    private final FieldAccessor[] fieldAccessors;
+    private final UnaryOperator<Object>[] valueCopiers;
+
+    @SuppressWarnings("unchecked")
+    private EntityCopier(Class<E> entityClass) {
+        this.entityClass = entityClass;
+        List<Field> fields = new ArrayList<>();
+        boolean copyable = true;
+        for (Field field : FieldUtils.getAllFields(entityClass)) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            copyable &= !Modifier.isFinal(field.getModifiers());
+            fields.add(field);
+        }
+        this.constructor = copyable ? resolveConstructor(entityClass) : null;
+        this.fieldAccessors = fields.stream().map(field -> FieldAccessor.of(entityClass, field)).toArray(FieldAccessor[]::new);
+        this.valueCopiers = fields.stream().map(field -> resolveValueCopier(field.getType())).toArray(UnaryOperator[]::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> EntityCopier<E> of(Class<E> entityClass) {
+        return (EntityCopier<E>) copierMap.computeIfAbsent(entityClass, EntityCopier::new);
+    }
+
+    static MethodHandle resolveConstructor(Class<?> entityClass) {
+        try {
+            Constructor<?> constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static UnaryOperator<Object> resolveValueCopier(Class<?> type) {
+        if (Date.class.isAssignableFrom(type)) {
+            return value -> value == null ? null : ((Date) value).clone();
+        }
+        if (type.isArray()) {
+            return EntityCopier::copyArray;
+        }
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) {
+            return value -> {
+                Object copy = copyContainer(value);
+                return type.isInstance(copy) ? copy : value;
+            };
+        }
+        return UnaryOperator.identity();
+    }
+
+    private static Object copyArray(Object value) {
+        if (value == null) {
+            return null;
+        }
+        int length = Array.getLength(value);
+        Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyContainer(Object value) {
+        if (value instanceof SortedSet) {
+            return new TreeSet<>((SortedSet<Object>) value);
+        } else if (value instanceof Set) {
+            return new LinkedHashSet<>((Set<?>) value);
+        } else if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        } else if (value instanceof SortedMap) {
+            return new TreeMap<>((SortedMap<Object, ?>) value);
+        } else if (value instanceof Map) {
+            return new LinkedHashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    E copy(E entity) {
+        if (entity == null) {
+            return null;
+        }
+        // intentionally use ==
+        if (entity.getClass() != entityClass) {
+            return of((Class<E>) entity.getClass()).copy(entity);
+        }
+        if (constructor == null) {
+            return (E) SerializationUtils.clone((Serializable) entity);
+        }
+        E copy = (E) constructor.invoke();
+        for (int i = 0; i < fieldAccessors.length; i++) {
+            fieldAccessors[i].write(copy, valueCopiers[i].apply(fieldAccessors[i].read(entity)));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,214 @@
+package win.doyto.query.core;
+
+import lombok.SneakyThrows;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.Column;
+
+/**
+ * EntityRowMapper
+ * <p>
+ * A reflection-free replacement of {@link org.springframework.jdbc.core.BeanPropertyRowMapper}.
+ * The columns of a result set are resolved against the fields of the mapped class
+ * only once per column layout, then each row is mapped by typed getters of
+ * {@link ResultSet} and pre-bound setters.
+ *
+ * @author f0rb on 2021-07-22
+ */
+public final class EntityRowMapper<E> implements RowMapper<E> {
+
+    private static final Map<Class<?>, EntityRowMapper<?>> classRowMapperMap = new ConcurrentHashMap<>();
+    private static final ConversionService conversionService = DefaultConversionService.getSharedInstance();
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<E> mappedClass;
+    private final MethodHandle constructor;
+    private final Map<String, ColumnField> columnFieldMap = new HashMap<>();
+    private final Map<String, RowPlan> rowPlanMap = new ConcurrentHashMap<>();
+
+    private EntityRowMapper(Class<E> mappedClass) {
+        this.mappedClass = mappedClass;
+        this.constructor = resolveConstructor(mappedClass);
+        for (Field field : FieldUtils.getAllFields(mappedClass)) {
+            if (!field.getName().startsWith("$") && !Modifier.isStatic(field.getModifiers())) {
+                ColumnField columnField = new ColumnField(mappedClass, field);
+                columnFieldMap.putIfAbsent(normalize(field.getName()), columnField);
+                Column column = field.getAnnotation(Column.class);
+                if (column != null && !column.name().isEmpty()) {
+                    columnFieldMap.putIfAbsent(normalize(column.name()), columnField);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> EntityRowMapper<E> of(Class<E> mappedClass) {
+        return (EntityRowMapper<E>) classRowMapperMap.computeIfAbsent(mappedClass, EntityRowMapper::new);
+    }
+
+    /**
+     * Match a column label with a field name regardless of case and underscores,
+     * the same as BeanPropertyRowMapper does.
+     */
+    private static String normalize(String name) {
+        return StringUtils.remove(name, '_').toLowerCase(Locale.US);
+    }
+
+    @SneakyThrows
+    private static MethodHandle resolveConstructor(Class<?> mappedClass) {
+        Constructor<?> declaredConstructor = mappedClass.getDeclaredConstructor();
+        declaredConstructor.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(declaredConstructor).asType(CONSTRUCTOR_TYPE);
+    }
+
+    @Override
+    public E mapRow(ResultSet rs, int rowNum) throws SQLException {
+        RowPlan rowPlan = resolveRowPlan(rs.getMetaData());
+        E entity = newInstance();
+        ColumnField[] columnFields = rowPlan.columnFields;
+        for (int i = 0; i < columnFields.length; i++) {
+            ColumnField columnField = columnFields[i];
+            if (columnField != null) {
+                columnField.mapColumn(rs, i + 1, entity);
+            }
+        }
+        return entity;
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    private E newInstance() {
+        return (E) (Object) constructor.invokeExact();
+    }
+
+    /**
+     * The plan is cached by the column labels rather than by the metadata object,
+     * so the result sets read by different threads never share any mutable state.
+     */
+    private RowPlan resolveRowPlan(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = JdbcUtils.lookupColumnName(metaData, i + 1);
+        }
+        return rowPlanMap.computeIfAbsent(String.join(",", labels), key -> new RowPlan(labels, columnFieldMap));
+    }
+
+    @Override
+    public String toString() {
+        return "EntityRowMapper{" + mappedClass.getName() + "}";
+    }
+
+    private static final class RowPlan {
+        private final ColumnField[] columnFields;
+
+        RowPlan(String[] labels, Map<String, ColumnField> columnFieldMap) {
+            columnFields = new ColumnField[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                columnFields[i] = columnFieldMap.get(normalize(labels[i]));
+            }
+        }
+    }
+
+    private static final class ColumnField {
+        private final FieldAccessor fieldAccessor;
+        private final boolean primitive;
+        private final ColumnReader columnReader;
+
+        ColumnField(Class<?> mappedClass, Field field) {
+            this.fieldAccessor = FieldAccessor.of(mappedClass, field);
+            Class<?> fieldType = ResolvableType.forField(field, mappedClass).resolve(field.getType());
+            this.primitive = fieldType.isPrimitive();
+            this.columnReader = resolveColumnReader(fieldType);
+        }
+
+        void mapColumn(ResultSet rs, int index, Object entity) throws SQLException {
+            Object value = columnReader.read(rs, index);
+            if (value != null || !primitive) {
+                fieldAccessor.set(entity, value);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+
+    @SuppressWarnings("java:S3776")
+    private static ColumnReader resolveColumnReader(Class<?> type) {
+        if (type == String.class) {
+            return ResultSet::getString;
+        } else if (type == Long.class || type == long.class) {
+            return (rs, i) -> {
+                long value = rs.getLong(i);
+                return value == 0L && rs.wasNull() ? null : value;
+            };
+        } else if (type == Integer.class || type == int.class) {
+            return (rs, i) -> {
+                int value = rs.getInt(i);
+                return value == 0 && rs.wasNull() ? null : value;
+            };
+        } else if (type == Boolean.class || type == boolean.class) {
+            return (rs, i) -> {
+                boolean value = rs.getBoolean(i);
+                return !value && rs.wasNull() ? null : value;
+            };
+        } else if (type == Double.class || type == double.class) {
+            return (rs, i) -> {
+                double value = rs.getDouble(i);
+                return value == 0D && rs.wasNull() ? null : value;
+            };
+        } else if (type == Float.class || type == float.class) {
+            return (rs, i) -> {
+                float value = rs.getFloat(i);
+                return value == 0F && rs.wasNull() ? null : value;
+            };
+        } else if (type == Short.class || type == short.class) {
+            return (rs, i) -> {
+                short value = rs.getShort(i);
+                return value == 0 && rs.wasNull() ? null : value;
+            };
+        } else if (type == Byte.class || type == byte.class) {
+            return (rs, i) -> {
+                byte value = rs.getByte(i);
+                return value == 0 && rs.wasNull() ? null : value;
+            };
+        } else if (type == BigDecimal.class) {
+            return ResultSet::getBigDecimal;
+        } else if (type == Date.class) {
+            return ResultSet::getTimestamp;
+        } else if (type.isEnum()) {
+            return (rs, i) -> convert(JdbcUtils.getResultSetValue(rs, i), type);
+        }
+        return (rs, i) -> convert(JdbcUtils.getResultSetValue(rs, i, type), type);
+    }
+
+    /**
+     * Enums and other types are converted the same way as BeanPropertyRowMapper.
+     */
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        return conversionService.convert(value, type);
+    }
+}
@@ -0,0 +1,206 @@
+package win.doyto.query.core;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * FieldAccessor
+ * <p>
+ * Accessors of a field are resolved once per class:
+ * the getter is bound into a {@link Function} generated by {@link LambdaMetafactory}
+ * when the getter is visible, otherwise it is invoked by a cached {@link MethodHandle};
+ * the setter and the field itself are accessed by cached {@link MethodHandle}s.
+ *
+ * @author f0rb on 2021-07-21
+ */
+@Slf4j
+final class FieldAccessor {
+
+    private static final Map<Class<?>, Map<Object, FieldAccessor>> classAccessorMap = new ConcurrentHashMap<>();
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String name;
+    private final Field field;
+    private final Function<Object, Object> getter;
+    private final MethodHandle setter;
+    private final MethodHandle fieldGetter;
+    private final MethodHandle fieldSetter;
+
+    private FieldAccessor(Class<?> clazz, Field field, String name) {
+        this.name = name;
+        this.field = field;
+        this.getter = buildGetter(clazz, field, name);
+        this.setter = buildSetter(clazz, field);
+        boolean isInstanceField = field != null && !Modifier.isStatic(field.getModifiers());
+        this.fieldGetter = isInstanceField ? unreflectField(field, false) : null;
+        this.fieldSetter = isInstanceField && !Modifier.isFinal(field.getModifiers()) ? unreflectField(field, true) : null;
+    }
+
+    /**
+     * Accessor for the field of the given class, the getter is resolved from the class.
+     */
+    static FieldAccessor of(Class<?> clazz, Field field) {
+        return accessorMap(clazz).computeIfAbsent(field, f -> new FieldAccessor(clazz, field, field.getName()));
+    }
+
+    /**
+     * Accessor for the field or the getter-only property of the given class.
+     */
+    static FieldAccessor of(Class<?> clazz, String name) {
+        return accessorMap(clazz).computeIfAbsent(name, n -> {
+            Field field = FieldUtils.getField(clazz, name, true);
+            if (field == null) {
+                log.warn("Field [{}] not found", name);
+            }
+            return new FieldAccessor(clazz, field, name);
+        });
+    }
+
+    /**
+     * Accessor which only reads and writes the field directly.
+     */
+    static FieldAccessor of(Field field) {
+        return of(field.getDeclaringClass(), field);
+    }
+
+    private static Map<Object, FieldAccessor> accessorMap(Class<?> clazz) {
+        return classAccessorMap.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>());
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    /**
+     * Read value by the getter, or from the field when the getter is absent.
+     */
+    Object get(Object target) {
+        if (getter == null) {
+            return read(target);
+        }
+        try {
+            return getter.apply(target);
+        } catch (Exception e) {
+            log.warn("is/get调用异常 : {}-{}", e.getClass().getName(), e.getMessage());
+            return read(target);
+        }
+    }
+
+    @SneakyThrows
+    Object read(Object target) {
+        if (fieldGetter == null) {
+            throw new IllegalArgumentException("Field [" + name + "] not found in " + target.getClass().getName());
+        }
+        return (Object) fieldGetter.invokeExact(target);
+    }
+
+    /**
+     * Write value by the setter, or to the field when the setter is absent.
+     */
+    @SneakyThrows
+    void set(Object target, Object value) {
+        if (setter == null) {
+            write(target, value);
+            return;
+        }
+        setter.invokeExact(target, value);
+    }
+
+    @SneakyThrows
+    void write(Object target, Object value) {
+        if (fieldSetter == null) {
+            throw new IllegalArgumentException("Field [" + name + "] is not writable in " + target.getClass().getName());
+        }
+        fieldSetter.invokeExact(target, value);
+    }
+
+    private static Function<Object, Object> buildGetter(Class<?> clazz, Field field, String name) {
+        boolean isBoolean = field != null && field.getType().isAssignableFrom(boolean.class);
+        String getterName = (isBoolean ? "is" : "get") + StringUtils.capitalize(name);
+        Method method = MethodUtils.getMatchingMethod(clazz, getterName);
+        if (method == null || Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class) {
+            return null;
+        }
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflect(method);
+            if (isLambdaAccessible(method)) {
+                return spinGetter(handle);
+            }
+            MethodHandle getterHandle = handle.asType(GETTER_TYPE);
+            return target -> invokeGetter(getterHandle, target);
+        } catch (Throwable e) {
+            log.warn("Failed to bind getter {}#{}: {}", clazz.getName(), getterName, e.getMessage());
+            return null;
+        }
+    }
+
+    private static MethodHandle buildSetter(Class<?> clazz, Field field) {
+        if (field == null || Modifier.isStatic(field.getModifiers())) {
+            return null;
+        }
+        Method method = MethodUtils.getMatchingMethod(clazz, "set" + StringUtils.capitalize(field.getName()), field.getType());
+        if (method == null || Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+        try {
+            method.setAccessible(true);
+            return LOOKUP.unreflect(method).asType(SETTER_TYPE);
+        } catch (Exception e) {
+            log.warn("Failed to bind setter {}#{}: {}", clazz.getName(), method.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> spinGetter(MethodHandle handle) throws Throwable {
+        CallSite callSite = LambdaMetafactory.metafactory(
+                LOOKUP, "apply", MethodType.methodType(Function.class),
+                GETTER_TYPE, handle, handle.type().wrap()
+        );
+        return (Function<Object, Object>) callSite.getTarget().invokeExact();
+    }
+
+    /**
+     * The generated lambda class is defined in the class loader of this class,
+     * so the getter should be public and visible from it.
+     */
+    private static boolean isLambdaAccessible(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(declaringClass.getName(), false, FieldAccessor.class.getClassLoader()) == declaringClass;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @SneakyThrows
+    private static Object invokeGetter(MethodHandle getterHandle, Object target) {
+        return (Object) getterHandle.invokeExact(target);
+    }
+
+    @SneakyThrows
+    private static MethodHandle unreflectField(Field field, boolean setter) {
+        field.setAccessible(true);
+        if (setter) {
+            return LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+        }
+        return LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+    }
+}
@@ -10,9 +10,6 @@ import win.doyto.query.annotation.QueryTableAlias;
 
 import java.lang.reflect.Field;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.IntStream;
 
 import static win.doyto.query.core.Constant.*;
 
@@ -24,14 +21,18 @@ import static win.doyto.query.core.Constant.*;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 final class FieldProcessor {
 
-    private static final Map<Field, Processor> FIELD_PROCESSOR_MAP = new ConcurrentHashMap<>();
     public static final Processor EMPTY_PROCESSOR = ((argList, value) -> EMPTY);
 
-    public static String execute(Field field, List<Object> argList, Object value) {
-        return FIELD_PROCESSOR_MAP.get(field).process(argList, value);
-    }
-
-    public static void init(Field field) {
+    /**
+     * Build a processor for the field with the column and the operator resolved in advance.
+     * <p>
+     * The resolved column depends on {@link win.doyto.query.config.GlobalConfiguration#isMapCamelCaseToUnderscore()},
+     * so the processor should be rebuilt after the configuration changes.
+     *
+     * @param field the field of the query object
+     * @return the processor which builds the condition for the field
+     */
+    static Processor compile(Field field) {
         Processor processor;
         if (field.isAnnotationPresent(QueryTableAlias.class)) {
             processor = initFieldAnnotatedByQueryTableAlias(field);
@@ -42,7 +43,7 @@ final class FieldProcessor {
         } else {
             processor = initCommonField(field);
         }
-        FIELD_PROCESSOR_MAP.put(field, processor);
+        return processor;
     }
 
     private static Processor initCommonField(Field field) {
@@ -59,9 +60,9 @@ final class FieldProcessor {
 
     private static Processor chooseProcessorForFieldWithOr(String fieldName) {
         if (CommonUtil.containsOr(fieldName)) {
-            return (argList, value) -> QuerySuffix.buildConditionForFieldContainsOr(fieldName, argList, value);
+            return QuerySuffix.compileConditionForFieldContainsOr(fieldName);
         } else {
-            return (argList, value) -> QuerySuffix.buildConditionForField(fieldName, argList, value);
+            return QuerySuffix.compileConditionForField(fieldName);
         }
     }
 
@@ -79,7 +80,18 @@ final class FieldProcessor {
     private static Processor initFieldAnnotatedByNestedQueries(Field field) {
         NestedQueries nestedQueries = field.getAnnotation(NestedQueries.class);
         Processor processor = chooseProcessorForNestedQuery(field);
-        return (argList, value) -> resolvedNestedQueries(argList, value, nestedQueries, processor);
+        String subquery = resolvedNestedQueries(nestedQueries).toString();
+        int holderCount = StringUtils.countMatches(subquery, PLACE_HOLDER);
+        String tail = StringUtils.repeat(')', nestedQueries.value().length);
+        String column = nestedQueries.column();
+        boolean appendWhere = nestedQueries.appendWhere();
+        return (argList, value) -> {
+            for (int i = 0; i < holderCount; i++) {
+                argList.add(value);
+            }
+            String where = appendWhere ? processor.process(argList, value) : EMPTY;
+            return column + subquery + where + tail;
+        };
     }
 
     protected static Processor chooseProcessorForNestedQuery(Field field) {
@@ -90,25 +102,12 @@ final class FieldProcessor {
         } else if (PageQuery.class.isAssignableFrom(fieldType)) {
             processor = (argList, value) -> BuildHelper.buildWhere((PageQuery) value, argList);
         } else {
-            String fieldName = field.getName();
-            if (CommonUtil.containsOr(fieldName)) {
-                processor = (argList, value) -> WHERE + QuerySuffix.buildConditionForFieldContainsOr(fieldName, argList, value);
-            } else {
-                processor = (argList, value) -> WHERE + QuerySuffix.buildConditionForField(fieldName, argList, value);
-            }
+            Processor condition = chooseProcessorForFieldWithOr(field.getName());
+            processor = (argList, value) -> WHERE + condition.process(argList, value);
         }
         return processor;
     }
 
-    protected static String resolvedNestedQueries(List<Object> argList, Object value, NestedQueries nestedQueries, Processor processor) {
-        StringBuilder subquery = resolvedNestedQueries(nestedQueries);
-        IntStream.range(0, StringUtils.countMatches(subquery, PLACE_HOLDER)).mapToObj(i -> value).forEach(argList::add);
-        if (nestedQueries.appendWhere()) {
-            subquery.append(processor.process(argList, value));
-        }
-        return nestedQueries.column() + subquery + StringUtils.repeat(')', nestedQueries.value().length);
-    }
-
     private static StringBuilder resolvedNestedQueries(NestedQueries nestedQueries) {
         StringBuilder nestedQueryBuilder = new StringBuilder();
         String lastOp = nestedQueries.op();
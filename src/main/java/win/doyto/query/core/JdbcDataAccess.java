@@ -3,19 +3,24 @@ package win.doyto.query.core;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.springframework.jdbc.core.*;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.KeyHolder;
+import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.entity.Persistable;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Transient;
@@ -28,6 +33,8 @@ import javax.persistence.Transient;
 public final class JdbcDataAccess<E extends Persistable<I>, I extends Serializable, Q extends PageQuery> implements DataAccess<E, I, Q> {
 
     private static final Map<Class<?>, RowMapper<?>> classRowMapperMap;
+    private static final String TOTAL_LABEL = "doyto_total";
+    private static final int IDS_PER_SELECT = 1000;
 
     static {
         classRowMapperMap = new ConcurrentHashMap<>();
@@ -81,7 +88,7 @@ public final class JdbcDataAccess<E extends Persistable<I>, I extends Serializab
     public final <V> List<V> queryColumns(Q q, Class<V> clazz, String... columns) {
         @SuppressWarnings("unchecked")
         RowMapper<V> localRowMapper = (RowMapper<V>) classRowMapperMap.computeIfAbsent(
-                clazz, c -> CommonUtil.isSingleColumn(columns) ? new SingleColumnRowMapper<>(clazz) : new BeanPropertyRowMapper<>(clazz));
+                clazz, c -> CommonUtil.isSingleColumn(columns) ? new SingleColumnRowMapper<>(clazz) : EntityRowMapper.of(clazz));
         return queryColumns(q, localRowMapper, columns);
     }
 
@@ -90,8 +97,57 @@ public final class JdbcDataAccess<E extends Persistable<I>, I extends Serializab
         return jdbcOperations.query(sqlAndArgs.sql, sqlAndArgs.args, rowMapper);
     }
 
+    /**
+     * Query the total count by the window function <i>COUNT(*) OVER()</i> when the dialect supports it,
+     * which counts nothing for an empty page or for the keyset pagination after the first page.
+     */
+    @Override
+    public List<E> queryWithTotal(Q q, LongConsumer totalConsumer) {
+        Dialect dialect = GlobalConfiguration.dialect();
+        if (!dialect.supportCountOver() || (q.isKeysetPaging() && !q.getAfter().isEmpty())) {
+            return query(q);
+        }
+        String[] columns = Arrays.copyOf(columnsForSelect, columnsForSelect.length + 1);
+        columns[columnsForSelect.length] = "COUNT(*) OVER() AS " + dialect.wrapLabel(TOTAL_LABEL);
+        SqlAndArgs sqlAndArgs = crudBuilder.buildSelectColumnsAndArgs(q, columns);
+        return jdbcOperations.query(sqlAndArgs.sql, sqlAndArgs.args, (rs, rowNum) -> {
+            if (rowNum == 0) {
+                totalConsumer.accept(rs.getLong(TOTAL_LABEL));
+            }
+            return rowMapper.mapRow(rs, rowNum);
+        });
+    }
+
+    /**
+     * The stream holds a connection until it is exhausted or closed,
+     * and is fetched by {@link GlobalConfiguration#getStreamFetchSize()} rows per round-trip.
+     */
+    @Override
+    public Stream<E> stream(Q q) {
+        SqlAndArgs sqlAndArgs = crudBuilder.buildSelectColumnsAndArgs(q, columnsForSelect);
+        if (jdbcOperations instanceof JdbcTemplate) {
+            int fetchSize = GlobalConfiguration.instance().getStreamFetchSize();
+            return ResultSetStream.stream((JdbcTemplate) jdbcOperations, sqlAndArgs, rowMapper, fetchSize);
+        }
+        return jdbcOperations.query(sqlAndArgs.sql, sqlAndArgs.args, rowMapper).stream();
+    }
+
+    /**
+     * The approximate count is returned for the query without conditions
+     * when it reaches {@link GlobalConfiguration#getApproximateCountThreshold()}.
+     */
     @Override
     public final long count(Q q) {
+        long threshold = GlobalConfiguration.instance().getApproximateCountThreshold();
+        if (threshold > 0) {
+            SqlAndArgs approximateSqlAndArgs = crudBuilder.buildApproximateCountAndArgs(q);
+            if (approximateSqlAndArgs != null) {
+                List<Long> rows = jdbcOperations.query(approximateSqlAndArgs.sql, approximateSqlAndArgs.args, (rs, rn) -> rs.getLong(1));
+                if (!rows.isEmpty() && rows.get(0) >= threshold) {
+                    return rows.get(0);
+                }
+            }
+        }
         SqlAndArgs sqlAndArgs = crudBuilder.buildCountAndArgs(q);
         return jdbcOperations.queryForObject(sqlAndArgs.sql, sqlAndArgs.args, Long.class);
     }
@@ -108,6 +164,28 @@ public final class JdbcDataAccess<E extends Persistable<I>, I extends Serializab
         return list.isEmpty() ? null : list.get(0);
     }
 
+    /**
+     * Select the entities by <i>WHERE id IN (...)</i> in chunks of {@value #IDS_PER_SELECT} ids.
+     *
+     * @throws UnsupportedOperationException for the dynamic table, whose name is resolved by each IdWrapper
+     */
+    @Override
+    public List<E> get(Collection<I> ids) {
+        if (!crudBuilder.supportSelectByIds(columnsForSelect)) {
+            throw new UnsupportedOperationException("Dynamic table can not be queried by ids, use get(IdWrapper) instead: " + crudBuilder.tableName);
+        }
+        List<I> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<I, E> entityMap = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += IDS_PER_SELECT) {
+            List<I> chunk = distinctIds.subList(from, Math.min(from + IDS_PER_SELECT, distinctIds.size()));
+            SqlAndArgs sqlAndArgs = crudBuilder.buildSelectByIds(chunk, columnsForSelect);
+            for (E e : jdbcOperations.query(sqlAndArgs.sql, sqlAndArgs.args, rowMapper)) {
+                entityMap.put(e.getId(), e);
+            }
+        }
+        return CommonUtil.mapInOrder(ids, entityMap);
+    }
+
     @Override
     public int delete(IdWrapper<I> w) {
         return doUpdate(crudBuilder.buildDeleteById(w));
@@ -139,7 +217,141 @@ public final class JdbcDataAccess<E extends Persistable<I>, I extends Serializab
         if (!entities.iterator().hasNext()) {
             return 0;
         }
-        return doUpdate(crudBuilder.buildCreateAndArgs(entities, columns));
+        GlobalConfiguration globalConfiguration = GlobalConfiguration.instance();
+        int batchSize = globalConfiguration.getBatchInsertSize();
+        if (globalConfiguration.isJdbcBatchInsert()) {
+            return jdbcOperations.execute((ConnectionCallback<Integer>) connection -> executeBatch(connection, entities, batchSize, columns));
+        }
+        int rowsPerStatement = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+        return jdbcOperations.execute((ConnectionCallback<Integer>) connection -> insertInChunks(connection, entities, rowsPerStatement, columns));
+    }
+
+    /**
+     * Insert entities by multi-row INSERT statements with at most {@code rowsPerStatement} rows.
+     */
+    private int insertInChunks(Connection connection, Iterable<E> entities, int rowsPerStatement, String... columns) throws SQLException {
+        List<E> chunk = new ArrayList<>(Math.min(rowsPerStatement, 1024));
+        try (InsertStatement insertStatement = new InsertStatement(connection, columns)) {
+            Iterator<E> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == rowsPerStatement || !iterator.hasNext()) {
+                    insertStatement.executeUpdate(chunk);
+                    chunk.clear();
+                }
+            }
+            return insertStatement.count;
+        }
+    }
+
+    /**
+     * Insert entities by JDBC batches of single-row INSERT statements with at most {@code batchSize} rows.
+     */
+    private int executeBatch(Connection connection, Iterable<E> entities, int batchSize, String... columns) throws SQLException {
+        try (InsertStatement insertStatement = new InsertStatement(connection, columns)) {
+            for (E entity : entities) {
+                insertStatement.addBatch(entity);
+                if (insertStatement.pending == batchSize) {
+                    insertStatement.executeBatch();
+                }
+            }
+            insertStatement.executeBatch();
+            return insertStatement.count;
+        }
+    }
+
+    /**
+     * The prepared INSERT statement is reused by successive executions with the same SQL,
+     * and the SQL is rebuilt only when the row count changes or the table is dynamic.
+     * <p>
+     * The generated keys are assigned back to the inserted entities in order,
+     * except for the upsert whose generated keys don't match the rows.
+     */
+    private final class InsertStatement implements AutoCloseable {
+        private final Connection connection;
+        private final String[] columns;
+        private final boolean returnGeneratedKeys;
+        private final List<E> pendingEntities = new ArrayList<>();
+        private String sql;
+        private int rows;
+        private PreparedStatement ps;
+        private int pending;
+        private int count;
+
+        InsertStatement(Connection connection, String[] columns) {
+            this.connection = connection;
+            this.columns = columns;
+            this.returnGeneratedKeys = isGeneratedId && columns.length == 0;
+        }
+
+        private PreparedStatement prepare(E first, int rows) throws SQLException {
+            if (ps == null || this.rows != rows || crudBuilder.isDynamicInsert()) {
+                String newSql = crudBuilder.buildInsertSql(first, rows, columns);
+                if (!newSql.equals(sql)) {
+                    executeBatch();
+                    JdbcUtils.closeStatement(ps);
+                    ps = returnGeneratedKeys ? connection.prepareStatement(newSql, Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(newSql);
+                    sql = newSql;
+                }
+                this.rows = rows;
+            }
+            return ps;
+        }
+
+        private void setValues(PreparedStatement ps, List<E> entities) throws SQLException {
+            List<Object> argList = new ArrayList<>();
+            for (E entity : entities) {
+                crudBuilder.readValueToArgList(entity, argList);
+            }
+            SqlAndArgs.logSqlInfo(sql, argList);
+            new ArgumentPreparedStatementSetter(argList.toArray()).setValues(ps);
+        }
+
+        void executeUpdate(List<E> entities) throws SQLException {
+            PreparedStatement statement = prepare(entities.get(0), entities.size());
+            setValues(statement, entities);
+            count += statement.executeUpdate();
+            assignGeneratedKeys(entities);
+        }
+
+        void addBatch(E entity) throws SQLException {
+            PreparedStatement statement = prepare(entity, 1);
+            setValues(statement, Collections.singletonList(entity));
+            statement.addBatch();
+            if (returnGeneratedKeys) {
+                pendingEntities.add(entity);
+            }
+            pending++;
+        }
+
+        void executeBatch() throws SQLException {
+            if (pending == 0) {
+                return;
+            }
+            for (int updated : ps.executeBatch()) {
+                count += updated == Statement.SUCCESS_NO_INFO ? 1 : Math.max(updated, 0);
+            }
+            pending = 0;
+            assignGeneratedKeys(pendingEntities);
+            pendingEntities.clear();
+        }
+
+        private void assignGeneratedKeys(List<E> entities) throws SQLException {
+            if (!returnGeneratedKeys) {
+                return;
+            }
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                Iterator<E> iterator = entities.iterator();
+                while (iterator.hasNext() && keys.next()) {
+                    setIdFunc.accept(iterator.next(), (Number) keys.getObject(1));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            JdbcUtils.closeStatement(ps);
+        }
     }
 
     private int doUpdate(SqlAndArgs sqlAndArgs) {
@@ -3,7 +3,6 @@ package win.doyto.query.core;
 import org.apache.commons.lang3.SerializationUtils;
 import win.doyto.query.annotation.Joins;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -52,10 +51,10 @@ public class JoinQueryBuilder {
         StringBuffer sb = new StringBuffer(SPACE);
         while (matcher.find()) {
             String fieldName = matcher.group(1);
-            Field field = getField(query, fieldName);
-            Object value = readField(field, query);
+            FieldAccessor fieldAccessor = FieldAccessor.of(query.getClass(), fieldName);
+            Object value = fieldAccessor.read(query);
             argList.add(value);
-            writeField(field, query, null);
+            fieldAccessor.write(query, null);
             matcher.appendReplacement(sb, PLACE_HOLDER);
         }
 
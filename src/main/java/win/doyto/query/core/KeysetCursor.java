@@ -0,0 +1,235 @@
+package win.doyto.query.core;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.Id;
+
+import static win.doyto.query.core.Constant.*;
+
+/**
+ * KeysetCursor
+ * <p>
+ * Keyset pagination continues from the sort values and the id of the last row of the previous page
+ * instead of skipping rows by OFFSET: <i>WHERE (sort_col, id) > (?, ?) ORDER BY sort_col, id LIMIT n</i>.
+ * The values are carried by an opaque token set to {@link PageQuery#setAfter(String)}.
+ * <p>
+ * Sorting by <i>field(...)</i> is not supported, and the sort columns are supposed to be
+ * not null and of numbers, strings, booleans or dates.
+ *
+ * @author f0rb on 2021-07-25
+ */
+@Slf4j
+public final class KeysetCursor {
+
+    private static final String ID = "id";
+    private static final String TIMESTAMP = "ts";
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    private static final Map<Class<?>, String> idColumnMap = new ConcurrentHashMap<>();
+
+    private final String[] columns;
+    private final String[] properties;
+    private final boolean[] descending;
+
+    private KeysetCursor(String[] columns, String[] properties, boolean[] descending) {
+        this.columns = columns;
+        this.properties = properties;
+        this.descending = descending;
+    }
+
+    /**
+     * @return null if the query is not in keyset pagination mode or the sort is not supported
+     */
+    static KeysetCursor of(PageQuery query, String idColumn) {
+        if (!query.isKeysetPaging()) {
+            return null;
+        }
+        String[] orders = query.getSort() == null ? new String[0] : query.getSort().split(";");
+        List<String> columnList = new ArrayList<>(orders.length + 1);
+        List<Boolean> descList = new ArrayList<>(orders.length + 1);
+        for (String order : orders) {
+            String[] pd = order.split(",");
+            if (pd.length != 2) {
+                return null;
+            }
+            columnList.add(pd[0]);
+            descList.add("desc".equalsIgnoreCase(pd[1]));
+        }
+        if (columnList.stream().noneMatch(idColumn::equalsIgnoreCase)) {
+            columnList.add(idColumn);
+            descList.add(false);
+        }
+        int size = columnList.size();
+        String[] properties = new String[size];
+        boolean[] descending = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            String column = columnList.get(i);
+            properties[i] = idColumn.equalsIgnoreCase(column) ? ID : CommonUtil.toCamelCase(column);
+            descending[i] = descList.get(i);
+        }
+        return new KeysetCursor(columnList.toArray(new String[0]), properties, descending);
+    }
+
+    /**
+     * Build the cursor for the next page from the last entity of the current page.
+     *
+     * @return null if there is no more page or the query is not in keyset pagination mode
+     */
+    public static String next(List<?> list, PageQuery query) {
+        if (list.isEmpty() || list.size() < query.getPageSize()) {
+            return null;
+        }
+        Object last = list.get(list.size() - 1);
+        KeysetCursor keysetCursor = of(query, resolveIdColumn(last.getClass()));
+        return keysetCursor == null ? null : keysetCursor.encode(last);
+    }
+
+    /**
+     * The same id column as {@link QueryBuilder} uses to build the keyset condition of the entity.
+     */
+    private static String resolveIdColumn(Class<?> entityClass) {
+        return idColumnMap.computeIfAbsent(entityClass, clazz -> {
+            Field[] idFields = FieldUtils.getFieldsWithAnnotation(clazz, Id.class);
+            return idFields.length == 0 ? ID : CommonUtil.resolveColumn(idFields[0]);
+        });
+    }
+
+    String encode(Object entity) {
+        try {
+            Object[] values = new Object[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                Object value = CommonUtil.readField(entity, properties[i]);
+                values[i] = value instanceof Date ? Collections.singletonMap(TIMESTAMP, ((Date) value).getTime()) : value;
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(values));
+        } catch (Exception e) {
+            log.warn("Failed to build cursor for {}: {}", entity.getClass().getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    Object[] decode(String after) {
+        Object[] values;
+        try {
+            values = objectMapper.readValue(Base64.getUrlDecoder().decode(after), Object[].class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + after);
+        }
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Cursor does not match the sort: " + after);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Map) {
+                values[i] = new Timestamp(((Number) ((Map<?, ?>) values[i]).get(TIMESTAMP)).longValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Append the seek condition to the WHERE clause, and the id to the ORDER BY clause as the tie-breaker.
+     */
+    String buildWhereAndOrderBy(String where, String after, List<Object> argList) {
+        StringBuilder sb = new StringBuilder(where);
+        if (!after.isEmpty()) {
+            sb.append(where.isEmpty() ? WHERE : " AND ");
+            appendCondition(sb, decode(after), argList);
+        }
+        sb.append(" ORDER BY ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+            sb.append(columns[i]).append(descending[i] ? " desc" : " asc");
+        }
+        return sb.toString();
+    }
+
+    private void appendCondition(StringBuilder sb, Object[] values, List<Object> argList) {
+        boolean sameDirection = true;
+        for (boolean desc : descending) {
+            sameDirection &= desc == descending[0];
+        }
+        if (columns.length == 1) {
+            sb.append(columns[0]).append(operator(0)).append(PLACE_HOLDER);
+            argList.add(values[0]);
+        } else if (sameDirection) {
+            // (c1, c2, id) > (?, ?, ?)
+            sb.append('(').append(String.join(SEPARATOR, columns)).append(')').append(operator(0)).append('(');
+            for (int i = 0; i < values.length; i++) {
+                sb.append(i == 0 ? PLACE_HOLDER : SEPARATOR + PLACE_HOLDER);
+                argList.add(values[i]);
+            }
+            sb.append(')');
+        } else {
+            // (c1 > ? OR c1 = ? AND (c2 < ? OR c2 = ? AND id > ?))
+            for (int i = 0; i < columns.length - 1; i++) {
+                sb.append('(').append(columns[i]).append(operator(i)).append(PLACE_HOLDER)
+                  .append(SPACE_OR).append(columns[i]).append(EQUAL).append(PLACE_HOLDER).append(" AND ");
+                argList.add(values[i]);
+                argList.add(values[i]);
+            }
+            int last = columns.length - 1;
+            sb.append(columns[last]).append(operator(last)).append(PLACE_HOLDER);
+            argList.add(values[last]);
+            for (int i = 0; i < last; i++) {
+                sb.append(')');
+            }
+        }
+    }
+
+    private String operator(int index) {
+        return descending[index] ? " < " : " > ";
+    }
+
+    /**
+     * Comparator of the entities in the order of the sort and the id.
+     */
+    Comparator<Object> comparator() {
+        return (e1, e2) -> {
+            for (int i = 0; i < properties.length; i++) {
+                int ret = compareValue(CommonUtil.readField(e1, properties[i]), CommonUtil.readField(e2, properties[i]));
+                if (ret != 0) {
+                    return descending[i] ? -ret : ret;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * @return true if the entity is positioned after the cursor
+     */
+    boolean isAfter(Object entity, Object[] values) {
+        for (int i = 0; i < properties.length; i++) {
+            int ret = compareValue(CommonUtil.readField(entity, properties[i]), values[i]);
+            if (ret != 0) {
+                return descending[i] ? ret < 0 : ret > 0;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValue(Object v1, Object v2) {
+        if (v1 == null || v2 == null) {
+            return v1 == null ? (v2 == null ? 0 : -1) : 1;
+        }
+        if (v1 instanceof Number && v2 instanceof Number) {
+            return new BigDecimal(v1.toString()).compareTo(new BigDecimal(v2.toString()));
+        }
+        if (v1 instanceof Date && v2 instanceof Date) {
+            return Long.compare(((Date) v1).getTime(), ((Date) v2).getTime());
+        }
+        return ((Comparable<Object>) v1).compareTo(v2);
+    }
+}
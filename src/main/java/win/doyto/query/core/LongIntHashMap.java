@@ -0,0 +1,126 @@
+package win.doyto.query.core;
+
+import java.util.Arrays;
+
+/**
+ * LongIntHashMap
+ * <p>
+ * Open-addressing map from long keys to non-negative int values by linear probing,
+ * without boxing the keys or allocating entries. Removal shifts the following entries
+ * of the probe chain backward instead of leaving tombstones.
+ *
+ * @author f0rb on 2021-07-28
+ */
+final class LongIntHashMap {
+
+    static final int ABSENT = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntHashMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or {@link #ABSENT} if the key is absent
+     */
+    int get(long key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int value = values[slot];
+            if (value == ABSENT || keys[slot] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value of the key, or {@link #ABSENT} if the key is absent
+     */
+    int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value should not be negative: " + value);
+        }
+        int slot = slot(key);
+        while (values[slot] != ABSENT) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @return the removed value of the key, or {@link #ABSENT} if the key is absent
+     */
+    int remove(long key) {
+        int slot = slot(key);
+        while (values[slot] != ABSENT && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot];
+        if (removed == ABSENT) {
+            return ABSENT;
+        }
+        values[slot] = ABSENT;
+        size--;
+        for (int next = (slot + 1) & mask; values[next] != ABSENT; next = (next + 1) & mask) {
+            // move the entry back when its home slot is not within (slot, next]
+            if (((next - slot(keys[next])) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = ABSENT;
+                slot = next;
+            }
+        }
+        return removed;
+    }
+
+    void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != ABSENT) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package win.doyto.query.core;
+
+import win.doyto.query.core.MemoryDataAccess.FilterExecutor.Matcher;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * MemoryColumn
+ * <p>
+ * Values of an entity field stored by rows in arrays for {@link ColumnarDataAccess}.
+ * Longs and ints are kept in primitive arrays and filtered by tight loops over ranges
+ * or sorted sets of the query values, when the query values are of the same type.
+ * Strings, enums and booleans are dictionary-encoded, so that a condition is matched once
+ * per distinct value and the rows are filtered by the codes.
+ * The other values are kept as objects and filtered by the matchers of {@link MemoryDataAccess}.
+ *
+ * @author f0rb on 2021-07-28
+ */
+abstract class MemoryColumn {
+
+    private final FieldAccessor accessor;
+
+    MemoryColumn(FieldAccessor accessor) {
+        this.accessor = accessor;
+    }
+
+    static MemoryColumn of(Class<?> entityClass, Field field) {
+        FieldAccessor accessor = FieldAccessor.of(entityClass, field);
+        Class<?> type = field.getType();
+        if (type == long.class || type == Long.class) {
+            return new LongColumn(accessor);
+        } else if (type == int.class || type == Integer.class) {
+            return new IntColumn(accessor);
+        } else if (type == String.class || type.isEnum() || type == boolean.class || type == Boolean.class) {
+            return new DictionaryColumn(accessor);
+        }
+        return new ObjectColumn(accessor, EntityCopier.resolveValueCopier(type));
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    abstract void resize(int capacity);
+
+    abstract Object get(int row);
+
+    /**
+     * @param value the value of the field, or null to release the row
+     */
+    abstract void set(int row, Object value);
+
+    /**
+     * Move the value of a live row to a released row.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * @return the value to be set to a materialized entity, which is not shared with the column
+     */
+    Object copy(int row) {
+        return get(row);
+    }
+
+    /**
+     * Clear the rows which do not match the condition.
+     *
+     * @return false if the condition is not supported and the rows are untouched
+     */
+    boolean filter(QuerySuffix querySuffix, Matcher matcher, Object value, BitSet rows) {
+        return false;
+    }
+
+    /**
+     * Range or set of the query value for the numeric columns, null if the value is not of the type.
+     */
+    private static long[] toRange(QuerySuffix querySuffix, Object value, Class<?> type, long min, long max) {
+        if (querySuffix == QuerySuffix.Null || querySuffix == QuerySuffix.NotNull) {
+            return new long[]{1, 0};
+        }
+        if (value.getClass() != type) {
+            return null;
+        }
+        long v = ((Number) value).longValue();
+        switch (querySuffix) {
+            case NONE:
+            case Eq:
+            case Not:
+                return new long[]{v, v};
+            case Gt:
+                return v == max ? new long[]{1, 0} : new long[]{v + 1, max};
+            case Ge:
+                return new long[]{v, max};
+            case Lt:
+                return v == min ? new long[]{1, 0} : new long[]{min, v - 1};
+            case Le:
+                return new long[]{min, v};
+            default:
+                return null;
+        }
+    }
+
+    private static long[] toSortedSet(Object value, Class<?> type) {
+        Collection<?> collection = (Collection<?>) value;
+        long[] set = new long[collection.size()];
+        int size = 0;
+        for (Object element : collection) {
+            if (element != null) {
+                if (element.getClass() != type) {
+                    return null;
+                }
+                set[size++] = ((Number) element).longValue();
+            }
+        }
+        set = Arrays.copyOf(set, size);
+        Arrays.sort(set);
+        return set;
+    }
+
+    private static boolean negate(QuerySuffix querySuffix) {
+        return querySuffix == QuerySuffix.Not || querySuffix == QuerySuffix.NotIn || querySuffix == QuerySuffix.NotNull;
+    }
+
+    /**
+     * Numeric column with the null values tracked by a bit set.
+     */
+    private abstract static class NumberColumn extends MemoryColumn {
+        private final Class<?> type;
+        private final long min;
+        private final long max;
+        final BitSet nulls = new BitSet();
+
+        NumberColumn(FieldAccessor accessor, Class<?> type, long min, long max) {
+            super(accessor);
+            this.type = type;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        boolean filter(QuerySuffix querySuffix, Matcher matcher, Object value, BitSet rows) {
+            boolean negate = negate(querySuffix);
+            // the null values are matched in the same way as MemoryDataAccess
+            boolean nullMatched = nulls.intersects(rows) && matcher.match(value, null);
+            if (querySuffix == QuerySuffix.In || querySuffix == QuerySuffix.NotIn) {
+                long[] set = toSortedSet(value, type);
+                if (set == null) {
+                    return false;
+                }
+                filterSet(set, negate, nullMatched, rows);
+                return true;
+            }
+            long[] range = toRange(querySuffix, value, type, min, max);
+            if (range == null) {
+                return false;
+            }
+            filterRange(range[0], range[1], negate, nullMatched, rows);
+            return true;
+        }
+
+        abstract void filterRange(long lo, long hi, boolean negate, boolean nullMatched, BitSet rows);
+
+        abstract void filterSet(long[] set, boolean negate, boolean nullMatched, BitSet rows);
+    }
+
+    private static final class LongColumn extends NumberColumn {
+        private long[] values = new long[0];
+
+        LongColumn(FieldAccessor accessor) {
+            super(accessor, Long.class, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0L : (Long) value;
+        }
+
+        @Override
+        void move(int from, int to) {
+            nulls.set(to, nulls.get(from));
+            values[to] = values[from];
+        }
+
+        @Override
+        void filterRange(long lo, long hi, boolean negate, boolean nullMatched, BitSet rows) {
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                long v = values[row];
+                if (nulls.get(row) ? !nullMatched : (v >= lo && v <= hi) == negate) {
+                    rows.clear(row);
+                }
+            }
+        }
+
+        @Override
+        void filterSet(long[] set, boolean negate, boolean nullMatched, BitSet rows) {
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                if (nulls.get(row) ? !nullMatched : (Arrays.binarySearch(set, values[row]) >= 0) == negate) {
+                    rows.clear(row);
+                }
+            }
+        }
+    }
+
+    private static final class IntColumn extends NumberColumn {
+        private int[] values = new int[0];
+
+        IntColumn(FieldAccessor accessor) {
+            super(accessor, Integer.class, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : values[row];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            nulls.set(row, value == null);
+            values[row] = value == null ? 0 : (Integer) value;
+        }
+
+        @Override
+        void move(int from, int to) {
+            nulls.set(to, nulls.get(from));
+            values[to] = values[from];
+        }
+
+        @Override
+        void filterRange(long lo, long hi, boolean negate, boolean nullMatched, BitSet rows) {
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                int v = values[row];
+                if (nulls.get(row) ? !nullMatched : (v >= lo && v <= hi) == negate) {
+                    rows.clear(row);
+                }
+            }
+        }
+
+        @Override
+        void filterSet(long[] set, boolean negate, boolean nullMatched, BitSet rows) {
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                if (nulls.get(row) ? !nullMatched : (Arrays.binarySearch(set, values[row]) >= 0) == negate) {
+                    rows.clear(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Column of the codes of the values in a dictionary, whose entries are counted by rows
+     * and recycled when no row refers to them.
+     */
+    private static final class DictionaryColumn extends MemoryColumn {
+        private static final int NULL_CODE = -1;
+        private int[] codes = new int[0];
+        private final List<Object> dictionary = new ArrayList<>();
+        private final Map<Object, Integer> codeMap = new HashMap<>();
+        private int[] refCounts = new int[0];
+        private final Deque<Integer> freeCodes = new ArrayDeque<>();
+
+        DictionaryColumn(FieldAccessor accessor) {
+            super(accessor);
+        }
+
+        @Override
+        void resize(int capacity) {
+            int size = codes.length;
+            codes = Arrays.copyOf(codes, capacity);
+            if (capacity > size) {
+                Arrays.fill(codes, size, capacity, NULL_CODE);
+            }
+        }
+
+        @Override
+        Object get(int row) {
+            int code = codes[row];
+            return code == NULL_CODE ? null : dictionary.get(code);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            int code = value == null ? NULL_CODE : encode(value);
+            int old = codes[row];
+            codes[row] = code;
+            if (old != NULL_CODE && --refCounts[old] == 0) {
+                codeMap.remove(dictionary.get(old));
+                dictionary.set(old, null);
+                freeCodes.push(old);
+            }
+        }
+
+        private int encode(Object value) {
+            Integer code = codeMap.get(value);
+            if (code == null) {
+                code = freeCodes.isEmpty() ? dictionary.size() : freeCodes.pop();
+                if (code == dictionary.size()) {
+                    dictionary.add(value);
+                    if (code == refCounts.length) {
+                        refCounts = Arrays.copyOf(refCounts, Math.max(16, code * 2));
+                    }
+                } else {
+                    dictionary.set(code, value);
+                }
+                codeMap.put(value, code);
+            }
+            refCounts[code]++;
+            return code;
+        }
+
+        @Override
+        void move(int from, int to) {
+            codes[to] = codes[from];
+            codes[from] = NULL_CODE;
+        }
+
+        @Override
+        boolean filter(QuerySuffix querySuffix, Matcher matcher, Object value, BitSet rows) {
+            boolean nullMatched = matcher.match(value, null);
+            if (!(value instanceof Comparable || value instanceof Collection)) {
+                return false;
+            }
+            if (querySuffix == QuerySuffix.NONE || querySuffix == QuerySuffix.Eq || querySuffix == QuerySuffix.Not) {
+                Integer code = codeMap.get(value);
+                int target = code == null ? NULL_CODE - 1 : code;
+                boolean negate = querySuffix == QuerySuffix.Not;
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    int c = codes[row];
+                    if (c == NULL_CODE ? !nullMatched : (c == target) == negate) {
+                        rows.clear(row);
+                    }
+                }
+                return true;
+            }
+            boolean[] matched = new boolean[dictionary.size()];
+            if (querySuffix == QuerySuffix.In || querySuffix == QuerySuffix.NotIn) {
+                boolean negate = querySuffix == QuerySuffix.NotIn;
+                Arrays.fill(matched, negate);
+                for (Object element : (Collection<?>) value) {
+                    Integer code = element == null ? null : codeMap.get(element);
+                    if (code != null) {
+                        matched[code] = !negate;
+                    }
+                }
+            } else {
+                for (int code = 0; code < matched.length; code++) {
+                    Object entry = dictionary.get(code);
+                    matched[code] = entry != null && matcher.match(value, entry);
+                }
+            }
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                int c = codes[row];
+                if (c == NULL_CODE ? !nullMatched : !matched[c]) {
+                    rows.clear(row);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class ObjectColumn extends MemoryColumn {
+        private final UnaryOperator<Object> valueCopier;
+        private Object[] values = new Object[0];
+
+        ObjectColumn(FieldAccessor accessor, UnaryOperator<Object> valueCopier) {
+            super(accessor);
+            this.valueCopier = valueCopier;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        Object copy(int row) {
+            return valueCopier.apply(values[row]);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            values[row] = valueCopier.apply(value);
+        }
+
+        @Override
+        void move(int from, int to) {
+            values[to] = values[from];
+            values[from] = null;
+        }
+    }
+}
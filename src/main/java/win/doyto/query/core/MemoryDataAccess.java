@@ -2,27 +2,44 @@ package win.doyto.query.core;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.entity.Persistable;
 import win.doyto.query.util.BeanUtil;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Table;
 
 import static win.doyto.query.core.CommonUtil.*;
 import static win.doyto.query.core.QuerySuffix.*;
 
 /**
  * MemoryDataAccess
+ * <p>
+ * The entities are filtered by the predicate from {@link #buildFilter(PageQuery)} and sorted by
+ * the comparator from {@link #buildComparator(String)}, which replace the extension points
+ * <i>filterByQuery</i>, <i>shouldDiscard</i> and <i>doSort</i> evaluated per entity before.
  *
  * @author f0rb
  */
@@ -30,24 +47,50 @@ import static win.doyto.query.core.QuerySuffix.*;
 @SuppressWarnings({"unchecked", "java:S3740"})
 public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable, Q extends PageQuery> implements DataAccess<E, I, Q> {
     protected static final Map<Class<?>, Map<?, ?>> tableMap = new ConcurrentHashMap<>();
+    private static final Map<String, MemoryDataAccess<?, ?, ?>> tableNameMap = new ConcurrentHashMap<>();
 
-    protected final Map<I, E> entitiesMap = new ConcurrentHashMap<>();
+    protected final Map<I, E> entitiesMap;
+    private final Class<E> entityClass;
+    private final boolean offHeap;
+    private final EntityCopier<E> entityCopier;
+    private volatile MemoryJournal<E> journal;
+    /**
+     * Shared by the writes from appending to the journal until committing to the map and the indexes,
+     * and exclusive for the snapshots which truncate the journal and the indexes being added.
+     */
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final Map<String, MemoryIndex<I>> indexMap = new ConcurrentHashMap<>();
+    private final Map<Class<?>, FieldCondition[]> conditionsMap = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MemoryNestedQuery[]> nestedQueriesMap = new ConcurrentHashMap<>();
     private final AtomicLong idGenerator = new AtomicLong(0);
-    private final List<Field> fields;
-    private final Field idField;
+    private final FieldAccessor[] fieldAccessors;
+    private final FieldAccessor idAccessor;
     private final Class<I> idFieldType;
 
     public MemoryDataAccess(Class<E> entityClass) {
+        this(entityClass, GlobalConfiguration.instance().isMemoryOffHeap());
+    }
+
+    /**
+     * @param offHeap store the entities encoded in direct buffers instead of the heap,
+     *                and decode them on every read
+     */
+    public MemoryDataAccess(Class<E> entityClass, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.entitiesMap = offHeap ? new OffHeapEntityMap<>(entityClass) : new ConcurrentHashMap<>();
         tableMap.put(entityClass, entitiesMap);
+        this.entityClass = entityClass;
+        this.entityCopier = EntityCopier.of(entityClass);
 
         // init fields
         Field[] allFields = FieldUtils.getAllFields(entityClass);
         List<Field> tempFields = new ArrayList<>(allFields.length);
         Arrays.stream(allFields).filter(CommonUtil::fieldFilter).forEachOrdered(tempFields::add);
-        fields = Collections.unmodifiableList(tempFields);
+        fieldAccessors = tempFields.stream().map(FieldAccessor::of).toArray(FieldAccessor[]::new);
         Field[] idFields = FieldUtils.getFieldsWithAnnotation(entityClass, Id.class);
         if (idFields.length == 1 && idFields[0].isAnnotationPresent(GeneratedValue.class)) {
-            idField = idFields[0];
+            Field idField = idFields[0];
+            idAccessor = FieldAccessor.of(idField);
             Class<I> type;
             try {
                 type = (Class<I>) BeanUtil.getActualTypeArguments(entityClass)[0];
@@ -56,16 +99,199 @@ public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable,
             }
             idFieldType = type;
         } else {
-            idField = null;
+            idAccessor = null;
             idFieldType = null;
         }
 
+        String dataDirectory = GlobalConfiguration.instance().getMemoryDataDirectory();
+        if (dataDirectory != null) {
+            openJournal(new File(dataDirectory));
+        }
+        Table table = entityClass.getAnnotation(Table.class);
+        if (table != null) {
+            tableNameMap.put(table.name(), this);
+        }
+    }
+
+    /**
+     * @return the latest data access created for the entities of the table, which serves the nested queries and joins
+     */
+    static MemoryDataAccess<?, ?, ?> forTable(String tableName) {
+        MemoryDataAccess<?, ?, ?> dataAccess = tableNameMap.get(tableName);
+        if (dataAccess == null) {
+            throw new IllegalArgumentException("Table [" + tableName + "] not found in memory");
+        }
+        return dataAccess;
+    }
+
+    Class<E> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Stream the stored entities matching a query object of any class without copying them,
+     * and the paging of the query is ignored as a subquery does.
+     */
+    Stream<E> scan(Object query) {
+        return filter((Q) query, false);
+    }
+
+    /**
+     * Stream the stored entities matching the condition of a single query field without copying them.
+     */
+    Stream<E> scan(Field queryField, Object value) {
+        FieldCondition condition = new FieldCondition(queryField, entityClass);
+        return entitiesMap.values().stream().filter(entity -> condition.match(value, entity));
+    }
+
+    /**
+     * Persist the entities into the directory by a snapshot and a write-ahead log,
+     * and load the entities persisted there before.
+     */
+    public void enablePersistence(File directory) {
+        openJournal(directory);
+    }
+
+    private synchronized void openJournal(File directory) {
+        if (journal != null) {
+            throw new IllegalStateException("Persistence is already enabled for " + entityClass.getName());
+        }
+        MemoryJournal<E> memoryJournal = new MemoryJournal<>(
+                directory, entityClass, GlobalConfiguration.instance().getMemorySnapshotInterval(), entitiesMap::values);
+        try {
+            memoryJournal.load(e -> {
+                entitiesMap.put(e.getId(), e);
+                index(e.getId(), e);
+            }, id -> {
+                unindex((I) id);
+                entitiesMap.remove(id);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the entities of " + entityClass.getName(), e);
+        }
+        if (idAccessor != null) {
+            entitiesMap.keySet().stream().filter(Number.class::isInstance)
+                       .mapToLong(id -> ((Number) id).longValue()).max().ifPresent(idGenerator::set);
+        }
+        journal = memoryJournal;
+    }
+
+    /**
+     * Write a snapshot of all the entities and empty the write-ahead log.
+     * The writes are only blocked while the log is rotated.
+     */
+    public void snapshot() {
+        MemoryJournal<E> memoryJournal = requireJournal();
+        try {
+            rotate(memoryJournal);
+            memoryJournal.writeSnapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the snapshot of " + entityClass.getName(), e);
+        }
+    }
+
+    private void rotate(MemoryJournal<E> memoryJournal) throws IOException {
+        Lock lock = commitLock.writeLock();
+        lock.lock();
+        try {
+            memoryJournal.rotate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write a snapshot and stop persisting the entities, and the writes are blocked until it is written
+     * so that the snapshot contains none of the writes after the persistence is disabled.
+     */
+    public synchronized void disablePersistence() {
+        MemoryJournal<E> memoryJournal = requireJournal();
+        Lock lock = commitLock.writeLock();
+        lock.lock();
+        try {
+            memoryJournal.rotate();
+            memoryJournal.writeSnapshot();
+            closeJournal(memoryJournal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the snapshot of " + entityClass.getName(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeJournal(MemoryJournal<E> memoryJournal) {
+        try {
+            memoryJournal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the journal of {}: {}", entityClass.getName(), e.getMessage());
+        }
+        journal = null;
+    }
+
+    private MemoryJournal<E> requireJournal() {
+        MemoryJournal<E> memoryJournal = journal;
+        if (memoryJournal == null) {
+            throw new IllegalStateException("Persistence is not enabled for " + entityClass.getName());
+        }
+        return memoryJournal;
+    }
+
+    /**
+     * Declare a hash index of the property for the Eq and In conditions.
+     * The entities should be modified through this data access to keep the indexes in sync.
+     */
+    public void addIndex(String property) {
+        addIndex(new MemoryIndex<>(entityClass, property, false));
+    }
+
+    /**
+     * Declare a sorted index of the property for the Eq, In, Gt, Ge, Lt, Le and Start conditions.
+     */
+    public void addSortedIndex(String property) {
+        addIndex(new MemoryIndex<>(entityClass, property, true));
+    }
+
+    /**
+     * The index is registered before being filled, so that the writes committed since then index themselves,
+     * and it is used by the queries after the entities committed before are filled into it.
+     */
+    private void addIndex(MemoryIndex<I> memoryIndex) {
+        indexMap.put(memoryIndex.getProperty(), memoryIndex);
+        Lock lock = commitLock.writeLock();
+        lock.lock();
+        List<I> ids;
+        try {
+            ids = new ArrayList<>(entitiesMap.keySet());
+        } finally {
+            lock.unlock();
+        }
+        for (I id : ids) {
+            entitiesMap.compute(id, (key, entity) -> {
+                if (entity != null) {
+                    memoryIndex.put(key, entity);
+                }
+                return entity;
+            });
+        }
+        memoryIndex.markReady();
+    }
+
+    private void index(I id, E entity) {
+        for (MemoryIndex<I> memoryIndex : indexMap.values()) {
+            memoryIndex.put(id, entity);
+        }
+    }
+
+    private void unindex(I id) {
+        for (MemoryIndex<I> memoryIndex : indexMap.values()) {
+            memoryIndex.remove(id);
+        }
     }
 
     protected void generateNewId(E entity) {
         try {
             Object newId = chooseIdValue(idGenerator.incrementAndGet(), idFieldType);
-            writeField(idField, entity, newId);
+            idAccessor.write(entity, newId);
         } catch (Exception e) {
             log.warn("写入id失败: {} - {}", entity.getClass(), e.getMessage());
         }
@@ -79,9 +305,22 @@ public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable,
         return t;
     }
 
+    /**
+     * The entities decoded from the off-heap storage are already detached from it.
+     */
+    private E copy(E e) {
+        return offHeap ? e : entityCopier.copy(e);
+    }
+
     @Override
     public E get(IdWrapper<I> idWrapper) {
-        return SerializationUtils.clone(entitiesMap.get(idWrapper.getId()));
+        return copy(entitiesMap.get(idWrapper.getId()));
+    }
+
+    @Override
+    public List<E> get(Collection<I> ids) {
+        return ids.stream().map(entitiesMap::get).filter(Objects::nonNull)
+                  .map(this::copy).collect(Collectors.toList());
     }
 
     @Override
@@ -91,112 +330,401 @@ public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable,
 
     @Override
     public void create(E e) {
-        if (idField != null) {
+        if (idAccessor != null) {
             generateNewId(e);
         }
-        entitiesMap.put(e.getId(), e);
+        E copy = entityCopier.copy(e);
+        compute(copy.getId(), origin -> copy);
     }
 
     @Override
     public int update(E e) {
-        return entitiesMap.put(e.getId(), e) == null ? 0 : 1;
+        E copy = entityCopier.copy(e);
+        return compute(copy.getId(), origin -> copy) == null ? 0 : 1;
     }
 
     @Override
     public int patch(E patch) {
-        E origin = entitiesMap.get(patch.getId());
-        if (origin == null) {
-            return 0;
-        }
-
-        for (Field field : fields) {
-            Object value = readField(field, patch);
-            if (value != null) {
-                writeField(field, origin, value);
-            }
-        }
-        return 1;
+        return compute(patch.getId(), origin -> origin == null ? null : merge(origin, patch)) == null ? 0 : 1;
     }
 
+    /**
+     * Each matched entity is patched atomically if it still matches the query,
+     * and the id of the patch entity is left untouched.
+     */
     @Override
     public int patch(E p, Q q) {
-        List<E> list = query(q);
-        for (E origin : list) {
-            p.setId(origin.getId());
-            patch(p);
+        Predicate<E> predicate = buildFilter(q);
+        AtomicInteger count = new AtomicInteger();
+        for (I id : selectIds(q)) {
+            compute(id, origin -> {
+                if (origin == null || !predicate.test(origin)) {
+                    return origin;
+                }
+                count.incrementAndGet();
+                return merge(origin, p);
+            });
         }
-        return list.size();
+        return count.get();
+    }
+
+    /**
+     * Copy the entity with the non-null fields of the patch written,
+     * since the stored entities are shared by the concurrent readers.
+     */
+    private E merge(E origin, E patch) {
+        E target = entityCopier.copy(origin);
+        for (FieldAccessor fieldAccessor : fieldAccessors) {
+            Object value = fieldAccessor.read(patch);
+            if (value != null) {
+                fieldAccessor.write(target, value);
+            }
+        }
+        target.setId(origin.getId());
+        return target;
     }
 
     @Override
     public int delete(IdWrapper<I> idWrapper) {
-        return entitiesMap.remove(idWrapper.getId()) == null ? 0 : 1;
+        return compute(idWrapper.getId(), origin -> null) == null ? 0 : 1;
     }
 
+    /**
+     * Each matched entity is deleted atomically if it still matches the query.
+     */
     @Override
     public int delete(Q query) {
-        List<E> list = query(query);
-        list.stream().map(Persistable::getId).forEach(entitiesMap::remove);
-        return list.size();
+        Predicate<E> predicate = buildFilter(query);
+        AtomicInteger count = new AtomicInteger();
+        for (I id : selectIds(query)) {
+            compute(id, origin -> {
+                if (origin == null || !predicate.test(origin)) {
+                    return origin;
+                }
+                count.incrementAndGet();
+                return null;
+            });
+        }
+        return count.get();
     }
 
     /**
-     * 根据Query对象筛选符合条件的Entity对象
+     * Replace the entity of the id by the remapping function atomically per id, with the indexes
+     * and the journal updated in the same order as the entities. The stored entities are replaced
+     * instead of mutated, so the readers never block and always see whole entities.
+     * Returning the origin entity from the function leaves everything untouched.
+     * <p>
+     * The journal is appended before the map commits the entity, so the log due is rotated
+     * after the commit, excluding the writes in progress by the lock, and the snapshot replacing
+     * the rotated log is written in the background.
      *
-     * @param query  Query
-     * @param entity Entity
-     * @return true, Entity符合条件需要保留; false, Entity不符合条件需要过滤掉
+     * @return the origin entity of the id, or null if absent
      */
-    protected boolean filterByQuery(Q query, E entity) {
-        for (Field field : query.getClass().getDeclaredFields()) {
-            if (supportFilter(field)) {
-                Object value = readField(field, query);
-                if (isValidValue(value, field) && shouldDiscard(entity, field.getName(), value)) {
-                    return false;
+    private E compute(I id, UnaryOperator<E> remapping) {
+        MemoryJournal<E> memoryJournal = journal;
+        Lock lock = commitLock.readLock();
+        lock.lock();
+        E origin;
+        try {
+            origin = compute(id, remapping, memoryJournal);
+        } finally {
+            lock.unlock();
+        }
+        if (memoryJournal != null && memoryJournal.isSnapshotDue()) {
+            boolean rotated;
+            lock = commitLock.writeLock();
+            lock.lock();
+            try {
+                rotated = memoryJournal.rotateIfDue();
+            } finally {
+                lock.unlock();
+            }
+            if (rotated) {
+                memoryJournal.scheduleSnapshot();
+            }
+        }
+        return origin;
+    }
+
+    private E compute(I id, UnaryOperator<E> remapping, MemoryJournal<E> memoryJournal) {
+        Object[] holder = new Object[1];
+        entitiesMap.compute(id, (key, origin) -> {
+            holder[0] = origin;
+            E entity = remapping.apply(origin);
+            // intentionally use ==
+            if (entity == origin) {
+                return origin;
+            }
+            if (entity == null) {
+                unindex(key);
+                if (memoryJournal != null) {
+                    memoryJournal.delete(key);
                 }
+            } else {
+                index(key, entity);
+                if (memoryJournal != null) {
+                    memoryJournal.put(entity);
+                }
+            }
+            return entity;
+        });
+        return (E) holder[0];
+    }
+
+    private List<I> selectIds(Q query) {
+        Set<String> fieldNames = offHeap ? resolvePageColumnNames(query) : null;
+        return select(query, total -> {}, fieldNames).stream().map(E::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Compile the query into a predicate of the entities, so that filtering a row
+     * only calls the pre-resolved accessors and matchers.
+     */
+    protected Predicate<E> buildFilter(Q query) {
+        List<Predicate<E>> predicates = new ArrayList<>();
+        for (FieldCondition condition : resolveConditions(query)) {
+            Object value = readField(condition.queryField, query);
+            if (isValidValue(value, condition.queryField)) {
+                predicates.add(entity -> condition.match(value, entity));
+            }
+        }
+        for (MemoryNestedQuery nestedQuery : resolveNestedQueries(query)) {
+            Object value = readField(nestedQuery.getQueryField(), query);
+            if (isValidValue(value, nestedQuery.getQueryField())) {
+                predicates.add(nestedQuery.compile(value)::test);
             }
         }
-        return true;
+        return predicates.stream().reduce(Predicate::and).orElse(entity -> true);
     }
 
-    private boolean supportFilter(Field field) {
+    private FieldCondition[] resolveConditions(Q query) {
+        return conditionsMap.computeIfAbsent(query.getClass(), queryClass -> Arrays
+                .stream(queryClass.getDeclaredFields())
+                .filter(MemoryDataAccess::supportFilter)
+                .map(field -> new FieldCondition(field, entityClass))
+                .toArray(FieldCondition[]::new));
+    }
+
+    private static boolean supportFilter(Field field) {
         return fieldFilter(field) && !field.isAnnotationPresent(NestedQueries.class);
     }
 
-    protected boolean shouldDiscard(E entity, String queryFieldName, Object queryFieldValue) {
-        if (containsOr(queryFieldName)) {
-            boolean result = true;
-            for (String fieldName : splitByOr(queryFieldName)) {
-                result &= shouldDiscard(entity, fieldName, queryFieldValue);
+    private MemoryNestedQuery[] resolveNestedQueries(Q query) {
+        return nestedQueriesMap.computeIfAbsent(query.getClass(), queryClass -> Arrays
+                .stream(queryClass.getDeclaredFields())
+                .filter(field -> fieldFilter(field) && field.isAnnotationPresent(NestedQueries.class))
+                .map(field -> new MemoryNestedQuery(field, entityClass))
+                .toArray(MemoryNestedQuery[]::new));
+    }
+
+    /**
+     * Entities matching the query, which are narrowed by the most selective index before being filtered,
+     * and filtered in parallel when allowed and the candidates reach {@link GlobalConfiguration#getParallelScanThreshold()}.
+     */
+    private Stream<E> filter(Q query, boolean parallel) {
+        return filter(query, parallel, null);
+    }
+
+    /**
+     * @param fieldNames the fields used from the filtered entities including the fields of the conditions,
+     *                   so that the entities stored off the heap are decoded partially, null to use all the fields
+     */
+    private Stream<E> filter(Q query, boolean parallel, Set<String> fieldNames) {
+        Collection<I> ids = planCandidates(query);
+        Predicate<E> predicate = buildFilter(query);
+        Stream<E> stream;
+        if (ids != null) {
+            stream = ids.stream().map(entitiesMap::get).filter(Objects::nonNull).filter(predicate);
+        } else if (offHeap) {
+            stream = ((OffHeapEntityMap<I, E>) entitiesMap).filter(
+                    fieldNames == null ? resolveColumnNames(query) : fieldNames, predicate, fieldNames == null);
+        } else {
+            stream = entitiesMap.values().stream().filter(predicate);
+        }
+        int threshold = GlobalConfiguration.instance().getParallelScanThreshold();
+        if (parallel && threshold > 0 && (ids == null ? entitiesMap.size() : ids.size()) >= threshold) {
+            stream = stream.parallel();
+        }
+        return stream;
+    }
+
+    private Set<String> resolveColumnNames(Q query) {
+        Set<String> columnNames = new HashSet<>();
+        for (FieldCondition condition : resolveConditions(query)) {
+            if (!isValidValue(readField(condition.queryField, query), condition.queryField)) {
+                continue;
+            }
+            if (condition.orConditions == null) {
+                columnNames.add(condition.columnName);
+            } else {
+                Arrays.stream(condition.orConditions).forEach(orCondition -> columnNames.add(orCondition.columnName));
+            }
+        }
+        for (MemoryNestedQuery nestedQuery : resolveNestedQueries(query)) {
+            if (isValidValue(readField(nestedQuery.getQueryField(), query), nestedQuery.getQueryField())) {
+                columnNames.add(nestedQuery.getColumnName());
             }
-            return result;
         }
-        QuerySuffix querySuffix = resolve(queryFieldName);
-        String columnName = querySuffix.resolveColumnName(queryFieldName);
-        FilterExecutor.Matcher matcher = FilterExecutor.get(querySuffix);
+        return columnNames;
+    }
 
-        Object entityFieldValue = readField(entity, columnName);
-        return !matcher.match(queryFieldValue, entityFieldValue);
+    /**
+     * @return the ids of the fewest candidates resolved by the indexes, or null to scan all the entities
+     */
+    private Collection<I> planCandidates(Q query) {
+        if (indexMap.isEmpty()) {
+            return null;
+        }
+        Collection<I> candidates = null;
+        for (FieldCondition condition : resolveConditions(query)) {
+            MemoryIndex<I> memoryIndex = condition.orConditions == null ? indexMap.get(condition.columnName) : null;
+            if (memoryIndex == null || !memoryIndex.isReady()) {
+                continue;
+            }
+            Object value = readField(condition.queryField, query);
+            if (!isValidValue(value, condition.queryField)) {
+                continue;
+            }
+            Collection<I> ids = memoryIndex.lookup(condition.querySuffix, value);
+            if (ids != null && (candidates == null || ids.size() < candidates.size())) {
+                candidates = ids;
+                if (candidates.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        return candidates;
     }
 
     @Override
     public List<E> query(Q query) {
-        List<E> queryList = entitiesMap
-                .values().stream()
-                .filter(item -> filterByQuery(query, item))
-                .collect(Collectors.toList());
+        return queryWithTotal(query, total -> {});
+    }
 
+    /**
+     * The entities are returned as copies, so the stored ones are not mutated by the callers.
+     */
+    @Override
+    public List<E> queryWithTotal(Q query, LongConsumer totalConsumer) {
+        if (offHeap && query.needPaging()) {
+            // only the entities within the page are decoded completely
+            return select(query, totalConsumer, resolvePageColumnNames(query)).stream().map(e -> entitiesMap.get(e.getId()))
+                                                                             .filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        return select(query, totalConsumer).stream().map(this::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the names of the fields to filter, sort and identify the entities
+     */
+    private Set<String> resolvePageColumnNames(Q query) {
+        Set<String> fieldNames = resolveColumnNames(query);
+        fieldNames.add("id");
         if (query.getSort() != null) {
-            doSort(queryList, query.getSort());
+            for (String order : query.getSort().split(";")) {
+                fieldNames.add(toCamelCase(order.split(",")[0]));
+            }
+        }
+        return fieldNames;
+    }
+
+    private List<E> select(Q query, LongConsumer totalConsumer) {
+        return select(query, totalConsumer, null);
+    }
+
+    /**
+     * The total count is the size of the filtered entities before paging,
+     * and only the entities up to the end of the page are sorted when paging.
+     */
+    private List<E> select(Q query, LongConsumer totalConsumer, Set<String> fieldNames) {
+        return paginate(filter(query, true, fieldNames).collect(Collectors.toList()), query, this::buildComparator, totalConsumer);
+    }
+
+    /**
+     * Seek, sort and page the filtered entities by the query, and report the total count of them before paging.
+     */
+    static <T> List<T> paginate(List<T> queryList, PageQuery query, Function<String, Comparator<? super T>> comparatorBuilder, LongConsumer totalConsumer) {
+        Comparator<? super T> comparator = null;
+        KeysetCursor keysetCursor = KeysetCursor.of(query, "id");
+        if (keysetCursor != null) {
+            queryList = seek(queryList, keysetCursor, query.getAfter());
+            comparator = keysetCursor.comparator();
+        } else if (query.getSort() != null) {
+            comparator = comparatorBuilder.apply(query.getSort());
+        }
+        if (!query.isKeysetPaging() || query.getAfter().isEmpty()) {
+            totalConsumer.accept(queryList.size());
         }
         if (query.needPaging()) {
+            if (comparator != null) {
+                queryList = sortTop(queryList, comparator, (int) Math.min(Integer.MAX_VALUE, (long) query.calcOffset() + query.getPageSize()));
+            }
             queryList = truncateByPaging(queryList, query);
+        } else if (comparator != null) {
+            queryList.sort(comparator);
         }
 
         return queryList;
     }
 
-    private List<E> truncateByPaging(List<E> queryList, PageQuery pageQuery) {
+    /**
+     * Select the first n entities in the order of the comparator by a bounded heap instead of sorting all of them,
+     * and the ties keep the order of the list as a stable sort does.
+     */
+    static <T> List<T> sortTop(List<T> list, Comparator<? super T> comparator, int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        if (n >= list.size() / 2) {
+            list.sort(comparator);
+            return list;
+        }
+        Comparator<Integer> indexComparator = (i, j) -> {
+            int ret = comparator.compare(list.get(i), list.get(j));
+            return ret != 0 ? ret : Integer.compare(i, j);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(n + 1, indexComparator.reversed());
+        for (int i = 0; i < list.size(); i++) {
+            if (heap.size() < n) {
+                heap.add(i);
+            } else if (indexComparator.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        Integer[] indexes = heap.toArray(new Integer[0]);
+        Arrays.sort(indexes, indexComparator);
+        List<T> top = new ArrayList<>(indexes.length);
+        for (Integer index : indexes) {
+            top.add(list.get(index));
+        }
+        return top;
+    }
+
+    /**
+     * Entities are filtered lazily unless they need to be sorted.
+     */
+    @Override
+    public Stream<E> stream(Q query) {
+        if (query.getSort() != null || query.isKeysetPaging()) {
+            return query(query).stream();
+        }
+        Stream<E> stream = filter(query, false);
+        if (query.needPaging()) {
+            stream = stream.skip(query.calcOffset()).limit(query.getPageSize());
+        }
+        return stream.map(this::copy);
+    }
+
+    private static <T> List<T> seek(List<T> queryList, KeysetCursor keysetCursor, String after) {
+        if (!after.isEmpty()) {
+            Object[] values = keysetCursor.decode(after);
+            queryList = queryList.stream().filter(item -> keysetCursor.isAfter(item, values)).collect(Collectors.toList());
+        }
+        return queryList;
+    }
+
+    private static <T> List<T> truncateByPaging(List<T> queryList, PageQuery pageQuery) {
         int from = pageQuery.calcOffset();
         int end = Math.min(queryList.size(), from + pageQuery.getPageSize());
         if (from <= end) {
@@ -208,7 +736,7 @@ public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable,
     @Override
     @SneakyThrows
     public <V> List<V> queryColumns(Q q, Class<V> classV, String... columns) {
-        List<E> entities = query(q);
+        List<E> entities = select(q, total -> {});
         List<V> objects = new ArrayList<>(entities.size());
         if (columns.length == 1) {
             return entities.stream().map(entity -> (V) readField(entity, columns[0])).collect(Collectors.toList());
@@ -220,27 +748,91 @@ public class MemoryDataAccess<E extends Persistable<I>, I extends Serializable,
         return objects;
     }
 
-    protected void doSort(List<E> queryList, String sort) {
-        String[] orders = sort.split(";");
-        for (int i = orders.length - 1; i >= 0; i--) {
-            String order = orders[i];
-            queryList.sort((o1, o2) -> {
-                String[] pd = order.split(",");
-                String property = toCamelCase(pd[0]);
-                Comparable<Object> c1 = (Comparable<Object>) readField(o1, property);
-                Object c2 = readField(o2, property);
-                int ret = c1.compareTo(c2);
-                return "asc".equalsIgnoreCase(pd[1]) ? ret : -ret;
-            });
+    /**
+     * Compose the comparator of the sort like <i>valid,asc;id,desc</i> once,
+     * with the accessors of the properties resolved and the null values ordered first.
+     */
+    protected Comparator<E> buildComparator(String sort) {
+        return comparing(entityClass, sort);
+    }
+
+    static <T> Comparator<T> comparing(Class<?> entityClass, String sort) {
+        Comparator<T> comparator = null;
+        for (String order : sort.split(";")) {
+            String[] pd = order.split(",");
+            FieldAccessor fieldAccessor = FieldAccessor.of(entityClass, toCamelCase(pd[0]));
+            Comparator<T> next = (o1, o2) -> compareValue(fieldAccessor.read(o1), fieldAccessor.read(o2));
+            next = "asc".equalsIgnoreCase(pd[1]) ? next : next.reversed();
+            comparator = comparator == null ? next : comparator.thenComparing(next);
         }
+        return comparator;
+    }
+
+    static int compareValue(Object v1, Object v2) {
+        if (v1 == null || v2 == null) {
+            return v1 == null ? (v2 == null ? 0 : -1) : 1;
+        }
+        return ((Comparable<Object>) v1).compareTo(v2);
     }
 
     @Override
     public long count(Q query) {
-        return entitiesMap.values().stream().filter(item -> filterByQuery(query, item)).count();
+        return filter(query, true, resolveColumnNames(query)).count();
+    }
+
+    /**
+     * Condition of a query field with the suffix, the matcher and the entity accessor resolved,
+     * and a field containing <i>Or</i> matches if any of its split conditions matches.
+     */
+    private static final class FieldCondition {
+        private final Field queryField;
+        private final QuerySuffix querySuffix;
+        private final String columnName;
+        private final FilterExecutor.Matcher matcher;
+        private final FieldAccessor entityAccessor;
+        private final FieldCondition[] orConditions;
+
+        FieldCondition(Field queryField, Class<?> entityClass) {
+            this(queryField, queryField.getName(), entityClass);
+        }
+
+        private FieldCondition(Field queryField, String fieldName, Class<?> entityClass) {
+            this.queryField = queryField;
+            if (containsOr(fieldName)) {
+                this.querySuffix = null;
+                this.columnName = null;
+                this.matcher = null;
+                this.entityAccessor = null;
+                this.orConditions = Arrays.stream(splitByOr(fieldName))
+                                          .map(name -> new FieldCondition(queryField, name, entityClass))
+                                          .toArray(FieldCondition[]::new);
+            } else {
+                this.querySuffix = resolve(fieldName);
+                this.columnName = querySuffix.resolveColumnName(fieldName);
+                this.matcher = FilterExecutor.get(querySuffix);
+                Field entityField = FieldUtils.getField(entityClass, columnName, true);
+                this.entityAccessor = entityField == null ? null : FieldAccessor.of(entityClass, entityField);
+                this.orConditions = null;
+            }
+        }
+
+        boolean match(Object value, Object entity) {
+            if (orConditions == null) {
+                if (entityAccessor == null) {
+                    throw new IllegalArgumentException("Field [" + columnName + "] not found in " + entity.getClass().getName());
+                }
+                return matcher.match(value, entityAccessor.read(entity));
+            }
+            for (FieldCondition orCondition : orConditions) {
+                if (orCondition.match(value, entity)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
-    private static class FilterExecutor {
+    static class FilterExecutor {
 
         static final Map<QuerySuffix, Matcher> map = new EnumMap<>(QuerySuffix.class);
 
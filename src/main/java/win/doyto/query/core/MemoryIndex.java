@@ -0,0 +1,151 @@
+package win.doyto.query.core;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * MemoryIndex
+ * <p>
+ * Secondary index of an entity property for {@link MemoryDataAccess}, which maps the property values
+ * to the ids of the entities. A hash index serves the Eq and In conditions, and a sorted index serves
+ * the Gt, Ge, Lt, Le and Start conditions in addition. Entities with a null value are not indexed,
+ * since none of these conditions matches a null value.
+ *
+ * @author f0rb on 2021-07-27
+ */
+final class MemoryIndex<I> {
+
+    private final String property;
+    private final FieldAccessor fieldAccessor;
+    private final Class<?> keyType;
+    private final boolean sorted;
+    private final Map<Object, Set<I>> valueIdsMap;
+    private final Map<I, Object> idValueMap = new HashMap<>();
+    private volatile boolean ready;
+
+    MemoryIndex(Class<?> entityClass, String property, boolean sorted) {
+        Field field = FieldUtils.getField(entityClass, property, true);
+        if (field == null) {
+            throw new IllegalArgumentException("Field [" + property + "] not found in " + entityClass.getName());
+        }
+        this.property = property;
+        this.fieldAccessor = FieldAccessor.of(entityClass, field);
+        this.keyType = ClassUtils.primitiveToWrapper(field.getType());
+        this.sorted = sorted;
+        this.valueIdsMap = sorted ? new TreeMap<>() : new HashMap<>();
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    /**
+     * @return whether all the entities are filled into the index, so that it can serve the queries
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    void markReady() {
+        ready = true;
+    }
+
+    synchronized void put(I id, Object entity) {
+        remove(id);
+        Object value = fieldAccessor.read(entity);
+        if (value != null) {
+            idValueMap.put(id, value);
+            valueIdsMap.computeIfAbsent(value, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    synchronized void remove(I id) {
+        Object value = idValueMap.remove(id);
+        if (value != null) {
+            Set<I> ids = valueIdsMap.get(value);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                valueIdsMap.remove(value);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the entities which may match the condition,
+     * or null if the condition is not supported by the index
+     */
+    synchronized Collection<I> lookup(QuerySuffix querySuffix, Object value) {
+        switch (querySuffix) {
+            case NONE:
+            case Eq:
+                return isKey(value) ? copy(valueIdsMap.get(value)) : null;
+            case In:
+                return lookupIn((Collection<?>) value);
+            case Gt:
+            case Ge:
+                return isRangeKey(value) ? union(navigableMap().tailMap(value, querySuffix == QuerySuffix.Ge).values()) : null;
+            case Lt:
+            case Le:
+                return isRangeKey(value) ? union(navigableMap().headMap(value, querySuffix == QuerySuffix.Le).values()) : null;
+            case Start:
+                return isRangeKey(value) && value instanceof String ? lookupStart((String) value) : null;
+            default:
+                return null;
+        }
+    }
+
+    private Collection<I> lookupIn(Collection<?> values) {
+        List<Set<I>> idsList = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (!isKey(value)) {
+                return null;
+            }
+            idsList.add(valueIdsMap.get(value));
+        }
+        return union(idsList);
+    }
+
+    private Collection<I> lookupStart(String prefix) {
+        List<Set<I>> idsList = new ArrayList<>();
+        for (Map.Entry<Object, Set<I>> entry : navigableMap().tailMap(prefix, true).entrySet()) {
+            if (!((String) entry.getKey()).startsWith(prefix)) {
+                break;
+            }
+            idsList.add(entry.getValue());
+        }
+        return union(idsList);
+    }
+
+    /**
+     * Keys of a sorted index are compared with the value, which requires the same type.
+     */
+    private boolean isKey(Object value) {
+        return value != null && (!sorted || keyType.isInstance(value));
+    }
+
+    private boolean isRangeKey(Object value) {
+        return sorted && keyType.isInstance(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private NavigableMap<Object, Set<I>> navigableMap() {
+        return (NavigableMap<Object, Set<I>>) valueIdsMap;
+    }
+
+    private static <I> Collection<I> copy(Set<I> ids) {
+        return ids == null ? Collections.emptyList() : new ArrayList<>(ids);
+    }
+
+    private static <I> Collection<I> union(Collection<Set<I>> idsList) {
+        Set<I> result = new HashSet<>();
+        for (Set<I> ids : idsList) {
+            if (ids != null) {
+                result.addAll(ids);
+            }
+        }
+        return result;
+    }
+}
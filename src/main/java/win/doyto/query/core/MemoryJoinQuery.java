@@ -0,0 +1,567 @@
+package win.doyto.query.core;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import win.doyto.query.annotation.Joins;
+import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.annotation.QueryField;
+import win.doyto.query.annotation.QueryTableAlias;
+import win.doyto.query.core.MemoryDataAccess.FilterExecutor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.Column;
+import javax.persistence.Table;
+
+import static win.doyto.query.core.CommonUtil.*;
+
+/**
+ * MemoryJoinQuery
+ * <p>
+ * Run the view annotated by {@link Joins} over the tables in memory of {@link MemoryDataAccess},
+ * as {@link JoinQueryBuilder} does by SQL. Each join is a hash join which builds a hash table of the joined
+ * table by the equality columns of its ON clause, then probes it with the joined rows so far.
+ * The conditions of a single table are applied before joining when it does not change the result,
+ * and the joined rows are grouped by {@link Joins#groupBy()} with the aggregate functions
+ * count, sum, avg, max and min in the columns and {@link Joins#having()}.
+ * <p>
+ * The ON clauses only support the equality of the columns, the placeholders and the literals joined by AND,
+ * and the HAVING clause only supports the comparison of the columns and the literals joined by AND.
+ *
+ * @author f0rb on 2021-07-28
+ */
+public class MemoryJoinQuery<E> {
+
+    private static final Pattern PTN_JOIN = Pattern.compile(
+            "(?:(left|inner)\\s+(?:outer\\s+)?)?join\\s+(\\w+)\\s+(?:as\\s+)?(\\w+)\\s+on\\s+(.+)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern PTN_AND = Pattern.compile("\\s+and\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PTN_AGGREGATE = Pattern.compile("(count|sum|avg|max|min)\\s*\\((.+)\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PTN_COMPARISON = Pattern.compile("(.+?)\\s*(>=|<=|<>|!=|=|>|<)\\s*(.+)");
+    private static final Pattern PTN_PLACE_HOLDER = Pattern.compile("#\\{(\\w+)}");
+    private static final ConversionService conversionService = DefaultConversionService.getSharedInstance();
+
+    private final Class<E> viewClass;
+    private final MethodHandle constructor;
+    private final List<String> tables = new ArrayList<>();
+    private final List<String> aliases = new ArrayList<>();
+    private final List<JoinStep> joinSteps = new ArrayList<>();
+    private final Set<String> placeholders = new HashSet<>();
+    private final FieldAccessor[] viewAccessors;
+    private final Operand[] viewOperands;
+    private final Operand[] groupByOperands;
+    private final Comparison[] havingComparisons;
+    private final boolean aggregate;
+
+    public MemoryJoinQuery(Class<E> viewClass) {
+        this.viewClass = viewClass;
+        this.constructor = EntityCopier.resolveConstructor(viewClass);
+        String[] from = StringUtils.split(viewClass.getAnnotation(Table.class).name());
+        tables.add(from[0]);
+        aliases.add(from[from.length - 1]);
+
+        Joins joins = viewClass.getAnnotation(Joins.class);
+        for (Joins.Join join : joins.value()) {
+            joinSteps.add(parseJoin(join.value()));
+        }
+
+        List<Field> fields = Arrays.stream(viewClass.getDeclaredFields()).filter(CommonUtil::fieldFilter).collect(Collectors.toList());
+        viewAccessors = fields.stream().map(field -> FieldAccessor.of(viewClass, field)).toArray(FieldAccessor[]::new);
+        viewOperands = fields.stream().map(field -> {
+            Column column = field.getAnnotation(Column.class);
+            return parseOperand(column != null && !column.name().isEmpty() ? column.name() : field.getName());
+        }).toArray(Operand[]::new);
+        groupByOperands = Arrays.stream(StringUtils.split(joins.groupBy(), ','))
+                                .map(String::trim).map(this::parseOperand).toArray(Operand[]::new);
+        havingComparisons = splitByAnd(joins.having()).stream().map(this::parseComparison).toArray(Comparison[]::new);
+        aggregate = groupByOperands.length > 0 || havingComparisons.length > 0
+                || Arrays.stream(viewOperands).anyMatch(operand -> operand.function != null);
+    }
+
+    private static List<String> splitByAnd(String clause) {
+        return clause.trim().isEmpty() ? Collections.emptyList() : Arrays.asList(PTN_AND.split(clause.trim()));
+    }
+
+    private JoinStep parseJoin(String join) {
+        Matcher matcher = PTN_JOIN.matcher(join.trim());
+        if (!matcher.matches()) {
+            throw new UnsupportedOperationException("Join clause is not supported in memory: " + join);
+        }
+        tables.add(matcher.group(2));
+        aliases.add(matcher.group(3));
+        JoinStep joinStep = new JoinStep("left".equalsIgnoreCase(matcher.group(1)), aliases.size() - 1);
+        for (String term : splitByAnd(matcher.group(4))) {
+            Comparison comparison = parseComparison(term);
+            if (!"=".equals(comparison.op)) {
+                throw new UnsupportedOperationException("Join condition is not supported in memory: " + term);
+            }
+            joinStep.addCondition(comparison.left, comparison.right, term);
+        }
+        return joinStep;
+    }
+
+    private Comparison parseComparison(String term) {
+        Matcher matcher = PTN_COMPARISON.matcher(term.trim());
+        if (!matcher.matches()) {
+            throw new UnsupportedOperationException("Condition is not supported in memory: " + term);
+        }
+        return new Comparison(parseOperand(matcher.group(1)), matcher.group(2), parseOperand(matcher.group(3)));
+    }
+
+    private Operand parseOperand(String expression) {
+        String text = expression.trim();
+        Matcher placeholder = PTN_PLACE_HOLDER.matcher(text);
+        if (placeholder.matches()) {
+            placeholders.add(placeholder.group(1));
+            return new Operand(null, -1, null, null, placeholder.group(1));
+        }
+        Matcher function = PTN_AGGREGATE.matcher(text);
+        if (function.matches()) {
+            String argument = function.group(2).trim();
+            Operand operand = "*".equals(argument) ? null : parseOperand(argument);
+            return new Operand(function.group(1).toLowerCase(), -1, null, operand, null);
+        }
+        if (text.matches("[a-zA-Z_]\\w*(\\.\\w+)?") && !text.matches("(?i)true|false|null")) {
+            int dot = text.indexOf('.');
+            if (dot < 0) {
+                return new Operand(null, -1, toCamelCase(text), null, null);
+            }
+            int alias = aliases.indexOf(text.substring(0, dot));
+            if (alias >= 0) {
+                return new Operand(null, alias, toCamelCase(text.substring(dot + 1)), null, null);
+            }
+        }
+        return Operand.literal(text);
+    }
+
+    public List<E> query(PageQuery query) {
+        return queryWithTotal(query, total -> {});
+    }
+
+    public List<E> queryWithTotal(PageQuery query, LongConsumer totalConsumer) {
+        return MemoryDataAccess.paginate(select(query), query,
+                                         sort -> MemoryDataAccess.comparing(viewClass, sort), totalConsumer);
+    }
+
+    public long count(PageQuery query) {
+        return select(query).size();
+    }
+
+    private List<E> select(PageQuery query) {
+        Binding binding = new Binding(query);
+        List<Object[]> rows = new ArrayList<>();
+        binding.rows(0).forEach(entity -> {
+            Object[] row = new Object[aliases.size()];
+            row[0] = entity;
+            rows.add(row);
+        });
+        List<Object[]> joinedRows = rows;
+        for (JoinStep joinStep : joinSteps) {
+            joinedRows = joinStep.join(joinedRows, binding);
+        }
+        Predicate<Object[]> where = binding.where;
+        joinedRows = joinedRows.stream().filter(where).collect(Collectors.toList());
+        return aggregate ? project(group(joinedRows, binding), binding) : project(joinedRows, binding);
+    }
+
+    private List<E> project(List<Object[]> rows, Binding binding) {
+        List<E> views = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            views.add(newView(operand -> binding.evaluate(operand, row)));
+        }
+        return views;
+    }
+
+    private Collection<List<Object[]>> group(List<Object[]> rows, Binding binding) {
+        Map<List<Object>, List<Object[]>> groups = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            List<Object> key = new ArrayList<>(groupByOperands.length);
+            for (Operand operand : groupByOperands) {
+                key.add(MemoryNestedQuery.toKey(binding.evaluate(operand, row)));
+            }
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+        }
+        if (groups.isEmpty() && groupByOperands.length == 0) {
+            // aggregate all the rows into one even if there is none
+            groups.put(Collections.emptyList(), new ArrayList<>());
+        }
+        return groups.values().stream()
+                     .filter(group -> Arrays.stream(havingComparisons).allMatch(having -> having.test(operand -> binding.aggregate(operand, group))))
+                     .collect(Collectors.toList());
+    }
+
+    private List<E> project(Collection<List<Object[]>> groups, Binding binding) {
+        List<E> views = new ArrayList<>(groups.size());
+        for (List<Object[]> group : groups) {
+            views.add(newView(operand -> binding.aggregate(operand, group)));
+        }
+        return views;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E newView(Evaluator evaluator) {
+        E view;
+        try {
+            view = (E) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create " + viewClass.getName(), e);
+        }
+        for (int i = 0; i < viewAccessors.length; i++) {
+            Object value = evaluator.evaluate(viewOperands[i]);
+            Class<?> type = viewAccessors[i].getField().getType();
+            viewAccessors[i].write(view, value == null ? null : conversionService.convert(value, type));
+        }
+        return view;
+    }
+
+    private interface Evaluator {
+        Object evaluate(Operand operand);
+    }
+
+    /**
+     * Column of a table alias, a column to resolve by the tables, a placeholder, a literal, or an aggregate function.
+     */
+    private static final class Operand {
+        private final String function;
+        private final int alias;
+        private final String column;
+        private final Operand argument;
+        private final String placeholder;
+        private Object literal;
+        private volatile BoundColumn boundColumn;
+
+        Operand(String function, int alias, String column, Operand argument, String placeholder) {
+            this.function = function;
+            this.alias = alias;
+            this.column = column;
+            this.argument = argument;
+            this.placeholder = placeholder;
+        }
+
+        static Operand literal(String text) {
+            Operand operand = new Operand(null, -1, null, null, null);
+            if (text.length() >= 2 && text.startsWith("'") && text.endsWith("'")) {
+                operand.literal = text.substring(1, text.length() - 1).replace("''", "'");
+            } else if ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text)) {
+                operand.literal = Boolean.valueOf(text);
+            } else if (text.matches("-?\\d+")) {
+                operand.literal = Long.valueOf(text);
+            } else if (text.matches("-?\\d*\\.\\d+")) {
+                operand.literal = new BigDecimal(text);
+            } else if (!"null".equalsIgnoreCase(text)) {
+                throw new UnsupportedOperationException("Expression is not supported in memory: " + text);
+            }
+            return operand;
+        }
+
+        boolean isColumn() {
+            return column != null;
+        }
+    }
+
+    /**
+     * Column bound to the alias and the entity class of the table it is resolved from.
+     */
+    private static final class BoundColumn {
+        private final int alias;
+        private final Class<?> entityClass;
+        private final FieldAccessor accessor;
+
+        BoundColumn(int alias, Class<?> entityClass, FieldAccessor accessor) {
+            this.alias = alias;
+            this.entityClass = entityClass;
+            this.accessor = accessor;
+        }
+    }
+
+    private static final class Comparison {
+        private final Operand left;
+        private final String op;
+        private final Operand right;
+
+        Comparison(Operand left, String op, Operand right) {
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+
+        boolean test(Evaluator evaluator) {
+            Object v1 = evaluator.evaluate(left);
+            Object v2 = evaluator.evaluate(right);
+            if (v1 == null || v2 == null) {
+                return false;
+            }
+            int ret = v1 instanceof Number && v2 instanceof Number
+                    ? new BigDecimal(v1.toString()).compareTo(new BigDecimal(v2.toString()))
+                    : MemoryDataAccess.compareValue(v1, v2);
+            switch (op) {
+                case "=":
+                    return ret == 0;
+                case ">":
+                    return ret > 0;
+                case ">=":
+                    return ret >= 0;
+                case "<":
+                    return ret < 0;
+                case "<=":
+                    return ret <= 0;
+                default:
+                    return ret != 0;
+            }
+        }
+    }
+
+    /**
+     * Hash join of a table by the equality columns in the ON clause,
+     * and the other terms of the ON clause filter the rows of the table before joining.
+     */
+    private final class JoinStep {
+        private final boolean left;
+        private final int alias;
+        private final List<Operand> keys = new ArrayList<>();
+        private final List<Operand> probes = new ArrayList<>();
+        private final List<Comparison> filters = new ArrayList<>();
+
+        JoinStep(boolean left, int alias) {
+            this.left = left;
+            this.alias = alias;
+        }
+
+        void addCondition(Operand operand1, Operand operand2, String term) {
+            if (operand2.isColumn() && operand2.alias == alias && operand1.isColumn() && operand1.alias >= 0 && operand1.alias < alias) {
+                keys.add(operand2);
+                probes.add(operand1);
+            } else if (operand1.isColumn() && operand1.alias == alias && operand2.isColumn() && operand2.alias >= 0 && operand2.alias < alias) {
+                keys.add(operand1);
+                probes.add(operand2);
+            } else if (operand1.isColumn() && operand1.alias == alias && !operand2.isColumn()) {
+                filters.add(new Comparison(operand1, "=", operand2));
+            } else if (operand2.isColumn() && operand2.alias == alias && !operand1.isColumn()) {
+                filters.add(new Comparison(operand2, "=", operand1));
+            } else {
+                throw new UnsupportedOperationException("Join condition is not supported in memory: " + term);
+            }
+        }
+
+        List<Object[]> join(List<Object[]> rows, Binding binding) {
+            if (keys.isEmpty()) {
+                throw new UnsupportedOperationException("Join without equality columns is not supported in memory: " + tables.get(alias));
+            }
+            Map<Object, List<Object>> hashTable = new HashMap<>();
+            binding.rows(alias).forEach(entity -> {
+                Object[] row = new Object[aliases.size()];
+                row[alias] = entity;
+                if (filters.stream().allMatch(filter -> filter.test(operand -> binding.evaluate(operand, row)))) {
+                    Object key = key(keys, row, binding);
+                    if (key != null) {
+                        hashTable.computeIfAbsent(key, k -> new ArrayList<>(1)).add(entity);
+                    }
+                }
+            });
+            List<Object[]> joinedRows = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                Object key = key(probes, row, binding);
+                List<Object> matches = key == null ? null : hashTable.get(key);
+                if (matches == null) {
+                    if (left) {
+                        joinedRows.add(row);
+                    }
+                    continue;
+                }
+                for (int i = 0; i < matches.size(); i++) {
+                    Object[] joinedRow = i == matches.size() - 1 ? row : row.clone();
+                    joinedRow[alias] = matches.get(i);
+                    joinedRows.add(joinedRow);
+                }
+            }
+            return joinedRows;
+        }
+
+        /**
+         * @return the hash key of the columns, or null if any of them is null which never equals in SQL
+         */
+        private Object key(List<Operand> operands, Object[] row, Binding binding) {
+            if (operands.size() == 1) {
+                return MemoryNestedQuery.toKey(binding.evaluate(operands.get(0), row));
+            }
+            List<Object> key = new ArrayList<>(operands.size());
+            for (Operand operand : operands) {
+                Object value = binding.evaluate(operand, row);
+                if (value == null) {
+                    return null;
+                }
+                key.add(MemoryNestedQuery.toKey(value));
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Tables, accessors and conditions resolved for a query.
+     */
+    private final class Binding {
+        private final Map<String, Object> placeholderValues = new HashMap<>();
+        private final MemoryDataAccess<?, ?, ?>[] dataAccesses = new MemoryDataAccess<?, ?, ?>[tables.size()];
+        private final List<List<Predicate<Object>>> tableConditions = new ArrayList<>();
+        private Predicate<Object[]> where = row -> true;
+
+        Binding(PageQuery query) {
+            for (String placeholder : placeholders) {
+                placeholderValues.put(placeholder, FieldAccessor.of(query.getClass(), placeholder).read(query));
+            }
+            for (int i = 0; i < dataAccesses.length; i++) {
+                dataAccesses[i] = MemoryDataAccess.forTable(tables.get(i));
+                tableConditions.add(new ArrayList<>());
+            }
+            for (Field field : query.getClass().getDeclaredFields()) {
+                if (fieldFilter(field) && !placeholders.contains(field.getName())) {
+                    Object value = readField(field, query);
+                    if (isValidValue(value, field)) {
+                        addCondition(field, value);
+                    }
+                }
+            }
+        }
+
+        private void addCondition(Field field, Object value) {
+            if (field.isAnnotationPresent(NestedQueries.class) || field.isAnnotationPresent(QueryField.class)) {
+                throw new UnsupportedOperationException("Condition is not supported by joins in memory: "
+                        + field.getDeclaringClass().getName() + "#" + field.getName());
+            }
+            QueryTableAlias tableAlias = field.getAnnotation(QueryTableAlias.class);
+            int fixedAlias = tableAlias == null ? -1 : aliases.indexOf(tableAlias.value());
+            String[] names = containsOr(field.getName()) ? splitByOr(field.getName()) : new String[]{field.getName()};
+            int[] partAliases = new int[names.length];
+            FilterExecutor.Matcher[] matchers = new FilterExecutor.Matcher[names.length];
+            FieldAccessor[] accessors = new FieldAccessor[names.length];
+            for (int i = 0; i < names.length; i++) {
+                QuerySuffix querySuffix = QuerySuffix.resolve(names[i]);
+                String column = querySuffix.resolveColumnName(names[i]);
+                partAliases[i] = fixedAlias >= 0 ? fixedAlias : resolveAlias(column);
+                matchers[i] = FilterExecutor.get(querySuffix);
+                accessors[i] = FieldAccessor.of(dataAccesses[partAliases[i]].getEntityClass(), column);
+            }
+            int alias = Arrays.stream(partAliases).distinct().count() == 1 ? partAliases[0] : -1;
+            if (alias >= 0 && (alias == 0 || !joinStepOf(alias).left)) {
+                // the rows not matching the condition are never joined
+                tableConditions.get(alias).add(entity -> {
+                    for (int i = 0; i < matchers.length; i++) {
+                        if (matchers[i].match(value, accessors[i].read(entity))) {
+                            return true;
+                        }
+                    }
+                    return false;
+                });
+            } else {
+                where = where.and(row -> {
+                    for (int i = 0; i < matchers.length; i++) {
+                        Object entity = row[partAliases[i]];
+                        if (matchers[i].match(value, entity == null ? null : accessors[i].read(entity))) {
+                            return true;
+                        }
+                    }
+                    return false;
+                });
+            }
+        }
+
+        private JoinStep joinStepOf(int alias) {
+            return joinSteps.get(alias - 1);
+        }
+
+        private int resolveAlias(String column) {
+            for (int i = 0; i < dataAccesses.length; i++) {
+                if (FieldUtils.getField(dataAccesses[i].getEntityClass(), column, true) != null) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Field [" + column + "] not found in the tables of " + viewClass.getName());
+        }
+
+        /**
+         * @return the stored entities of the table matching the conditions of the table
+         */
+        Stream<?> rows(int alias) {
+            Stream<?> stream = dataAccesses[alias].entitiesMap.values().stream();
+            for (Predicate<Object> condition : tableConditions.get(alias)) {
+                stream = stream.filter(condition);
+            }
+            return stream;
+        }
+
+        Object evaluate(Operand operand, Object[] row) {
+            if (operand.placeholder != null) {
+                return placeholderValues.get(operand.placeholder);
+            }
+            if (!operand.isColumn()) {
+                if (operand.function != null) {
+                    throw new UnsupportedOperationException("Aggregate function requires GROUP BY in memory: " + operand.function);
+                }
+                return operand.literal;
+            }
+            BoundColumn bound = operand.boundColumn;
+            // intentionally use ==
+            if (bound == null || bound.entityClass != dataAccesses[bound.alias].getEntityClass()) {
+                int alias = operand.alias >= 0 ? operand.alias : resolveAlias(operand.column);
+                Class<?> entityClass = dataAccesses[alias].getEntityClass();
+                bound = new BoundColumn(alias, entityClass, FieldAccessor.of(entityClass, operand.column));
+                operand.boundColumn = bound;
+            }
+            Object entity = row[bound.alias];
+            return entity == null ? null : bound.accessor.read(entity);
+        }
+
+        /**
+         * Evaluate the aggregate function over the group, or the other operand by the first row of the group.
+         */
+        Object aggregate(Operand operand, List<Object[]> group) {
+            if (operand.function == null) {
+                return group.isEmpty() ? null : evaluate(operand, group.get(0));
+            }
+            if (operand.argument == null) {
+                return (long) group.size();
+            }
+            List<Object> values = new ArrayList<>(group.size());
+            for (Object[] row : group) {
+                Object value = evaluate(operand.argument, row);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            switch (operand.function) {
+                case "count":
+                    return (long) values.size();
+                case "max":
+                    return values.stream().max(MemoryDataAccess::compareValue).orElse(null);
+                case "min":
+                    return values.stream().min(MemoryDataAccess::compareValue).orElse(null);
+                default:
+                    return sum(values, "avg".equals(operand.function));
+            }
+        }
+
+        private Object sum(List<Object> values, boolean average) {
+            if (values.isEmpty()) {
+                return null;
+            }
+            boolean integral = values.stream().allMatch(value -> MemoryNestedQuery.toKey(value) instanceof Long);
+            BigDecimal sum = BigDecimal.ZERO;
+            for (Object value : values) {
+                sum = sum.add(new BigDecimal(value.toString()));
+            }
+            if (average) {
+                return sum.doubleValue() / values.size();
+            }
+            return integral ? (Object) sum.longValue() : sum;
+        }
+    }
+}
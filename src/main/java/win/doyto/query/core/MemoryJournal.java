@@ -0,0 +1,387 @@
+package win.doyto.query.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * MemoryJournal
+ * <p>
+ * Durable storage of the entities of {@link MemoryDataAccess} by a snapshot file and a write-ahead log.
+ * Each write appends a record of the entity written or the id deleted to the log, and every
+ * <i>snapshotInterval</i> records the log is rotated and a new snapshot of all the entities is written
+ * in the background to replace the old one, then the rotated log is deleted.
+ * On loading, the snapshot is read through a memory-mapped file, and then the rotated log and the log
+ * are replayed up to their last intact records.
+ * <p>
+ * The snapshot is read from the live entities after the rotation, so it may contain the writes
+ * in the log too, which are replayed to the same state since each record holds a whole entity or a deletion.
+ * <p>
+ * Both files consist of framed records: <i>[length][crc32][payload]</i>, and the first record
+ * is the header of the field layout. The log is written to the file channel without forcing it
+ * to the disk for each record, which survives the restart of the process but not the crash of the OS.
+ *
+ * @author f0rb on 2021-07-27
+ */
+@Slf4j
+final class MemoryJournal<E> implements Closeable {
+
+    private static final int MAGIC = 0x44514d4a;
+    private static final byte VERSION = 1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int FRAME_HEADER = 8;
+    private static final int MAP_WINDOW = 64 << 20;
+    private static final Executor snapshotExecutor = createSnapshotExecutor();
+
+    private final EntityCodec<E> codec;
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path rotatedLogPath;
+    private final int snapshotInterval;
+    private final Supplier<Collection<E>> entitiesSupplier;
+    private final RecordBuffer recordBuffer = new RecordBuffer();
+    private final CRC32 crc32 = new CRC32();
+    private final Object snapshotLock = new Object();
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+    private FileChannel logChannel;
+    private int logRecords;
+    private boolean closed;
+
+    MemoryJournal(File directory, Class<E> entityClass, int snapshotInterval, Supplier<Collection<E>> entitiesSupplier) {
+        this.codec = new EntityCodec<>(entityClass);
+        this.snapshotPath = new File(directory, entityClass.getName() + ".snapshot").toPath();
+        this.logPath = new File(directory, entityClass.getName() + ".wal").toPath();
+        this.rotatedLogPath = new File(directory, entityClass.getName() + ".wal.old").toPath();
+        this.snapshotInterval = snapshotInterval;
+        this.entitiesSupplier = entitiesSupplier;
+    }
+
+    /**
+     * Load the entities from the snapshot and the log, then open the log for the following writes.
+     *
+     * @param putter  receives the entities loaded or put by the log
+     * @param remover receives the ids deleted by the log
+     */
+    synchronized void load(Consumer<E> putter, Consumer<Object> remover) throws IOException {
+        Files.createDirectories(logPath.getParent());
+        if (Files.exists(snapshotPath)) {
+            long end = replay(snapshotPath, putter, remover);
+            if (end != Files.size(snapshotPath)) {
+                throw new IOException("Snapshot is corrupted: " + snapshotPath);
+            }
+        }
+        if (Files.exists(rotatedLogPath)) {
+            replay(rotatedLogPath, putter, remover);
+        }
+        long end = Files.exists(logPath) ? replay(logPath, putter, remover) : 0L;
+        logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (end < logChannel.size()) {
+            log.warn("Truncate the incomplete tail of {} from {} to {}", logPath, logChannel.size(), end);
+            logChannel.truncate(end);
+        }
+        logChannel.position(end);
+        if (end == 0L) {
+            writeFrame(logChannel, buildHeader());
+        }
+    }
+
+    synchronized void put(E entity) {
+        append(out -> {
+            out.writeByte(PUT);
+            codec.writeEntity(out, entity);
+        });
+    }
+
+    synchronized void delete(Object id) {
+        append(out -> {
+            out.writeByte(DELETE);
+            EntityCodec.writeValue(out, id);
+        });
+    }
+
+    private void append(RecordWriter recordWriter) {
+        try {
+            recordBuffer.reset();
+            recordWriter.write(new DataOutputStream(recordBuffer));
+            writeFrame(logChannel, recordBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to " + logPath, e);
+        }
+        logRecords++;
+    }
+
+    /**
+     * @return whether the log reaches <i>snapshotInterval</i> records
+     */
+    synchronized boolean isSnapshotDue() {
+        return snapshotInterval > 0 && logRecords >= snapshotInterval;
+    }
+
+    /**
+     * Rotate the log if it reaches <i>snapshotInterval</i> records, which is not done by {@link #put}
+     * or {@link #delete}, since the caller commits the entity to the memory after appending it to the log,
+     * and the snapshot replacing the rotated log must include all the entities appended to it.
+     *
+     * @return true if the snapshot should be written by {@link #scheduleSnapshot()}
+     */
+    synchronized boolean rotateIfDue() {
+        if (!isSnapshotDue()) {
+            return false;
+        }
+        try {
+            rotate();
+            return true;
+        } catch (IOException e) {
+            logRecords = 0;
+            log.error("Failed to rotate the log {}: {}", logPath, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Move the log aside for the snapshot and start a new log, which is called
+     * when no write is between appending to the log and committing to the memory.
+     * The log is kept if the rotated one is not replaced by a snapshot yet.
+     */
+    synchronized void rotate() throws IOException {
+        if (!Files.exists(rotatedLogPath)) {
+            logChannel.force(false);
+            logChannel.close();
+            Files.move(logPath, rotatedLogPath, StandardCopyOption.ATOMIC_MOVE);
+            logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writeFrame(logChannel, buildHeader());
+        }
+        logRecords = 0;
+    }
+
+    /**
+     * Write the snapshot by a background thread, unless one is already waiting to be written.
+     */
+    void scheduleSnapshot() {
+        if (!snapshotScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotExecutor.execute(() -> {
+            snapshotScheduled.set(false);
+            try {
+                writeSnapshot();
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write the snapshot {}: {}", snapshotPath, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Write all the entities to a new snapshot atomically after {@link #rotate()}, then delete the rotated log.
+     * The writes are not blocked since the stored entities are never mutated.
+     */
+    void writeSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            if (closed) {
+                return;
+            }
+            Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            RecordBuffer buffer = new RecordBuffer();
+            CRC32 checksum = new CRC32();
+            try (FileOutputStream fileOutputStream = new FileOutputStream(tempPath.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1 << 16))) {
+                writeFrame(out, buildHeader(buffer), checksum);
+                for (E entity : entitiesSupplier.get()) {
+                    buffer.reset();
+                    DataOutputStream recordOut = new DataOutputStream(buffer);
+                    recordOut.writeByte(PUT);
+                    codec.writeEntity(recordOut, entity);
+                    writeFrame(out, buffer, checksum);
+                }
+                out.flush();
+                fileOutputStream.getFD().sync();
+            }
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Files.deleteIfExists(rotatedLogPath);
+            }
+        }
+    }
+
+    /**
+     * Close the log after the snapshot being written, and the snapshots scheduled later are skipped.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (snapshotLock) {
+            closed = true;
+            synchronized (this) {
+                if (logChannel != null && logChannel.isOpen()) {
+                    logChannel.force(false);
+                    logChannel.close();
+                }
+            }
+        }
+    }
+
+    private RecordBuffer buildHeader() throws IOException {
+        return buildHeader(recordBuffer);
+    }
+
+    private RecordBuffer buildHeader(RecordBuffer buffer) throws IOException {
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        String[] fieldNames = codec.getFieldNames();
+        out.writeInt(fieldNames == null ? -1 : fieldNames.length);
+        if (fieldNames != null) {
+            for (String fieldName : fieldNames) {
+                EntityCodec.writeString(out, fieldName);
+            }
+        }
+        return buffer;
+    }
+
+    private FieldAccessor[] readHeader(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            throw new IOException("Unsupported journal file: " + path);
+        }
+        int count = buffer.getInt();
+        if (count < 0) {
+            return codec.resolveLayout(null);
+        }
+        String[] fieldNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            fieldNames[i] = EntityCodec.readString(buffer);
+        }
+        return codec.resolveLayout(fieldNames);
+    }
+
+    /**
+     * @return the end position of the last intact record
+     */
+    private long replay(Path path, Consumer<E> putter, Consumer<Object> remover) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            FieldAccessor[] layout = null;
+            boolean headerRead = false;
+            long position = 0L;
+            ByteBuffer payload;
+            while ((payload = reader.readFrame(position)) != null) {
+                if (!headerRead) {
+                    layout = readHeader(payload, path);
+                    headerRead = true;
+                } else if (payload.get() == PUT) {
+                    putter.accept(codec.readEntity(payload, layout));
+                } else {
+                    remover.accept(EntityCodec.readValue(payload, null));
+                }
+                position += FRAME_HEADER + payload.limit();
+            }
+            return headerRead ? position : 0L;
+        }
+    }
+
+    private void writeFrame(FileChannel channel, RecordBuffer record) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + record.size());
+        frame.putInt(record.size()).putInt(checksum(record, crc32)).put(record.array(), 0, record.size());
+        frame.flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, RecordBuffer record, CRC32 checksum) throws IOException {
+        out.writeInt(record.size());
+        out.writeInt(checksum(record, checksum));
+        out.write(record.array(), 0, record.size());
+    }
+
+    private static int checksum(RecordBuffer record, CRC32 checksum) {
+        checksum.reset();
+        checksum.update(record.array(), 0, record.size());
+        return (int) checksum.getValue();
+    }
+
+    private static Executor createSnapshotExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "doyto-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Reads the frames through windows of the file mapped into memory.
+     */
+    private static final class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private final CRC32 crc32 = new CRC32();
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * @return the payload of the frame at the position, or null if the frame is absent or broken
+         */
+        ByteBuffer readFrame(long position) throws IOException {
+            if (position + FRAME_HEADER > size) {
+                return null;
+            }
+            ByteBuffer header = slice(position, FRAME_HEADER);
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + FRAME_HEADER + length > size) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            slice(position + FRAME_HEADER, length).get(payload);
+            crc32.reset();
+            crc32.update(payload, 0, length);
+            return (int) crc32.getValue() == checksum ? ByteBuffer.wrap(payload) : null;
+        }
+
+        private ByteBuffer slice(long position, int length) throws IOException {
+            if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+                long mapSize = Math.min(size - position, Math.max(MAP_WINDOW, length));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapSize);
+                windowStart = position;
+            }
+            ByteBuffer buffer = window.duplicate();
+            buffer.position((int) (position - windowStart));
+            buffer.limit(buffer.position() + length);
+            return buffer.slice();
+        }
+    }
+}
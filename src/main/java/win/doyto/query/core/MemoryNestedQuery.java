@@ -0,0 +1,147 @@
+package win.doyto.query.core;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.annotation.NestedQuery;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static win.doyto.query.core.CommonUtil.toCamelCase;
+
+/**
+ * MemoryNestedQuery
+ * <p>
+ * Condition of a query field annotated by {@link NestedQueries} for {@link MemoryDataAccess},
+ * which runs the nested queries as hash semi-joins over the tables in memory from the innermost one:
+ * the values selected by a nested query are collected into a hash set once per query,
+ * then the rows of the outer table are kept if their column values are in or not in the set.
+ * <p>
+ * The join clauses in {@link NestedQuery#extra()} are SQL only and not supported.
+ *
+ * @author f0rb on 2021-07-28
+ */
+final class MemoryNestedQuery {
+
+    private final Field queryField;
+    private final NestedQueries nestedQueries;
+    private final String columnName;
+    private final FieldAccessor columnAccessor;
+
+    MemoryNestedQuery(Field queryField, Class<?> entityClass) {
+        this.queryField = queryField;
+        this.nestedQueries = queryField.getAnnotation(NestedQueries.class);
+        this.columnName = toCamelCase(nestedQueries.column());
+        this.columnAccessor = FieldAccessor.of(entityClass, columnName);
+    }
+
+    Field getQueryField() {
+        return queryField;
+    }
+
+    String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * @param value the valid value of the query field
+     * @return the predicate of the outer entities with the nested queries resolved
+     */
+    Predicate<Object> compile(Object value) {
+        Predicate<Object> columnPredicate = compileColumn(value);
+        return row -> columnPredicate.test(columnAccessor.read(row));
+    }
+
+    /**
+     * @param value the valid value of the query field
+     * @return the predicate of the values of the outer column with the nested queries resolved
+     */
+    Predicate<Object> compileColumn(Object value) {
+        if (!nestedQueries.appendWhere()) {
+            throw unsupported("appendWhere = false");
+        }
+        NestedQuery[] queries = nestedQueries.value();
+        int last = queries.length - 1;
+        MemoryDataAccess<?, ?, ?> dataAccess = forTable(queries[last]);
+        Stream<?> rows;
+        if (boolean.class.isAssignableFrom(queryField.getType())) {
+            rows = dataAccess.entitiesMap.values().stream();
+        } else if (value instanceof PageQuery) {
+            rows = dataAccess.scan(value);
+        } else {
+            rows = dataAccess.scan(queryField, value);
+        }
+        Set<Object> values = select(rows, dataAccess, queries[last]);
+        for (int i = last - 1; i >= 0; i--) {
+            dataAccess = forTable(queries[i]);
+            FieldAccessor whereAccessor = accessor(dataAccess, StringUtils.defaultIfBlank(queries[i].where(), queries[i + 1].select()));
+            Predicate<Object> whereIn = in(values, queries[i].op());
+            Predicate<Object> where = row -> whereIn.test(whereAccessor.read(row));
+            values = select(dataAccess.entitiesMap.values().stream().filter(where), dataAccess, queries[i]);
+        }
+        return in(values, nestedQueries.op());
+    }
+
+    private MemoryDataAccess<?, ?, ?> forTable(NestedQuery nestedQuery) {
+        if (!nestedQuery.extra().isEmpty()) {
+            throw unsupported("extra = \"" + nestedQuery.extra() + "\"");
+        }
+        return MemoryDataAccess.forTable(StringUtils.split(nestedQuery.from())[0]);
+    }
+
+    private static FieldAccessor accessor(MemoryDataAccess<?, ?, ?> dataAccess, String column) {
+        String fieldName = toCamelCase(column);
+        Class<?> entityClass = dataAccess.getEntityClass();
+        if (FieldUtils.getField(entityClass, fieldName, true) == null) {
+            throw new IllegalArgumentException("Field [" + fieldName + "] not found in " + entityClass.getName());
+        }
+        return FieldAccessor.of(entityClass, fieldName);
+    }
+
+    private static Set<Object> select(Stream<?> rows, MemoryDataAccess<?, ?, ?> dataAccess, NestedQuery nestedQuery) {
+        FieldAccessor selectAccessor = accessor(dataAccess, nestedQuery.select());
+        Set<Object> values = new HashSet<>();
+        rows.forEach(row -> {
+            Object value = selectAccessor.read(row);
+            if (value != null) {
+                values.add(toKey(value));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Null values never match as in SQL.
+     */
+    private Predicate<Object> in(Set<Object> values, String op) {
+        String normalized = StringUtils.normalizeSpace(op).toUpperCase();
+        boolean in;
+        if ("IN".equals(normalized)) {
+            in = true;
+        } else if ("NOT IN".equals(normalized)) {
+            in = false;
+        } else {
+            throw unsupported("op = \"" + op + "\"");
+        }
+        return value -> value != null && values.contains(toKey(value)) == in;
+    }
+
+    /**
+     * Integral numbers of different types are hashed as long values, such as the Integer and Long ids.
+     */
+    static Object toKey(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private UnsupportedOperationException unsupported(String option) {
+        return new UnsupportedOperationException("Nested query with " + option + " is not supported in memory: "
+                + queryField.getDeclaringClass().getName() + "#" + queryField.getName());
+    }
+}
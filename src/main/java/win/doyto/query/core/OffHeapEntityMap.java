@@ -0,0 +1,409 @@
+package win.doyto.query.core;
+
+import win.doyto.query.entity.Persistable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * OffHeapEntityMap
+ * <p>
+ * Map of the entities encoded by {@link EntityCodec} into slabs of direct buffers,
+ * so that the heap only keeps the slots of the rows instead of the entities.
+ * Integer and Long ids are mapped to the slots by a {@link LongIntHashMap},
+ * and the entities are decoded into new objects on every read.
+ * <p>
+ * A record is rewritten in place when the new encoding fits, otherwise it is appended,
+ * and the live records are copied to new slabs when the garbage exceeds them.
+ *
+ * @author f0rb on 2021-07-28
+ */
+final class OffHeapEntityMap<I extends Serializable, E extends Persistable<I>> extends AbstractMap<I, E> {
+
+    private static final int MIN_SLAB_SIZE = 1 << 16;
+    private static final int MAX_SLAB_SIZE = 64 << 20;
+    private static final int FREE = -1;
+    private static final int SCAN_BLOCK = 1024;
+
+    private final EntityCodec<E> codec;
+    private final FieldAccessor[] layout;
+    private final LongIntHashMap numberSlots = new LongIntHashMap();
+    private final Map<Object, Integer> objectSlots = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(256);
+    private List<ByteBuffer> slabs = new ArrayList<>();
+    private long[] addresses = new long[0];
+    private int[] lengths = new int[0];
+    private int[] capacities = new int[0];
+    private int[] freeSlots = new int[0];
+    private int freeSlotCount;
+    private int slotCount;
+    private volatile int size;
+    private long liveBytes;
+    private long garbageBytes;
+
+    OffHeapEntityMap(Class<E> entityClass) {
+        this.codec = new EntityCodec<>(entityClass);
+        this.layout = codec.resolveLayout(codec.getFieldNames());
+    }
+
+    private <T> T read(Supplier<T> supplier) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> supplier) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static boolean isNumber(Object key) {
+        return key instanceof Integer || key instanceof Long;
+    }
+
+    private int slotOf(Object key) {
+        if (isNumber(key)) {
+            return numberSlots.get(((Number) key).longValue());
+        }
+        Integer slot = objectSlots.get(key);
+        return slot == null ? FREE : slot;
+    }
+
+    private E decode(int slot) {
+        return codec.readEntity(record(slot), layout);
+    }
+
+    private ByteBuffer record(int slot) {
+        ByteBuffer record = slab(addresses[slot]);
+        record.limit(record.position() + lengths[slot]);
+        return record.slice();
+    }
+
+    /**
+     * Decode the live slots block by block, each under the read lock once.
+     *
+     * @param decoder decode the entity of the slot, or return null to skip the slot
+     */
+    private Stream<E> scan(IntFunction<E> decoder) {
+        int blocks = (slotCount + SCAN_BLOCK - 1) / SCAN_BLOCK;
+        return IntStream.range(0, blocks).mapToObj(block -> read(() -> {
+            List<E> list = new ArrayList<>();
+            int end = Math.min(slotCount, (block + 1) * SCAN_BLOCK);
+            for (int slot = block * SCAN_BLOCK; slot < end; slot++) {
+                E entity = lengths[slot] == FREE ? null : decoder.apply(slot);
+                if (entity != null) {
+                    list.add(entity);
+                }
+            }
+            return list;
+        })).flatMap(List::stream);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && read(() -> slotOf(key) != FREE);
+    }
+
+    @Override
+    public E get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return read(() -> {
+            int slot = slotOf(key);
+            return slot == FREE ? null : decode(slot);
+        });
+    }
+
+    @Override
+    public E put(I key, E entity) {
+        Objects.requireNonNull(key);
+        byte[] bytes = encode(entity);
+        return write(() -> {
+            int slot = slotOf(key);
+            E previous = slot == FREE ? null : decode(slot);
+            store(key, slot, bytes);
+            return previous;
+        });
+    }
+
+    @Override
+    public E remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return write(() -> {
+            int slot = slotOf(key);
+            if (slot == FREE) {
+                return null;
+            }
+            E previous = decode(slot);
+            release(key, slot);
+            return previous;
+        });
+    }
+
+    /**
+     * Decode, remap and store the entity of the key atomically under the write lock.
+     * Returning the same entity passed to the function leaves the record untouched.
+     */
+    @Override
+    public E compute(I key, BiFunction<? super I, ? super E, ? extends E> remappingFunction) {
+        Objects.requireNonNull(key);
+        return write(() -> {
+            int slot = slotOf(key);
+            E previous = slot == FREE ? null : decode(slot);
+            E value = remappingFunction.apply(key, previous);
+            // intentionally use ==
+            if (value == previous) {
+                return value;
+            }
+            if (value == null) {
+                release(key, slot);
+            } else {
+                store(key, slot, encode(value));
+            }
+            return value;
+        });
+    }
+
+    @Override
+    public void clear() {
+        write(() -> {
+            numberSlots.clear();
+            objectSlots.clear();
+            slabs = new ArrayList<>();
+            Arrays.fill(lengths, FREE);
+            freeSlotCount = 0;
+            slotCount = 0;
+            size = 0;
+            liveBytes = 0;
+            garbageBytes = 0;
+            return null;
+        });
+    }
+
+    /**
+     * Store the encoded entity of the key into the slot, or a new slot if the slot is {@link #FREE}.
+     */
+    private void store(Object key, int slot, byte[] bytes) {
+        if (slot == FREE) {
+            slot = allocateSlot();
+            if (isNumber(key)) {
+                numberSlots.put(((Number) key).longValue(), slot);
+            } else {
+                objectSlots.put(key, slot);
+            }
+            size++;
+            append(slot, bytes);
+            return;
+        }
+        if (bytes.length <= capacities[slot]) {
+            slab(addresses[slot]).put(bytes);
+            liveBytes += bytes.length - lengths[slot];
+            lengths[slot] = bytes.length;
+        } else {
+            discard(slot);
+            append(slot, bytes);
+        }
+        compactIfSparse();
+    }
+
+    private void release(Object key, int slot) {
+        if (isNumber(key)) {
+            numberSlots.remove(((Number) key).longValue());
+        } else {
+            objectSlots.remove(key);
+        }
+        discard(slot);
+        lengths[slot] = FREE;
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+        compactIfSparse();
+    }
+
+    private byte[] encode(E entity) {
+        synchronized (encodeBuffer) {
+            encodeBuffer.reset();
+            try {
+                codec.writeEntity(new DataOutputStream(encodeBuffer), entity);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to encode " + entity.getClass().getName(), e);
+            }
+            return encodeBuffer.toByteArray();
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == lengths.length) {
+            int capacity = Math.max(16, slotCount << 1);
+            addresses = Arrays.copyOf(addresses, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            capacities = Arrays.copyOf(capacities, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void append(int slot, byte[] bytes) {
+        long address = allocate(bytes.length);
+        slab(address).put(bytes);
+        addresses[slot] = address;
+        lengths[slot] = bytes.length;
+        capacities[slot] = bytes.length;
+        liveBytes += bytes.length;
+    }
+
+    private void discard(int slot) {
+        liveBytes -= lengths[slot];
+        garbageBytes += capacities[slot];
+    }
+
+    private ByteBuffer slab(long address) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32)).duplicate();
+        slab.position((int) address);
+        return slab;
+    }
+
+    /**
+     * Allocate the bytes at the end of the last slab, or in a new slab twice as large up to {@link #MAX_SLAB_SIZE}.
+     */
+    private long allocate(int length) {
+        ByteBuffer last = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (last == null || last.remaining() < length) {
+            int slabSize = last == null ? MIN_SLAB_SIZE : Math.min(MAX_SLAB_SIZE, last.capacity() << 1);
+            last = ByteBuffer.allocateDirect(Math.max(slabSize, length));
+            slabs.add(last);
+        }
+        int position = last.position();
+        last.position(position + length);
+        return ((long) (slabs.size() - 1) << 32) | position;
+    }
+
+    /**
+     * Copy the live records to new slabs when the garbage exceeds them.
+     */
+    private void compactIfSparse() {
+        if (garbageBytes <= MIN_SLAB_SIZE || garbageBytes <= liveBytes) {
+            return;
+        }
+        List<ByteBuffer> oldSlabs = slabs;
+        slabs = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (lengths[slot] != FREE) {
+                ByteBuffer record = oldSlabs.get((int) (addresses[slot] >>> 32)).duplicate();
+                record.position((int) addresses[slot]);
+                record.limit(record.position() + lengths[slot]);
+                long address = allocate(lengths[slot]);
+                slab(address).put(record);
+                addresses[slot] = address;
+                capacities[slot] = lengths[slot];
+            }
+        }
+        garbageBytes = 0;
+    }
+
+    /**
+     * Stream the entities matching the predicate, which only reads the selected fields of the entities
+     * decoded for the test, and the matched entities are decoded again with all the fields if required.
+     *
+     * @param fieldNames names of the fields read by the predicate
+     * @param complete   whether to decode all the fields of the matched entities
+     */
+    Stream<E> filter(Set<String> fieldNames, Predicate<E> predicate, boolean complete) {
+        boolean[] selected = null;
+        if (layout != null) {
+            selected = new boolean[layout.length];
+            for (int i = 0; i < layout.length; i++) {
+                selected[i] = layout[i] != null && fieldNames.contains(layout[i].getField().getName());
+            }
+        }
+        boolean[] fields = selected;
+        return scan(slot -> {
+            if (fields == null) {
+                E entity = decode(slot);
+                return predicate.test(entity) ? entity : null;
+            }
+            E entity = codec.readEntity(record(slot), layout, fields);
+            if (!predicate.test(entity)) {
+                return null;
+            }
+            return complete ? decode(slot) : entity;
+        });
+    }
+
+    @Override
+    public Collection<E> values() {
+        return new AbstractCollection<E>() {
+            @Override
+            public Iterator<E> iterator() {
+                return stream().iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            /**
+             * The entities are decoded lazily block by block, and the stream splits well for parallel filtering.
+             */
+            @Override
+            public Stream<E> stream() {
+                return scan(OffHeapEntityMap.this::decode);
+            }
+
+            @Override
+            public Stream<E> parallelStream() {
+                return stream().parallel();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<I, E>> entrySet() {
+        return new AbstractSet<Entry<I, E>>() {
+            @Override
+            public Iterator<Entry<I, E>> iterator() {
+                return values().stream().<Entry<I, E>>map(e -> new SimpleImmutableEntry<>(e.getId(), e)).iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
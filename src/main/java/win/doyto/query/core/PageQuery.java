@@ -41,6 +41,9 @@ public class PageQuery implements Serializable {
     @javax.validation.constraints.Pattern(regexp = SORT_RX, message = "Sorting field format error", groups = PageGroup.class)
     private String sort;
 
+    @ApiModelProperty(value = "Cursor for keyset pagination: empty for the first page, then the cursor returned by the previous page")
+    private String after;
+
     public Integer getPageNumber() {
         return getDefault(pageNumber, 0, pageSize == null);
     }
@@ -60,7 +63,14 @@ public class PageQuery implements Serializable {
         return max(0, number);
     }
 
+    public boolean isKeysetPaging() {
+        return after != null;
+    }
+
     public int calcOffset() {
+        if (isKeysetPaging()) {
+            return 0;
+        }
         Integer page = getPageNumber();
         return page == null ? 0 : GlobalConfiguration.adjustStartPageNumber(page) * getPageSize();
     }
@@ -3,7 +3,10 @@ package win.doyto.query.core;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import win.doyto.query.config.GlobalConfiguration;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.BiFunction;
 import javax.persistence.Id;
@@ -54,12 +57,19 @@ public class QueryBuilder {
     private String build(PageQuery pageQuery, List<Object> argList, String... columns) {
         String sql = BuildHelper.buildStart(columns, resolveTableName(pageQuery.toIdWrapper()));
         sql = replaceHolderInString(pageQuery, sql);
-        sql += BuildHelper.buildWhere(pageQuery, argList);
+        String where = BuildHelper.buildWhere(pageQuery, argList);
         // intentionally use ==
         if (!(columns.length == 1 && COUNT == columns[0])) {
             // not SELECT COUNT(*)
-            sql += BuildHelper.buildOrderBy(pageQuery);
+            KeysetCursor keysetCursor = KeysetCursor.of(pageQuery, idColumn);
+            if (keysetCursor != null) {
+                sql += keysetCursor.buildWhereAndOrderBy(where, pageQuery.getAfter(), argList);
+            } else {
+                sql += where + BuildHelper.buildOrderBy(pageQuery);
+            }
             sql = BuildHelper.buildPaging(sql, pageQuery);
+        } else {
+            sql += where;
         }
         return sql;
     }
@@ -85,6 +95,23 @@ public class QueryBuilder {
         });
     }
 
+    /**
+     * The ids can not be selected in one statement when the table name or the columns are dynamic,
+     * which are resolved by each id.
+     */
+    boolean supportSelectByIds(String... columns) {
+        return !isDynamicTable(tableName) && !isDynamicTable(StringUtils.join(columns, SEPARATOR));
+    }
+
+    public SqlAndArgs buildSelectByIds(Collection<?> ids, String... columns) {
+        String columnStr = columns.length == 0 ? "*" : StringUtils.join(columns, SEPARATOR);
+        return SqlAndArgs.buildSqlWithArgs(argList -> {
+            argList.addAll(ids);
+            return SELECT + columnStr + FROM + tableName + WHERE + idColumn + " IN ("
+                    + StringUtils.repeat(PLACE_HOLDER, SEPARATOR, ids.size()) + ")";
+        });
+    }
+
     private String buildColumnStr(IdWrapper<?> idWrapper, String[] columns) {
         String columnStr;
         if (columns.length == 0) {
@@ -95,6 +122,17 @@ public class QueryBuilder {
         return columnStr;
     }
 
+    /**
+     * @return null if the query has conditions or the dialect does not support the approximate count
+     */
+    public SqlAndArgs buildApproximateCountAndArgs(PageQuery query) {
+        if (!BuildHelper.buildWhere(query, new ArrayList<>()).isEmpty()) {
+            return null;
+        }
+        String table = replaceHolderInString(query, resolveTableName(query.toIdWrapper()));
+        return GlobalConfiguration.dialect().buildApproximateCount(table);
+    }
+
     protected SqlAndArgs buildSelectIdAndArgs(PageQuery query) {
         return buildSelectColumnsAndArgs(query, idColumn);
     }
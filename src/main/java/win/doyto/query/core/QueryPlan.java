@@ -0,0 +1,240 @@
+package win.doyto.query.core;
+
+import win.doyto.query.annotation.NestedQueries;
+import win.doyto.query.annotation.QueryTableAlias;
+import win.doyto.query.config.GlobalConfiguration;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static win.doyto.query.core.Constant.WHERE;
+
+/**
+ * QueryPlan
+ * <p>
+ * Compiled metadata of a query class for building the WHERE clause:
+ * the fields are resolved and their processors are built only once,
+ * and the WHERE clauses are cached by the bitmask of the fields in use.
+ * The cache keys of the queries are built from the WHERE clauses and the arguments as well.
+ *
+ * @author f0rb on 2021-07-20
+ */
+final class QueryPlan {
+
+    private static final int MAX_MASK_FIELDS = Long.SIZE;
+    private static final int MAX_CACHED_CLAUSES = 256;
+
+    private final boolean mapCamelCaseToUnderscore;
+    private final Field[] fields;
+    private final QueryField[] queryFields;
+    private final Map<Long, WhereClause> whereClauseMap;
+    private final FieldAccessor[] extraAccessors;
+
+    QueryPlan(Class<?> queryClass) {
+        this.mapCamelCaseToUnderscore = GlobalConfiguration.instance().isMapCamelCaseToUnderscore();
+        this.fields = Arrays.stream(queryClass.getDeclaredFields()).filter(CommonUtil::fieldFilter).toArray(Field[]::new);
+        this.queryFields = Arrays.stream(fields).map(field -> new QueryField(queryClass, field)).toArray(QueryField[]::new);
+        this.whereClauseMap = fields.length <= MAX_MASK_FIELDS ? new ConcurrentHashMap<>() : null;
+        this.extraAccessors = resolveExtraFields(queryClass, fields).stream().map(FieldAccessor::of).toArray(FieldAccessor[]::new);
+    }
+
+    /**
+     * Fields out of the WHERE clause which may affect the query too,
+     * e.g. the transient fields for the placeholders of dynamic tables.
+     */
+    private static List<Field> resolveExtraFields(Class<?> queryClass, Field[] fields) {
+        List<Field> fieldList = Arrays.asList(fields);
+        List<Field> extraFields = new ArrayList<>();
+        for (Class<?> clazz = queryClass; clazz != null && clazz != PageQuery.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!field.getName().startsWith("$") && !Modifier.isStatic(field.getModifiers()) && !fieldList.contains(field)) {
+                    extraFields.add(field);
+                }
+            }
+        }
+        return extraFields;
+    }
+
+    /**
+     * @return false if the configuration which the resolved columns depend on was changed
+     */
+    boolean isUpToDate() {
+        return mapCamelCaseToUnderscore == GlobalConfiguration.instance().isMapCamelCaseToUnderscore();
+    }
+
+    Field[] getFields() {
+        return fields;
+    }
+
+    String buildWhere(Object query, List<Object> argList) {
+        String[] conditions = new String[queryFields.length];
+        int count = 0;
+        long mask = 0L;
+        for (int i = 0; i < queryFields.length; i++) {
+            QueryField queryField = queryFields[i];
+            Object value = queryField.read(query);
+            if (queryField.isValidValue(value)) {
+                conditions[count++] = queryField.processor.process(argList, value);
+                mask |= 1L << i;
+            }
+        }
+        if (count == 0) {
+            return "";
+        }
+        if (whereClauseMap == null) {
+            return buildWhere(conditions, count);
+        }
+        WhereClause whereClause = whereClauseMap.get(mask);
+        if (whereClause != null && whereClause.matches(conditions, count)) {
+            return whereClause.where;
+        }
+        String where = buildWhere(conditions, count);
+        if (whereClauseMap.size() < MAX_CACHED_CLAUSES) {
+            whereClauseMap.put(mask, new WhereClause(Arrays.copyOf(conditions, count), where));
+        }
+        return where;
+    }
+
+    /**
+     * Build the cache key by the WHERE clause and the arguments, along with the extra fields,
+     * and the paging and sorting fields if required. The values are prefixed with their length
+     * so that the boundaries between them are unambiguous. The types are not encoded,
+     * since each argument of the same WHERE clause comes from the same field:
+     * values rendered as the same string, e.g. Integer 1 and "1" of a field declared as Object,
+     * share the key.
+     */
+    String buildCacheKey(PageQuery query, boolean withPaging) {
+        List<Object> argList = new ArrayList<>();
+        String where = buildWhere(query, argList);
+        StringBuilder sb = new StringBuilder(where.length() + 16 * (argList.size() + extraAccessors.length + 4));
+        sb.append(where);
+        for (Object arg : argList) {
+            appendKeyValue(sb, arg);
+        }
+        for (FieldAccessor extraAccessor : extraAccessors) {
+            appendKeyValue(sb, extraAccessor.get(query));
+        }
+        if (withPaging) {
+            appendKeyValue(sb, query.getSort());
+            appendKeyValue(sb, query.getAfter());
+            if (query.needPaging()) {
+                sb.append("|LIMIT ").append(query.getPageSize()).append(" OFFSET ").append(query.calcOffset());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Resolve the entity properties which the conditions and the sorting of the query depend on.
+     *
+     * @return null if any condition may depend on something else, e.g. a nested query or a custom clause
+     */
+    Set<String> resolveProperties(PageQuery query) {
+        Set<String> properties = new HashSet<>();
+        for (QueryField queryField : queryFields) {
+            if (queryField.isValidValue(queryField.read(query))) {
+                if (queryField.properties == null) {
+                    return null;
+                }
+                Collections.addAll(properties, queryField.properties);
+            }
+        }
+        if (query.getSort() != null) {
+            for (String order : query.getSort().split(";")) {
+                String[] pd = order.split(",");
+                if (pd.length != 2) {
+                    // field(...) sorting
+                    return null;
+                }
+                properties.add(CommonUtil.toCamelCase(pd[0]));
+            }
+        }
+        return properties;
+    }
+
+    private static void appendKeyValue(StringBuilder sb, Object value) {
+        sb.append('|');
+        if (value != null) {
+            String str = value instanceof Date ? String.valueOf(((Date) value).getTime()) : value.toString();
+            sb.append(str.length()).append(':').append(str);
+        }
+    }
+
+    private static String buildWhere(String[] conditions, int count) {
+        StringJoiner whereJoiner = new StringJoiner(" AND ", count);
+        for (int i = 0; i < count; i++) {
+            whereJoiner.append(conditions[i]);
+        }
+        return WHERE + whereJoiner.toString();
+    }
+
+    private static final class QueryField {
+        private final Field field;
+        private final FieldAccessor fieldAccessor;
+        private final boolean primitiveBoolean;
+        private final QuerySuffix querySuffix;
+        private final FieldProcessor.Processor processor;
+        private final String[] properties;
+
+        QueryField(Class<?> queryClass, Field field) {
+            this.field = field;
+            this.fieldAccessor = FieldAccessor.of(queryClass, field);
+            this.primitiveBoolean = field.getType() == boolean.class;
+            this.querySuffix = QuerySuffix.resolve(field.getName());
+            this.processor = FieldProcessor.compile(field);
+            this.properties = resolveProperties(field);
+        }
+
+        private static String[] resolveProperties(Field field) {
+            if (field.isAnnotationPresent(win.doyto.query.annotation.QueryField.class)
+                    || field.isAnnotationPresent(QueryTableAlias.class)
+                    || field.isAnnotationPresent(NestedQueries.class)
+                    || PageQuery.class.isAssignableFrom(field.getType())) {
+                return null;
+            }
+            return Arrays.stream(CommonUtil.splitByOr(field.getName()))
+                         .map(name -> QuerySuffix.resolve(name).resolveColumnName(name))
+                         .toArray(String[]::new);
+        }
+
+        Object read(Object query) {
+            return CommonUtil.convertEnum(field, fieldAccessor.get(query));
+        }
+
+        boolean isValidValue(Object value) {
+            return !(value == null
+                    || (primitiveBoolean && Boolean.FALSE.equals(value))
+                    || querySuffix.shouldIgnore(value)
+            );
+        }
+    }
+
+    /**
+     * Cached WHERE clause which is reusable only when
+     * the processors return the same condition instances.
+     */
+    private static final class WhereClause {
+        private final String[] conditions;
+        private final String where;
+
+        WhereClause(String[] conditions, String where) {
+            this.conditions = conditions;
+            this.where = where;
+        }
+
+        boolean matches(String[] current, int count) {
+            if (conditions.length != count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                // intentionally use ==
+                if (conditions[i] != current[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
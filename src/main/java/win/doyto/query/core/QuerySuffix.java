@@ -4,10 +4,12 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import win.doyto.query.annotation.Enumerated;
+import win.doyto.query.core.FieldProcessor.Processor;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -100,6 +102,80 @@ enum QuerySuffix {
         return querySuffix.buildColumnCondition(columnName, argList, value);
     }
 
+    /**
+     * Resolve the suffix and the column of the field once, and return a processor
+     * which produces the same condition as {@link #buildConditionForField}.
+     * <p>
+     * For operators with fixed placeholders, the returned processor always returns
+     * the same condition instance, so that callers could cache the joined clauses.
+     */
+    static Processor compileConditionForField(String fieldName) {
+        QuerySuffix querySuffix = resolve(fieldName);
+        String columnName = CommonUtil.convertColumn(querySuffix.resolveColumnName(fieldName));
+        return querySuffix.compileColumnCondition(columnName, querySuffix.buildFixedClause(columnName));
+    }
+
+    static Processor compileConditionForFieldContainsOr(String fieldNameWithOr) {
+        final String alias;
+        int indexOfDot = fieldNameWithOr.indexOf('.') + 1;
+        if (indexOfDot > 0) {
+            alias = fieldNameWithOr.substring(0, indexOfDot);
+            fieldNameWithOr = fieldNameWithOr.substring(indexOfDot);
+        } else {
+            alias = "";
+        }
+        String[] fieldNames = CommonUtil.splitByOr(fieldNameWithOr);
+        int size = fieldNames.length;
+        String[] clauses = new String[size];
+        Processor[] processors = new Processor[size];
+        for (int i = 0; i < size; i++) {
+            String fieldName = alias + fieldNames[i];
+            QuerySuffix querySuffix = resolve(fieldName);
+            String columnName = CommonUtil.convertColumn(querySuffix.resolveColumnName(fieldName));
+            clauses[i] = querySuffix.buildFixedClause(columnName);
+            processors[i] = querySuffix.compileColumnCondition(columnName, clauses[i]);
+        }
+        String fixedCondition = Arrays.stream(clauses).allMatch(Objects::nonNull) ?
+                CommonUtil.wrapWithParenthesis(String.join(Constant.SPACE_OR, clauses)) : null;
+
+        return (argList, value) -> {
+            String[] conditions = new String[size];
+            boolean fixed = fixedCondition != null;
+            for (int i = 0; i < size; i++) {
+                conditions[i] = processors[i].process(argList, value);
+                // intentionally use ==
+                fixed &= conditions[i] == clauses[i];
+            }
+            return fixed ? fixedCondition : CommonUtil.wrapWithParenthesis(String.join(Constant.SPACE_OR, conditions));
+        };
+    }
+
+    /**
+     * @return the clause for operators whose placeholders do not depend on the value,
+     * or null for operators like IN.
+     */
+    private String buildFixedClause(String columnName) {
+        if (valueProcessor instanceof InValueProcessor) {
+            return null;
+        }
+        return buildColumnClause(columnName, valueProcessor.getPlaceHolderEx(null));
+    }
+
+    private Processor compileColumnCondition(String columnName, String fixedClause) {
+        if (fixedClause == null) {
+            return (argList, value) -> buildColumnCondition(columnName, argList, valueProcessor.escapeValue(value));
+        }
+        String placeHolderEx = valueProcessor.getPlaceHolderEx(null);
+        return (argList, value) -> {
+            value = valueProcessor.escapeValue(value);
+            if (shouldIgnore(value)) {
+                return null;
+            }
+            appendArg(argList, value, placeHolderEx);
+            return fixedClause;
+        };
+    }
+
     String resolveColumnName(String fieldName) {
         String suffix = this.name();
         return fieldName.endsWith(suffix) ? fieldName.substring(0, fieldName.length() - suffix.length()) : fieldName;
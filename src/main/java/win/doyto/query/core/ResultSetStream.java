@@ -0,0 +1,103 @@
+package win.doyto.query.core;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.DataSource;
+
+/**
+ * ResultSetStream
+ * <p>
+ * A lazily-fetched {@link Stream} over an open {@link ResultSet}, the rows are mapped one by one
+ * while the stream is consumed. The connection is held until the stream is exhausted or closed,
+ * so the stream should be closed after use, e.g. by try-with-resources.
+ *
+ * @author f0rb on 2021-07-24
+ */
+final class ResultSetStream<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sql;
+    private final RowMapper<T> rowMapper;
+    private final DataSource dataSource;
+    private Connection connection;
+    private PreparedStatement ps;
+    private ResultSet rs;
+    private int rowNum = 0;
+    private boolean closed = false;
+
+    private ResultSetStream(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> rowMapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.jdbcTemplate = jdbcTemplate;
+        this.sql = sql;
+        this.rowMapper = rowMapper;
+        this.dataSource = jdbcTemplate.getDataSource();
+    }
+
+    static <T> Stream<T> stream(JdbcTemplate jdbcTemplate, SqlAndArgs sqlAndArgs, RowMapper<T> rowMapper, int fetchSize) {
+        ResultSetStream<T> resultSetStream = new ResultSetStream<>(jdbcTemplate, sqlAndArgs.sql, rowMapper);
+        resultSetStream.open(sqlAndArgs.args, fetchSize);
+        return StreamSupport.stream(resultSetStream, false).onClose(resultSetStream::close);
+    }
+
+    private void open(Object[] args, int fetchSize) {
+        try {
+            connection = DataSourceUtils.getConnection(dataSource);
+            ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (fetchSize != 0) {
+                ps.setFetchSize(fetchSize);
+            }
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            rs = ps.executeQuery();
+        } catch (SQLException e) {
+            close();
+            throw translate(e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (rs.next()) {
+                action.accept(rowMapper.mapRow(rs, rowNum++));
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw translate(e);
+        }
+        close();
+        return false;
+    }
+
+    private DataAccessException translate(SQLException e) {
+        return jdbcTemplate.getExceptionTranslator().translate("ResultSetStream", sql, e);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(ps);
+        DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+}
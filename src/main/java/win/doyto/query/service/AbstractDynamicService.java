@@ -1,19 +1,18 @@
 package win.doyto.query.service;
 
 import lombok.Setter;
-import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.support.NoOpCache;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.*;
 import win.doyto.query.cache.CacheWrapper;
+import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.core.*;
 import win.doyto.query.entity.EntityAspect;
 import win.doyto.query.entity.Persistable;
@@ -21,10 +20,12 @@ import win.doyto.query.entity.UserIdProvider;
 import win.doyto.query.util.BeanUtil;
 
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * AbstractDynamicService
@@ -40,6 +41,9 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
 
     protected final CacheWrapper<E> entityCacheWrapper = CacheWrapper.createInstance();
     protected final CacheWrapper<List<E>> queryCacheWrapper = CacheWrapper.createInstance();
+    protected final CacheWrapper<Long> countCacheWrapper = CacheWrapper.createInstance();
+    private final QueryCacheIndex queryCacheIndex;
+    private final QueryCacheIndex countCacheIndex;
 
     @Autowired(required = false)
     private UserIdProvider<?> userIdProvider = () -> null;
@@ -58,6 +62,8 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
     protected AbstractDynamicService() {
         entityClass = (Class<E>) BeanUtil.getActualTypeArguments(getClass())[0];
         dataAccess = new MemoryDataAccess<>(entityClass);
+        queryCacheIndex = new QueryCacheIndex(entityClass);
+        countCacheIndex = new QueryCacheIndex(entityClass);
     }
 
     @Autowired
@@ -67,7 +73,7 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
     }
 
     protected RowMapper<E> getRowMapper() {
-        return new BeanPropertyRowMapper<>(entityClass);
+        return EntityRowMapper.of(entityClass);
     }
 
     @Autowired(required = false)
@@ -84,6 +90,7 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
             if (cacheList.contains(cacheName) || cacheName != entityClass.getSimpleName().intern()) {
                 entityCacheWrapper.setCache(cacheManager.getCache(cacheName));
                 queryCacheWrapper.setCache(cacheManager.getCache(getQueryCacheName()));
+                countCacheWrapper.setCache(cacheManager.getCache(getCountCacheName()));
             }
         }
     }
@@ -100,14 +107,58 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
         return getCacheName() + ":query";
     }
 
+    private String getCountCacheName() {
+        return getCacheName() + ":count";
+    }
+
     protected void clearCache() {
         entityCacheWrapper.clear();
         queryCacheWrapper.clear();
+        countCacheWrapper.clear();
+        queryCacheIndex.clear();
+        countCacheIndex.clear();
     }
 
     protected void evictCache(String key) {
         entityCacheWrapper.evict(key);
         queryCacheWrapper.clear();
+        countCacheWrapper.clear();
+        queryCacheIndex.clear();
+        countCacheIndex.clear();
+    }
+
+    private boolean isFineGrainedCacheEviction() {
+        return GlobalConfiguration.instance().isFineGrainedCacheEviction();
+    }
+
+    private void evictUpdatedCache(IdWrapper<I> w, E origin, E target, boolean patch) {
+        if (!isFineGrainedCacheEviction()) {
+            evictCache(resolveCacheKey(w));
+            return;
+        }
+        entityCacheWrapper.evict(resolveCacheKey(w));
+        Set<String> changedProperties = queryCacheIndex.resolveChangedProperties(origin, target, patch);
+        queryCacheIndex.evictUpdated(w.getId(), changedProperties, queryCacheWrapper::evict);
+        countCacheIndex.evictUpdated(w.getId(), changedProperties, countCacheWrapper::evict);
+    }
+
+    private void evictDeletedCache(IdWrapper<I> w) {
+        if (!isFineGrainedCacheEviction()) {
+            evictCache(resolveCacheKey(w));
+            return;
+        }
+        entityCacheWrapper.evict(resolveCacheKey(w));
+        queryCacheIndex.evictDeleted(w.getId(), queryCacheWrapper::evict);
+        countCacheWrapper.clear();
+        countCacheIndex.clear();
+    }
+
+    private void registerCache(QueryCacheIndex index, CacheWrapper<?> cacheWrapper, String key, Q query, List<E> list) {
+        if (key != null && isFineGrainedCacheEviction() && !index.register(key, query, list)) {
+            cacheWrapper.clear();
+            index.clear();
+            index.register(key, query, list);
+        }
     }
 
     protected boolean cacheable() {
@@ -117,19 +168,82 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
     @Override
     public List<E> query(Q query) {
         String key = generateCacheKey(query);
-        return queryCacheWrapper.execute(key, () -> dataAccess.query(query));
+        return queryCacheWrapper.execute(key, () -> {
+            List<E> list = dataAccess.query(query);
+            registerCache(queryCacheIndex, queryCacheWrapper, key, query, list);
+            return list;
+        });
+    }
+
+    /**
+     * The streaming query bypasses the query cache.
+     */
+    @Override
+    public Stream<E> stream(Q query) {
+        return dataAccess.stream(query);
     }
 
     protected String generateCacheKey(Q query) {
         String key = null;
         if (cacheable() && !TransactionSynchronizationManager.isActualTransactionActive()) {
-            key = ToStringBuilder.reflectionToString(query, NonNullToStringStyle.NO_CLASS_NAME_NON_NULL_STYLE);
+            key = BuildHelper.buildCacheKey(query);
+        }
+        return key;
+    }
+
+    protected String generateCountCacheKey(Q query) {
+        String key = null;
+        if (cacheable() && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            key = BuildHelper.buildCountCacheKey(query);
         }
         return key;
     }
 
     public long count(Q query) {
-        return dataAccess.count(query);
+        String key = generateCountCacheKey(query);
+        return countCacheWrapper.execute(key, () -> {
+            long count = dataAccess.count(query);
+            registerCache(countCacheIndex, countCacheWrapper, key, query, Collections.emptyList());
+            return count;
+        });
+    }
+
+    /**
+     * The total is counted concurrently by {@link GlobalConfiguration#getPageCountExecutor()} if configured
+     * outside transactions, otherwise it is inferred from a page which is not full or
+     * resolved along with the uncached query, and counted separately at last.
+     */
+    @Override
+    public PageList<E> page(Q query) {
+        query.forcePaging();
+        List<E> list;
+        long total;
+        Executor executor = GlobalConfiguration.instance().getPageCountExecutor();
+        if (executor != null && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            CompletableFuture<Long> countFuture = CompletableFuture.supplyAsync(() -> count(query), executor);
+            list = query(query);
+            total = joinCount(countFuture);
+        } else if (generateCacheKey(query) == null) {
+            long[] holder = {-1};
+            list = dataAccess.queryWithTotal(query, t -> holder[0] = t);
+            total = holder[0] >= 0 ? holder[0] : PageList.resolveTotal(list, query, () -> count(query));
+        } else {
+            list = query(query);
+            total = PageList.resolveTotal(list, query, () -> count(query));
+        }
+        return new PageList<>(list, total, KeysetCursor.next(list, query));
+    }
+
+    private static long joinCount(CompletableFuture<Long> countFuture) {
+        try {
+            return countFuture.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
     }
 
     public List<I> queryIds(Q query) {
@@ -155,14 +269,14 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
     }
 
     public int update(E e) {
-        return doUpdate(e, () -> dataAccess.update(e));
+        return doUpdate(e, () -> dataAccess.update(e), false);
     }
 
     public int patch(E e) {
-        return doUpdate(e, () -> dataAccess.patch(e));
+        return doUpdate(e, () -> dataAccess.patch(e), true);
     }
 
-    private int doUpdate(E e, Invocable<Integer> invocable) {
+    private int doUpdate(E e, Invocable<Integer> invocable, boolean patch) {
         userIdProvider.setupUserId(e);
         E origin;
         if (e == null || (origin = dataAccess.get(e.toIdWrapper())) == null) {
@@ -178,7 +292,7 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
         } else {
             invocable.invoke();
         }
-        evictCache(resolveCacheKey(e.toIdWrapper()));
+        evictUpdatedCache(e.toIdWrapper(), origin, e, patch);
         return 1;
     }
 
@@ -212,6 +326,27 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
         return entityCacheWrapper.execute(resolveCacheKey(w), () -> fetch(w));
     }
 
+    /**
+     * Probe the entity cache for all the ids first,
+     * then fetch the missed ones by one call of the data access,
+     * which shares the in-flight loads with {@link #get(IdWrapper)}.
+     */
+    @Override
+    public List<E> get(Collection<I> ids) {
+        Map<I, String> keyMap = new LinkedHashMap<>();
+        for (I id : ids) {
+            keyMap.put(id, resolveCacheKey(IdWrapper.build(id)));
+        }
+        Map<I, E> entityMap = entityCacheWrapper.executeAll(keyMap, missedIds -> {
+            Map<I, E> loadedMap = new HashMap<>();
+            for (E e : dataAccess.get(missedIds)) {
+                loadedMap.put(e.getId(), e);
+            }
+            return loadedMap;
+        });
+        return ids.stream().map(entityMap::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     @Override
     public E fetch(IdWrapper<I> w) {
         return dataAccess.get(w);
@@ -230,9 +365,8 @@ public abstract class AbstractDynamicService<E extends Persistable<I>, I extends
             } else {
                 dataAccess.delete(w);
             }
-            String key = resolveCacheKey(w);
-            evictCache(key);
-            entityCacheWrapper.execute(key, () -> null);
+            evictDeletedCache(w);
+            entityCacheWrapper.execute(resolveCacheKey(w), () -> null);
         }
         return e;
     }
@@ -5,7 +5,10 @@ import win.doyto.query.core.PageQuery;
 import win.doyto.query.entity.Persistable;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
  * DynamicService
@@ -96,6 +99,16 @@ public interface DynamicService<E extends Persistable<I>, I extends Serializable
      */
     E get(IdWrapper<I> w);
 
+    /**
+     * Get entities by ids
+     *
+     * @param ids entity ids
+     * @return entities in the order of the ids, without the absent ones
+     */
+    default List<E> get(Collection<I> ids) {
+        return ids.stream().map(id -> get(IdWrapper.build(id))).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     /**
      * force to get a new entity object from database
      *
@@ -1,10 +1,10 @@
 package win.doyto.query.service;
 
-import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcOperations;
 import win.doyto.query.core.JoinQueryBuilder;
+import win.doyto.query.core.MemoryJoinQuery;
 import win.doyto.query.core.PageQuery;
 import win.doyto.query.core.SqlAndArgs;
 
@@ -12,20 +12,32 @@ import java.util.List;
 
 /**
  * JoinQueryService
+ * <p>
+ * The service created by {@link #inMemory(Class)} joins the views by {@link MemoryJoinQuery}
+ * over the tables of MemoryDataAccess instead of the JdbcOperations.
  *
  * @author f0rb on 2019-06-09
  */
-@AllArgsConstructor
 public class JoinQueryService<E, Q extends PageQuery> implements QueryService<E, Q> {
 
     @Autowired
     private JdbcOperations jdbcOperations;
     private final JoinQueryBuilder joinQueryBuilder;
     private final BeanPropertyRowMapper<E> beanPropertyRowMapper;
+    private final Class<E> entityClass;
+    private final boolean inMemory;
+    private volatile MemoryJoinQuery<E> memoryJoinQuery;
+
+    public JoinQueryService(JdbcOperations jdbcOperations, JoinQueryBuilder joinQueryBuilder, BeanPropertyRowMapper<E> beanPropertyRowMapper) {
+        this.jdbcOperations = jdbcOperations;
+        this.joinQueryBuilder = joinQueryBuilder;
+        this.beanPropertyRowMapper = beanPropertyRowMapper;
+        this.entityClass = beanPropertyRowMapper.getMappedClass();
+        this.inMemory = false;
+    }
 
     public JoinQueryService(Class<E> entityClass) {
-        this.joinQueryBuilder = new JoinQueryBuilder(entityClass);
-        this.beanPropertyRowMapper = new BeanPropertyRowMapper<>(entityClass);
+        this(entityClass, false);
     }
 
     public JoinQueryService(JdbcOperations jdbcOperations, Class<E> entityClass) {
@@ -33,12 +45,47 @@ public class JoinQueryService<E, Q extends PageQuery> implements QueryService<E,
         this.jdbcOperations = jdbcOperations;
     }
 
+    private JoinQueryService(Class<E> entityClass, boolean inMemory) {
+        this.joinQueryBuilder = new JoinQueryBuilder(entityClass);
+        this.beanPropertyRowMapper = new BeanPropertyRowMapper<>(entityClass);
+        this.entityClass = entityClass;
+        this.inMemory = inMemory;
+    }
+
+    /**
+     * Create the service joining the view over the tables of MemoryDataAccess,
+     * and the view is parsed when it is queried at the first time.
+     */
+    public static <E, Q extends PageQuery> JoinQueryService<E, Q> inMemory(Class<E> entityClass) {
+        return new JoinQueryService<>(entityClass, true);
+    }
+
+    private MemoryJoinQuery<E> getMemoryJoinQuery() {
+        MemoryJoinQuery<E> query = memoryJoinQuery;
+        if (query == null) {
+            synchronized (this) {
+                query = memoryJoinQuery;
+                if (query == null) {
+                    query = new MemoryJoinQuery<>(entityClass);
+                    memoryJoinQuery = query;
+                }
+            }
+        }
+        return query;
+    }
+
     public List<E> query(Q q) {
+        if (inMemory) {
+            return getMemoryJoinQuery().query(q);
+        }
         SqlAndArgs sqlAndArgs = buildJoinSelectAndArgs(q);
         return jdbcOperations.query(sqlAndArgs.getSql(), beanPropertyRowMapper, sqlAndArgs.getArgs());
     }
 
     public long count(Q q) {
+        if (inMemory) {
+            return getMemoryJoinQuery().count(q);
+        }
         SqlAndArgs sqlAndArgs = joinQueryBuilder.buildJoinCountAndArgs(q);
         return jdbcOperations.queryForObject(sqlAndArgs.getSql(), sqlAndArgs.getArgs(), Long.class);
     }
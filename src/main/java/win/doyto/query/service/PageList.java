@@ -1,9 +1,12 @@
 package win.doyto.query.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import win.doyto.query.core.PageQuery;
 
 import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  * PageList
@@ -15,4 +18,27 @@ import java.util.List;
 public class PageList<T> {
     private final List<T> list;
     private final long total;
+    /**
+     * Cursor of the next page for keyset pagination
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String next;
+
+    public PageList(List<T> list, long total) {
+        this(list, total, null);
+    }
+
+    /**
+     * The total is inferred from a page which is not full, otherwise it is counted by the counter.
+     */
+    static long resolveTotal(List<?> list, PageQuery query, LongSupplier counter) {
+        if (!query.isKeysetPaging() || query.getAfter().isEmpty()) {
+            int size = list.size();
+            int offset = query.calcOffset();
+            if ((size > 0 || offset == 0) && size < query.getPageSize()) {
+                return (long) offset + size;
+            }
+        }
+        return counter.getAsLong();
+    }
 }
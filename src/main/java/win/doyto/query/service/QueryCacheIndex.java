@@ -0,0 +1,145 @@
+package win.doyto.query.service;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import win.doyto.query.core.BuildHelper;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.entity.Persistable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.persistence.Transient;
+
+/**
+ * QueryCacheIndex
+ * <p>
+ * Tracks the ids contained by the cached query results and the entity properties
+ * their conditions and sorting depend on, so that an update or a delete of an entity
+ * only evicts the cached results it may affect:
+ * <ul>
+ * <li>the results containing the entity;</li>
+ * <li>for an update, the results depending on any property changed by the update;</li>
+ * <li>for a delete, the results of pages with an offset, which may shift forward.</li>
+ * </ul>
+ * The index only knows the results cached by the current node.
+ *
+ * @author f0rb on 2021-07-26
+ */
+final class QueryCacheIndex {
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Field[] fields;
+    private final Set<String> entityProperties;
+    private final Map<String, Entry> entryMap = new ConcurrentHashMap<>();
+    private final Map<Object, Set<String>> idKeysMap = new ConcurrentHashMap<>();
+
+    QueryCacheIndex(Class<?> entityClass) {
+        this.fields = FieldUtils.getAllFieldsList(entityClass).stream()
+                                .filter(field -> !field.getName().startsWith("$")
+                                        && !Modifier.isStatic(field.getModifiers())
+                                        && !field.isAnnotationPresent(Transient.class))
+                                .toArray(Field[]::new);
+        this.entityProperties = new HashSet<>();
+        for (Field field : fields) {
+            field.setAccessible(true);
+            entityProperties.add(field.getName());
+        }
+    }
+
+    /**
+     * @return false if the index is full and the cached results should be cleared together with the index
+     */
+    boolean register(String key, PageQuery query, List<? extends Persistable<?>> list) {
+        if (entryMap.size() >= MAX_ENTRIES) {
+            return false;
+        }
+        Set<String> properties = BuildHelper.resolveQueryProperties(query);
+        if (properties != null && !entityProperties.containsAll(properties)) {
+            properties = null;
+        }
+        boolean shiftable = query.needPaging() && query.calcOffset() > 0;
+        Object[] ids = list.stream().map(Persistable::getId).toArray();
+        entryMap.put(key, new Entry(properties, shiftable, ids));
+        for (Object id : ids) {
+            idKeysMap.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        return true;
+    }
+
+    void evictUpdated(Object id, Set<String> changedProperties, Consumer<String> evictor) {
+        evict(id, entry -> entry.properties == null || !Collections.disjoint(entry.properties, changedProperties), evictor);
+    }
+
+    void evictDeleted(Object id, Consumer<String> evictor) {
+        evict(id, entry -> entry.shiftable, evictor);
+    }
+
+    private void evict(Object id, Predicate<Entry> affected, Consumer<String> evictor) {
+        Set<String> keys = new HashSet<>(idKeysMap.getOrDefault(id, Collections.emptySet()));
+        entryMap.forEach((key, entry) -> {
+            if (affected.test(entry)) {
+                keys.add(key);
+            }
+        });
+        for (String key : keys) {
+            evictor.accept(key);
+            remove(key);
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entryMap.remove(key);
+        if (entry != null) {
+            for (Object id : entry.ids) {
+                idKeysMap.computeIfPresent(id, (k, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+
+    void clear() {
+        entryMap.clear();
+        idKeysMap.clear();
+    }
+
+    /**
+     * Properties whose values differ between the origin and the target,
+     * and the null values of the target are skipped for a patch.
+     */
+    Set<String> resolveChangedProperties(Object origin, Object target, boolean patch) {
+        Set<String> changed = new HashSet<>();
+        for (Field field : fields) {
+            Object value = readField(field, target);
+            if ((value != null || !patch) && !Objects.equals(value, readField(field, origin))) {
+                changed.add(field.getName());
+            }
+        }
+        return changed;
+    }
+
+    private static Object readField(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final Set<String> properties;
+        private final boolean shiftable;
+        private final Object[] ids;
+
+        Entry(Set<String> properties, boolean shiftable, Object[] ids) {
+            this.properties = properties;
+            this.shiftable = shiftable;
+            this.ids = ids;
+        }
+    }
+}
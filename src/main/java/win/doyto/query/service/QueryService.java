@@ -1,10 +1,12 @@
 package win.doyto.query.service;
 
+import win.doyto.query.core.KeysetCursor;
 import win.doyto.query.core.PageQuery;
 
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * QueryService
@@ -17,6 +19,13 @@ public interface QueryService<E, Q extends PageQuery> {
 
     long count(Q query);
 
+    /**
+     * Query entities lazily for large results, the stream should be closed after use.
+     */
+    default Stream<E> stream(Q query) {
+        return query(query).stream();
+    }
+
     default boolean exists(Q query) {
         return count(query) > 0;
     }
@@ -39,12 +48,15 @@ public interface QueryService<E, Q extends PageQuery> {
 
     default PageList<E> page(Q query) {
         query.forcePaging();
-        return new PageList<>(query(query), count(query));
+        List<E> list = query(query);
+        long total = PageList.resolveTotal(list, query, () -> count(query));
+        return new PageList<>(list, total, KeysetCursor.next(list, query));
     }
 
     default <V> PageList<V> page(Q query, Function<E, V> transfer) {
-        query.forcePaging();
-        return new PageList<>(query(query, transfer), count(query));
+        PageList<E> pageList = page(query);
+        List<V> list = pageList.getList().stream().map(transfer).collect(Collectors.toList());
+        return new PageList<>(list, pageList.getTotal(), pageList.getNext());
     }
 
 }
@@ -11,11 +11,16 @@ import org.springframework.cache.support.NoOpCache;
 import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.core.Invocable;
 
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.Mockito.*;
 
 /**
@@ -96,4 +101,129 @@ class CacheUtilTest {
         GlobalConfiguration.instance().setIgnoreCacheException(true);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    @SuppressWarnings("java:S2925")
+    void coalesceConcurrentLoadsOfSameKey() throws Exception {
+        ConcurrentMapCache cache = new ConcurrentMapCache("coalesce");
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger times = new AtomicInteger();
+        Invocable<Integer> invocable = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return times.incrementAndGet();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> CacheUtil.invoke(cache, "key", invocable)));
+        }
+        for (int i = 0; i < 200 && CacheStats.getCoalescedLoads("coalesce") < 3; i++) {
+            Thread.sleep(5L);
+        }
+        latch.countDown();
+
+        for (Future<Integer> future : futures) {
+            assertEquals(1, future.get());
+        }
+        assertEquals(1, times.get());
+        assertEquals(3, CacheStats.getCoalescedLoads("coalesce"));
+        executor.shutdown();
+    }
+
+    @Test
+    void skipLoadInvalidatedByEviction() throws Exception {
+        ConcurrentMapCache cache = new ConcurrentMapCache("invalidated");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Invocable<String> stale = () -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "stale";
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> future = executor.submit(() -> CacheUtil.invoke(cache, "key", stale));
+            started.await();
+            CacheUtil.evict(cache, "key");
+            assertEquals("fresh", assertTimeoutPreemptively(Duration.ofSeconds(5), () -> CacheUtil.invoke(cache, "key", () -> "fresh")));
+            latch.countDown();
+            assertEquals("stale", future.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        CacheUtil.evict(cache, "other");
+        CacheUtil.put(cache, "other", "value");
+        while (cache.get("other") == null) {
+            Thread.yield();
+        }
+        assertEquals("fresh", cache.get("key").get());
+    }
+
+    @Test
+    void batchLoadSharesInFlightLoads() throws Exception {
+        ConcurrentMapCache cache = new ConcurrentMapCache("batch");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Invocable<String> single = () -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "one";
+        };
+        List<Integer> loadedIds = new CopyOnWriteArrayList<>();
+        Map<Integer, String> keyMap = new LinkedHashMap<>();
+        keyMap.put(1, "key1");
+        keyMap.put(2, "key2");
+        keyMap.put(3, "key3");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> future = executor.submit(() -> CacheUtil.invoke(cache, "key1", single));
+            started.await();
+            Future<Map<Integer, String>> batch = executor.submit(() -> CacheUtil.invokeAll(cache, keyMap, ids -> {
+                loadedIds.addAll(ids);
+                return Collections.singletonMap(2, "two");
+            }));
+            while (!loadedIds.contains(2)) {
+                Thread.yield();
+            }
+            latch.countDown();
+
+            assertEquals("one", future.get());
+            assertThat(batch.get()).containsEntry(1, "one").containsEntry(2, "two").containsEntry(3, null);
+            assertThat(loadedIds).containsExactly(2, 3);
+        } finally {
+            executor.shutdown();
+        }
+        while (cache.get("key3") == null) {
+            Thread.yield();
+        }
+        assertThat(CacheUtil.invokeAll(cache, keyMap, ids -> {
+            throw new IllegalStateException("all cached");
+        })).containsEntry(2, "two").containsEntry(3, null);
+    }
+
+    @Test
+    void loadAgainAfterFailedLoad() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("failed");
+        Invocable<Integer> failed = () -> {
+            throw new IllegalStateException("load failed");
+        };
+        assertThrows(IllegalStateException.class, () -> CacheUtil.invoke(cache, "key", failed));
+        assertEquals(1, CacheUtil.invoke(cache, "key", () -> 1));
+    }
+}
@@ -0,0 +1,112 @@
+package win.doyto.query.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import win.doyto.query.config.GlobalConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CacheWriterTest
+ *
+ * @author f0rb on 2021-07-26
+ */
+class CacheWriterTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final CacheWriter cacheWriter = new CacheWriter(tasks::add);
+
+    @AfterEach
+    void tearDown() {
+        GlobalConfiguration.instance().setCacheWriteQueueCapacity(10000);
+    }
+
+    private void runTasks() {
+        new ArrayList<>(tasks).forEach(Runnable::run);
+        tasks.clear();
+    }
+
+    @Test
+    void coalesceRepeatedPuts() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("writer");
+        long coalesced = CacheStats.getCoalescedWrites();
+        long written = CacheStats.getWrittenWrites();
+
+        cacheWriter.write(cache, "k1", "v1");
+        cacheWriter.write(cache, "k1", "v2");
+        cacheWriter.write(cache, "k2", "v3");
+        assertEquals(1, tasks.size());
+        assertEquals(2, cacheWriter.size());
+        runTasks();
+
+        assertEquals("v2", cache.get("k1").get());
+        assertEquals("v3", cache.get("k2").get());
+        assertEquals(coalesced + 1, CacheStats.getCoalescedWrites());
+        assertEquals(written + 2, CacheStats.getWrittenWrites());
+        assertEquals(0, cacheWriter.size());
+    }
+
+    @Test
+    void dropPutsBeyondCapacity() {
+        GlobalConfiguration.instance().setCacheWriteQueueCapacity(2);
+        ConcurrentMapCache cache = new ConcurrentMapCache("writer");
+        long dropped = CacheStats.getDroppedWrites();
+
+        cacheWriter.write(cache, "k1", "v1");
+        cacheWriter.write(cache, "k2", "v2");
+        cacheWriter.write(cache, "k3", "v3");
+        runTasks();
+
+        assertEquals(dropped + 1, CacheStats.getDroppedWrites());
+        assertNull(cache.get("k3"));
+    }
+
+    @Test
+    void cancelPendingPuts() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("writer");
+        cacheWriter.write(cache, "k1", "v1");
+        cacheWriter.write(cache, "k2", "v2");
+        cacheWriter.cancel(cache, "k1");
+        runTasks();
+        assertNull(cache.get("k1"));
+        assertNotNull(cache.get("k2"));
+
+        cacheWriter.write(cache, "k3", "v3");
+        cacheWriter.cancel(cache);
+        runTasks();
+        assertNull(cache.get("k3"));
+    }
+
+    @Test
+    void writeBatchForBatchCache() {
+        List<Map<Object, Object>> batches = new ArrayList<>();
+        class TestBatchCache extends ConcurrentMapCache implements BatchCache {
+            TestBatchCache() {
+                super("batch");
+            }
+
+            @Override
+            public void putAll(Map<Object, Object> entries) {
+                batches.add(entries);
+                entries.forEach(this::put);
+            }
+        }
+        TestBatchCache cache = new TestBatchCache();
+        Cache proxy = CacheProxy.wrap(cache);
+
+        for (int i = 0; i < 3; i++) {
+            cacheWriter.write(proxy, "k" + i, i);
+        }
+        runTasks();
+
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertEquals(2, cache.get("k2").get());
+    }
+}
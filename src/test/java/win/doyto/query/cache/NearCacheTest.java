@@ -0,0 +1,133 @@
+package win.doyto.query.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import win.doyto.query.config.GlobalConfiguration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * NearCacheTest
+ *
+ * @author f0rb on 2021-07-26
+ */
+class NearCacheTest {
+
+    private final Cache remote = spy(new ConcurrentMapCache("remote"));
+    private final CacheInvalidationBroadcaster broadcaster = new LocalCacheInvalidationBroadcaster();
+
+    @Test
+    void serveHotEntriesFromHeap() {
+        NearCache nearCache = new NearCache(remote, 10, 60000L, broadcaster);
+        nearCache.put("k1", "v1");
+
+        assertEquals("v1", nearCache.get("k1").get());
+        assertEquals("v1", nearCache.get("k1", String.class));
+        verify(remote, never()).get("k1");
+    }
+
+    @Test
+    void broadcastEvictionToOtherNodes() {
+        NearCache node1 = new NearCache(remote, 10, 60000L, broadcaster);
+        NearCache node2 = new NearCache(remote, 10, 60000L, broadcaster);
+        node1.put("k1", "v1");
+        assertEquals("v1", node2.get("k1").get());
+        assertEquals("v1", node2.get("k1").get());
+        verify(remote, times(1)).get("k1");
+
+        node1.evict("k1");
+        assertNull(node2.get("k1"));
+
+        node2.put("k2", "v2");
+        node1.get("k2");
+        node2.clear();
+        assertNull(node1.get("k2"));
+    }
+
+    @Test
+    void stopReceivingInvalidationsAfterClose() {
+        NearCache node1 = new NearCache(remote, 10, 60000L, broadcaster);
+        NearCache node2 = new NearCache(remote, 10, 60000L, broadcaster);
+        node1.put("k1", "v1");
+        node2.get("k1");
+        node2.close();
+
+        node1.evict("k1");
+        assertEquals("v1", node2.get("k1").get());
+        verify(remote, times(1)).get("k1");
+    }
+
+    @Test
+    void skipRemoteValueEvictedDuringRead() {
+        remote.put("k1", "v1");
+        NearCache nearCache = new NearCache(remote, 10, 60000L, broadcaster);
+        doAnswer(invocation -> {
+            Object valueWrapper = invocation.callRealMethod();
+            nearCache.evict("k1");
+            return valueWrapper;
+        }).doCallRealMethod().when(remote).get("k1");
+
+        assertEquals("v1", nearCache.get("k1").get());
+        assertNull(nearCache.get("k1"));
+        verify(remote, times(2)).get("k1");
+    }
+
+    @Test
+    @SuppressWarnings("java:S2925")
+    void expireAfterTtl() throws InterruptedException {
+        NearCache nearCache = new NearCache(remote, 10, 1L, null);
+        nearCache.put("k1", "v1");
+        Thread.sleep(5L);
+
+        assertEquals("v1", nearCache.get("k1").get());
+        verify(remote, times(1)).get("k1");
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() {
+        NearCache nearCache = new NearCache(remote, 2, 60000L, null);
+        nearCache.put("k1", "v1");
+        nearCache.put("k2", "v2");
+        nearCache.get("k1");
+        nearCache.put("k3", "v3");
+
+        nearCache.get("k1");
+        nearCache.get("k2");
+        verify(remote, never()).get("k1");
+        verify(remote, times(1)).get("k2");
+    }
+
+    @Test
+    void wrapRemoteCacheWhenConfigured() {
+        GlobalConfiguration.instance().setNearCacheSize(100);
+        try {
+            CacheWrapper<Object> cacheWrapper = CacheWrapper.createInstance();
+            cacheWrapper.setCache(mock(Cache.class));
+            assertTrue(cacheWrapper.getCache() instanceof BatchCache);
+
+            cacheWrapper.setCache(new ConcurrentMapCache("local"));
+            assertFalse(cacheWrapper.getCache() instanceof BatchCache);
+        } finally {
+            GlobalConfiguration.instance().setNearCacheSize(0);
+        }
+    }
+
+    @Test
+    void closeReplacedNearCache() {
+        CacheInvalidationBroadcaster mockBroadcaster = mock(CacheInvalidationBroadcaster.class);
+        GlobalConfiguration.instance().setNearCacheSize(100);
+        GlobalConfiguration.instance().setCacheInvalidationBroadcaster(mockBroadcaster);
+        try {
+            CacheWrapper<Object> cacheWrapper = CacheWrapper.createInstance();
+            cacheWrapper.setCache(mock(Cache.class));
+            cacheWrapper.setCache(mock(Cache.class));
+            verify(mockBroadcaster, times(2)).subscribe(any());
+            verify(mockBroadcaster, times(1)).unsubscribe(any());
+        } finally {
+            GlobalConfiguration.instance().setNearCacheSize(0);
+            GlobalConfiguration.instance().setCacheInvalidationBroadcaster(null);
+        }
+    }
+}
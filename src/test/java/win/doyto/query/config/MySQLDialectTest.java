@@ -1,8 +1,9 @@
 package win.doyto.query.config;
 
 import org.junit.jupiter.api.Test;
+import win.doyto.query.core.SqlAndArgs;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * MySQLDialectTest
@@ -44,4 +45,20 @@ class MySQLDialectTest {
         String pageSql = mysqlDialect.buildPageSql("SELECT * FROM user WHERE valid = true", 10, 50000);
         assertEquals("SELECT a.* FROM user a JOIN (SELECT id FROM user WHERE valid = true LIMIT 10 OFFSET 50000) b ON a.id = b.id", pageSql);
     }
-}
\ No newline at end of file
+
+    @Test
+    void pageWithCountOver() {
+        MySQLDialect mysqlDialect = new MySQL8Dialect();
+        String pageSql = mysqlDialect.buildPageSql("SELECT username, id, COUNT(*) OVER() AS doyto_total FROM user WHERE valid = true", 10, 50000);
+        assertEquals("SELECT username, id, COUNT(*) OVER() AS doyto_total FROM user WHERE valid = true LIMIT 10 OFFSET 50000", pageSql);
+        assertTrue(mysqlDialect.supportCountOver());
+        assertFalse(new MySQLDialect().supportCountOver());
+    }
+
+    @Test
+    void approximateCount() {
+        SqlAndArgs sqlAndArgs = new MySQLDialect().buildApproximateCount("user");
+        assertEquals("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?", sqlAndArgs.getSql());
+        assertArrayEquals(new Object[]{"user"}, sqlAndArgs.getArgs());
+    }
+}
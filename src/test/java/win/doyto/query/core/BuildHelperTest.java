@@ -1,9 +1,18 @@
 package win.doyto.query.core;
 
 import org.junit.jupiter.api.Test;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.test.TestEnum;
 import win.doyto.query.core.test.TestQuery;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * BuildHelperTest
@@ -21,4 +30,73 @@ class BuildHelperTest {
         assertEquals(" ORDER BY field(gender,'male','female'), id desc", BuildHelper.buildOrderBy(pageQuery));
     }
 
-}
\ No newline at end of file
+    @Test
+    void reuseWhereClauseForQueryWithSameShape() {
+        GlobalConfiguration.instance().setMapCamelCaseToUnderscore(false);
+        List<Object> argList = new ArrayList<>();
+
+        String where1 = BuildHelper.buildWhere(TestQuery.builder().usernameLike("test").valid(true).build(), argList);
+        String where2 = BuildHelper.buildWhere(TestQuery.builder().usernameLike("f0rb").valid(false).build(), argList);
+
+        assertEquals(" WHERE username LIKE ? AND valid = ?", where1);
+        assertSame(where1, where2);
+        assertThat(argList).containsExactly("%test%", true, "%f0rb%", false);
+    }
+
+    @Test
+    void rebuildWhereClauseForCollectionSize() {
+        GlobalConfiguration.instance().setMapCamelCaseToUnderscore(false);
+        List<Object> argList = new ArrayList<>();
+
+        assertEquals(" WHERE id IN (?, ?)", BuildHelper.buildWhere(TestQuery.builder().idIn(Arrays.asList(1, 2)).build(), argList));
+        assertEquals(" WHERE id IN (?, ?, ?)", BuildHelper.buildWhere(TestQuery.builder().idIn(Arrays.asList(1, 2, 3)).build(), argList));
+        assertThat(argList).containsExactly(1, 2, 1, 2, 3);
+    }
+
+    @Test
+    void recompileQueryPlanWhenConfigurationChanged() {
+        TestQuery testQuery = TestQuery.builder().usernameOrEmailOrMobileLike("test").build();
+        try {
+            GlobalConfiguration.instance().setMapCamelCaseToUnderscore(false);
+            assertEquals(" WHERE (username = ? OR email = ? OR mobile LIKE ?)", BuildHelper.buildWhere(testQuery, new ArrayList<>()));
+
+            GlobalConfiguration.instance().setMapCamelCaseToUnderscore(true);
+            TestQuery byUserLevel = TestQuery.builder().userLevelNot(TestEnum.VIP).build();
+            assertEquals(" WHERE user_level != ?", BuildHelper.buildWhere(byUserLevel, new ArrayList<>()));
+        } finally {
+            GlobalConfiguration.instance().setMapCamelCaseToUnderscore(false);
+        }
+    }
+
+
+    @Test
+    void buildCacheKeyByWhereAndArgs() {
+        GlobalConfiguration.instance().setMapCamelCaseToUnderscore(false);
+        TestQuery testQuery = TestQuery.builder().usernameLike("f0rb").pageNumber(2).pageSize(5).build();
+
+        assertEquals(" WHERE username LIKE ?|6:%f0rb%|||LIMIT 5 OFFSET 10", BuildHelper.buildCacheKey(testQuery));
+        assertEquals(" WHERE username LIKE ?|6:%f0rb%", BuildHelper.buildCountCacheKey(testQuery));
+        assertEquals(BuildHelper.buildCacheKey(testQuery),
+                     BuildHelper.buildCacheKey(TestQuery.builder().usernameLike("f0rb").pageNumber(2).pageSize(5).build()));
+    }
+
+    @Test
+    void buildDistinctCacheKeysForDifferentArgs() {
+        TestQuery query1 = TestQuery.builder().username("a|1:b").email("c").build();
+        TestQuery query2 = TestQuery.builder().username("a").email("b|1:c").build();
+        assertThat(BuildHelper.buildCacheKey(query1)).isNotEqualTo(BuildHelper.buildCacheKey(query2));
+
+        DynamicQuery dynamicQuery1 = DynamicQuery.builder().user("f0rb").project("i18n").build();
+        DynamicQuery dynamicQuery2 = DynamicQuery.builder().user("f0rb").project("i18n").locale("zh").build();
+        assertThat(BuildHelper.buildCacheKey(dynamicQuery1)).isNotEqualTo(BuildHelper.buildCacheKey(dynamicQuery2));
+    }
+
+    @Test
+    void resolveQueryProperties() {
+        TestQuery testQuery = TestQuery.builder().usernameOrEmailOrMobile("f0rb").userLevel(TestEnum.VIP).sort("create_time,desc").build();
+        assertThat(BuildHelper.resolveQueryProperties(testQuery)).containsExactlyInAnyOrder("username", "email", "mobile", "userLevel", "createTime");
+
+        testQuery.setAccount("f0rb");
+        assertNull(BuildHelper.resolveQueryProperties(testQuery));
+    }
+}
@@ -0,0 +1,165 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+import win.doyto.query.core.test.TestQuery;
+import win.doyto.query.core.test.UserAndRoleEntity;
+import win.doyto.query.demo.module.user.UserDetailEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static win.doyto.query.core.test.TestEntity.initUserEntities;
+
+/**
+ * ColumnarDataAccessTest
+ *
+ * @author f0rb on 2021-07-28
+ */
+class ColumnarDataAccessTest {
+
+    ColumnarDataAccess<TestEntity, Integer, TestQuery> columnarDataAccess;
+
+    @BeforeEach
+    void setUp() {
+        columnarDataAccess = new ColumnarDataAccess<>(TestEntity.class);
+        columnarDataAccess.batchInsert(initUserEntities());
+    }
+
+    @Test
+    void filterLikeMemoryDataAccess() {
+        assertEquals(1, columnarDataAccess.count(TestQuery.builder().username("f0rb").build()));
+        assertEquals(4, columnarDataAccess.count(TestQuery.builder().usernameLike("name").build()));
+        assertEquals(0, columnarDataAccess.count(TestQuery.builder().usernameStart("name").build()));
+        assertEquals(3, columnarDataAccess.count(TestQuery.builder().idIn(Arrays.asList(1, 2, 3, -1)).build()));
+        assertEquals(3, columnarDataAccess.count(TestQuery.builder().idNotIn(Arrays.asList(1, 2)).build()));
+        assertEquals(2, columnarDataAccess.count(TestQuery.builder().idLt(3).build()));
+        assertEquals(3, columnarDataAccess.count(TestQuery.builder().idLe(3).build()));
+        assertEquals(4, columnarDataAccess.count(TestQuery.builder().memoNull(true).build()));
+        assertEquals(1, columnarDataAccess.count(TestQuery.builder().memoNotNull(true).build()));
+        assertEquals(1, columnarDataAccess.count(TestQuery.builder().userLevelNot(TestEnum.NORMAL).build()));
+        assertEquals(2, columnarDataAccess.count(TestQuery.builder().userLevelNot(TestEnum.VIP).valid(true).build()));
+    }
+
+    @Test
+    void filterByNestedQuery() {
+        new MemoryDataAccess<UserAndRoleEntity, Integer, PageQuery>(UserAndRoleEntity.class)
+                .batchInsert(UserAndRoleEntity.build(1, 1, 1, 2, 3, 1, 4, 1, 4, 2));
+
+        TestQuery byRoleId = TestQuery.builder().roleId(1).build();
+        assertThat(columnarDataAccess.queryIds(byRoleId)).containsExactlyInAnyOrder(1, 3, 4);
+        byRoleId.setValid(true);
+        assertEquals(1, columnarDataAccess.count(byRoleId));
+    }
+
+    @Test
+    void filterByOr() {
+        TestQuery testQuery = TestQuery.builder().usernameOrEmailOrMobile("f0rb").build();
+        assertEquals(1, columnarDataAccess.query(testQuery).size());
+
+        testQuery.setUsernameOrEmailOrMobile(null);
+        testQuery.setUsernameOrEmailOrMobileLike("1777888888");
+        assertEquals(5, columnarDataAccess.query(testQuery).size());
+
+        TestQuery byValid = TestQuery.builder().valid(true).usernameLikeOrEmailLikeOrMobileLike("username").build();
+        assertThat(columnarDataAccess.query(byValid)).extracting(TestEntity::getId).containsExactly(2, 4);
+    }
+
+    @Test
+    void filterByObjectColumn() {
+        TestEntity testEntity = columnarDataAccess.get(3);
+        testEntity.setCreateTime(new Date(1000L));
+        columnarDataAccess.update(testEntity);
+
+        TestQuery testQuery = TestQuery.builder().createTimeGt(new Date(500L)).build();
+        assertThat(columnarDataAccess.queryIds(testQuery)).containsExactly(3);
+        columnarDataAccess.get(3).getCreateTime().setTime(0L);
+        assertEquals(new Date(1000L), columnarDataAccess.get(3).getCreateTime());
+    }
+
+    @Test
+    void pageAndSort() {
+        TestQuery testQuery = TestQuery.builder().usernameLike("name").pageNumber(1).pageSize(3).build();
+        List<Long> totals = new ArrayList<>();
+        assertThat(columnarDataAccess.queryWithTotal(testQuery, totals::add)).extracting(TestEntity::getId).containsExactly(4);
+        assertThat(totals).containsExactly(4L);
+        assertThat(columnarDataAccess.queryIds(testQuery)).containsExactly(4);
+
+        TestQuery sort = TestQuery.builder().sort("valid,asc;id,desc").build();
+        assertThat(columnarDataAccess.query(sort)).extracting(TestEntity::getId).containsExactly(3, 1, 5, 4, 2);
+
+        TestQuery keyset = TestQuery.builder().pageSize(2).sort("valid,desc").after("").build();
+        List<TestEntity> page = columnarDataAccess.query(keyset);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(2, 4);
+        keyset.setAfter(KeysetCursor.next(page, keyset));
+        assertThat(columnarDataAccess.query(keyset)).extracting(TestEntity::getId).containsExactly(5, 1);
+    }
+
+    @Test
+    void writeRows() {
+        TestEntity created = new TestEntity();
+        created.setUsername("created");
+        columnarDataAccess.create(created);
+        assertEquals(6, created.getId());
+
+        TestEntity patch = new TestEntity();
+        patch.setMemo("invalid");
+        TestQuery byNotValid = TestQuery.builder().valid(false).build();
+        assertEquals(2, columnarDataAccess.patch(patch, byNotValid));
+        assertNull(patch.getId());
+        assertThat(columnarDataAccess.query(byNotValid)).extracting(TestEntity::getMemo).containsExactly("invalid", "invalid");
+
+        TestEntity update = columnarDataAccess.get(5);
+        update.setUserLevel(TestEnum.NORMAL);
+        assertEquals(1, columnarDataAccess.update(update));
+        assertEquals(0, columnarDataAccess.count(TestQuery.builder().userLevel(TestEnum.VIP).build()));
+
+        assertEquals(1, columnarDataAccess.delete(1));
+        assertEquals(0, columnarDataAccess.delete(1));
+        assertEquals(3, columnarDataAccess.delete(TestQuery.builder().valid(true).build()));
+        assertThat(columnarDataAccess.get(Arrays.asList(6, 5, 3, 1))).extracting(TestEntity::getId).containsExactly(6, 3);
+    }
+
+    @Test
+    void patchKeepsAssignedIds() {
+        ColumnarDataAccess<UserDetailEntity, Long, PageQuery> dataAccess = new ColumnarDataAccess<>(UserDetailEntity.class);
+        for (long id = 1; id <= 2; id++) {
+            UserDetailEntity entity = new UserDetailEntity();
+            entity.setId(id);
+            dataAccess.create(entity);
+        }
+
+        UserDetailEntity patch = new UserDetailEntity();
+        patch.setId(9L);
+        patch.setAddress("patched");
+        assertEquals(2, dataAccess.patch(patch, new PageQuery()));
+        assertThat(dataAccess.queryIds(new PageQuery())).containsExactly(1L, 2L);
+        assertEquals("patched", dataAccess.get(2L).getAddress());
+        assertNull(dataAccess.get(9L));
+    }
+
+    @Test
+    void compactDeletedRows() {
+        ColumnarDataAccess<TestEntity, Integer, TestQuery> dataAccess = new ColumnarDataAccess<>(TestEntity.class);
+        List<TestEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            TestEntity testEntity = new TestEntity();
+            testEntity.setUsername("user" + (i % 10));
+            entities.add(testEntity);
+        }
+        dataAccess.batchInsert(entities);
+
+        assertEquals(2500, dataAccess.delete(TestQuery.builder().idLe(2500).build()));
+
+        assertEquals(500, dataAccess.count(TestQuery.builder().build()));
+        assertEquals("user9", dataAccess.get(2510).getUsername());
+        assertThat(dataAccess.queryIds(TestQuery.builder().username("user9").pageSize(3).build())).containsExactly(2510, 2520, 2530);
+        assertNull(dataAccess.get(2500));
+    }
+}
@@ -0,0 +1,81 @@
+package win.doyto.query.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+
+import java.io.Serializable;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EntityCopierTest
+ *
+ * @author f0rb on 2021-07-27
+ */
+class EntityCopierTest {
+
+    @Test
+    void copyFields() {
+        TestEntity testEntity = TestEntity.initUserEntities().get(4);
+        testEntity.setCreateTime(new Date(1000L));
+
+        TestEntity copy = EntityCopier.of(TestEntity.class).copy(testEntity);
+
+        assertNotSame(testEntity, copy);
+        assertEquals(5, copy.getId());
+        assertEquals("f0rb", copy.getUsername());
+        assertEquals(TestEnum.VIP, copy.getUserLevel());
+        assertEquals(testEntity.getCreateTime(), copy.getCreateTime());
+        assertNotSame(testEntity.getCreateTime(), copy.getCreateTime());
+        assertNull(EntityCopier.of(TestEntity.class).copy(null));
+    }
+
+    @Test
+    void copyContainersOneLevelDeep() {
+        Container container = new Container();
+        container.setTags(new ArrayList<>(Arrays.asList("a", "b")));
+        container.setLinked(new LinkedList<>(Collections.singletonList("c")));
+        container.setScores(new int[]{1, 2});
+        container.setProps(new TreeMap<>(Collections.singletonMap("k", "v")));
+
+        Container copy = EntityCopier.of(Container.class).copy(container);
+        container.getTags().add("x");
+        container.getScores()[0] = 9;
+        container.getProps().put("k2", "v2");
+
+        assertEquals(Arrays.asList("a", "b"), copy.getTags());
+        assertArrayEquals(new int[]{1, 2}, copy.getScores());
+        assertEquals(Collections.singletonMap("k", "v"), copy.getProps());
+        assertSame(container.getLinked(), copy.getLinked());
+    }
+
+    @Test
+    void copyBySerializationWithoutNoArgConstructor() {
+        Immutable immutable = new Immutable("test");
+
+        Immutable copy = EntityCopier.of(Immutable.class).copy(immutable);
+
+        assertNotSame(immutable, copy);
+        assertEquals("test", copy.getName());
+    }
+
+    @Getter
+    @Setter
+    private static class Container {
+        private List<String> tags;
+        private LinkedList<String> linked;
+        private int[] scores;
+        private SortedMap<String, String> props;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Immutable implements Serializable {
+        private final String name;
+    }
+}
@@ -0,0 +1,83 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * EntityRowMapperTest
+ *
+ * @author f0rb on 2021-07-22
+ */
+class EntityRowMapperTest {
+
+    private static ResultSet mockResultSet(String... labels) throws SQLException {
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+        }
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getMetaData()).thenReturn(metaData);
+        return rs;
+    }
+
+    @Test
+    void mapRowByTypedGetters() throws SQLException {
+        ResultSet rs = mockResultSet("ID", "USERNAME", "user_level", "valid", "unknown");
+        when(rs.getInt(1)).thenReturn(5);
+        when(rs.getString(2)).thenReturn("f0rb");
+        when(rs.getObject(3)).thenReturn(0);
+        when(rs.getBoolean(4)).thenReturn(true);
+
+        TestEntity testEntity = EntityRowMapper.of(TestEntity.class).mapRow(rs, 0);
+
+        assertEquals(5, testEntity.getId());
+        assertEquals("f0rb", testEntity.getUsername());
+        assertEquals(TestEnum.VIP, testEntity.getUserLevel());
+        assertTrue(testEntity.getValid());
+        verify(rs, never()).getObject(5);
+    }
+
+    @Test
+    void mapNullColumn() throws SQLException {
+        ResultSet rs = mockResultSet("id", "valid");
+        when(rs.getInt(1)).thenReturn(0);
+        when(rs.getBoolean(2)).thenReturn(false);
+        when(rs.wasNull()).thenReturn(true);
+
+        TestEntity testEntity = EntityRowMapper.of(TestEntity.class).mapRow(rs, 0);
+
+        assertNull(testEntity.getId());
+        assertNull(testEntity.getValid());
+    }
+
+    @Test
+    void resolveColumnsByLabelsOfEachResultSet() throws SQLException {
+        ResultSet rs1 = mockResultSet("id", "username");
+        ResultSet rs2 = mockResultSet("username", "id");
+        when(rs1.getInt(1)).thenReturn(1);
+        when(rs1.getString(2)).thenReturn("f0rb");
+        when(rs2.getString(1)).thenReturn("doyto");
+        when(rs2.getInt(2)).thenReturn(2);
+        EntityRowMapper<TestEntity> rowMapper = EntityRowMapper.of(TestEntity.class);
+
+        assertEquals("f0rb", rowMapper.mapRow(rs1, 0).getUsername());
+        assertEquals("doyto", rowMapper.mapRow(rs2, 0).getUsername());
+        assertEquals(1, rowMapper.mapRow(rs1, 1).getId());
+        assertEquals(2, rowMapper.mapRow(rs2, 1).getId());
+
+        ResultSetMetaData metaData = rs1.getMetaData();
+        when(metaData.getColumnLabel(1)).thenReturn("username");
+        when(metaData.getColumnLabel(2)).thenReturn("id");
+        when(rs1.getString(1)).thenReturn("reused");
+        assertEquals("reused", rowMapper.mapRow(rs1, 0).getUsername());
+    }
+}
@@ -0,0 +1,61 @@
+package win.doyto.query.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FieldAccessorTest
+ *
+ * @author f0rb on 2021-07-21
+ */
+class FieldAccessorTest {
+
+    @Test
+    void readByGetterAndField() {
+        TestEntity testEntity = new TestEntity();
+        testEntity.setId(1);
+        testEntity.setUserLevel(TestEnum.VIP);
+
+        assertEquals(1, FieldAccessor.of(TestEntity.class, "id").get(testEntity));
+        assertEquals(TestEnum.VIP, FieldAccessor.of(TestEntity.class, "userLevel").read(testEntity));
+    }
+
+    @Test
+    void writeField() {
+        TestEntity testEntity = new TestEntity();
+        FieldAccessor.of(TestEntity.class, "username").write(testEntity, "f0rb");
+        assertEquals("f0rb", testEntity.getUsername());
+    }
+
+    @Test
+    void readGetterOfNonPublicClass() {
+        HiddenObject hiddenObject = new HiddenObject("test", true);
+        assertEquals("test", FieldAccessor.of(HiddenObject.class, "name").get(hiddenObject));
+        assertEquals(true, FieldAccessor.of(HiddenObject.class, "valid").get(hiddenObject));
+        assertEquals("TEST", FieldAccessor.of(HiddenObject.class, "upperName").get(hiddenObject));
+    }
+
+    @Test
+    void readAbsentField() {
+        FieldAccessor fieldAccessor = FieldAccessor.of(HiddenObject.class, "absent");
+        HiddenObject hiddenObject = new HiddenObject("test", true);
+        assertNull(fieldAccessor.getField());
+        assertThrows(IllegalArgumentException.class, () -> fieldAccessor.get(hiddenObject));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class HiddenObject {
+        private String name;
+        private boolean valid;
+
+        public String getUpperName() {
+            return name.toUpperCase();
+        }
+    }
+}
@@ -31,17 +31,16 @@ class FieldProcessorTest {
     }
 
     @SneakyThrows
-    private Field initField(String fieldName) {
+    private FieldProcessor.Processor compileField(String fieldName) {
         Field field = PermissionQuery.class.getDeclaredField(fieldName);
-        FieldProcessor.init(field);
-        return field;
+        return FieldProcessor.compile(field);
     }
 
     @Test
     void testResolveNestedQueries() {
-        Field field = initField("userId");
+        FieldProcessor.Processor processor = compileField("userId");
 
-        String sql = FieldProcessor.execute(field, argList, 2);
+        String sql = processor.process(argList, 2);
 
         String expected = "id IN (SELECT permId FROM t_role_and_perm WHERE roleId IN " +
                 "(SELECT roleId FROM t_user_and_role WHERE userId = ?))";
@@ -51,10 +50,10 @@ class FieldProcessorTest {
 
     @Test
     void testCustomWhereColumnForNextNestedQuery() {
-        Field field = initField("user");
+        FieldProcessor.Processor processor = compileField("user");
 
         UserQuery userQuery = UserQuery.builder().usernameLike("test").userLevel(UserLevel.普通).build();
-        String sql = FieldProcessor.execute(field, argList, userQuery);
+        String sql = processor.process(argList, userQuery);
 
         String expected = "id IN (SELECT permId FROM t_role_and_perm WHERE roleId IN " +
                 "(SELECT roleId FROM t_user_and_role WHERE userId IN " +
@@ -65,9 +64,9 @@ class FieldProcessorTest {
 
     @Test
     void testNestedQueryOnFieldWithOr() {
-        Field field = initField("roleCodeLikeOrRoleNameLike");
+        FieldProcessor.Processor processor = compileField("roleCodeLikeOrRoleNameLike");
 
-        String sql = FieldProcessor.execute(field, argList, "test");
+        String sql = processor.process(argList, "test");
 
         String expected = "id IN (SELECT permId FROM t_role_and_perm WHERE roleId IN " +
                 "(SELECT id FROM t_role WHERE (roleCode LIKE ? OR roleName LIKE ?)))";
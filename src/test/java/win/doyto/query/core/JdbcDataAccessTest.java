@@ -0,0 +1,198 @@
+package win.doyto.query.core;
+
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.test.SimpleDialect;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestQuery;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * JdbcDataAccessTest
+ *
+ * @author f0rb on 2021-07-23
+ */
+class JdbcDataAccessTest {
+
+    private final Dialect dialect = GlobalConfiguration.dialect();
+    private JdbcTemplate jdbcTemplate;
+    private JdbcDataAccess<TestEntity, Integer, TestQuery> jdbcDataAccess;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource(new JDBCDriver(), "jdbc:hsqldb:mem:jdbc_data_access", "sa", ""));
+        jdbcTemplate.execute("drop table user if exists");
+        jdbcTemplate.execute("create table user (id integer generated by default as identity (start with 1), " +
+                "username varchar(255), password varchar(255), mobile varchar(255), email varchar(255), " +
+                "nickname varchar(255), userLevel integer, memo varchar(255), valid boolean, primary key (id))");
+        jdbcDataAccess = new JdbcDataAccess<>(jdbcTemplate, TestEntity.class, Integer.class, EntityRowMapper.of(TestEntity.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        GlobalConfiguration.instance().setBatchInsertSize(1000);
+        GlobalConfiguration.instance().setJdbcBatchInsert(false);
+        GlobalConfiguration.instance().setStreamFetchSize(1000);
+        GlobalConfiguration.instance().setApproximateCountThreshold(0);
+        GlobalConfiguration.instance().setDialect(dialect);
+    }
+
+    private long countUser() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM user", Long.class);
+    }
+
+    @Test
+    void batchInsertInChunks() {
+        GlobalConfiguration.instance().setBatchInsertSize(2);
+
+        List<TestEntity> entities = TestEntity.initUserEntities();
+        entities.forEach(testEntity -> testEntity.setId(null));
+
+        assertEquals(5, jdbcDataAccess.batchInsert(entities));
+        assertEquals(5, countUser());
+        assertThat(entities).extracting(TestEntity::getId).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    void batchInsertWithoutChunks() {
+        GlobalConfiguration.instance().setBatchInsertSize(0);
+
+        List<TestEntity> entities = TestEntity.initUserEntities();
+        entities.forEach(testEntity -> testEntity.setId(null));
+
+        assertEquals(5, jdbcDataAccess.batchInsert(entities));
+        assertEquals(5, countUser());
+        assertThat(entities).extracting(TestEntity::getId).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    void batchInsertByJdbcBatch() {
+        GlobalConfiguration.instance().setBatchInsertSize(2);
+        GlobalConfiguration.instance().setJdbcBatchInsert(true);
+
+        List<TestEntity> entities = TestEntity.initUserEntities();
+        entities.forEach(testEntity -> testEntity.setId(null));
+
+        assertEquals(5, jdbcDataAccess.batchInsert(entities));
+        assertEquals(5, countUser());
+        assertEquals("f0rb", jdbcTemplate.queryForObject("SELECT username FROM user WHERE id = 5", String.class));
+        assertThat(entities).extracting(TestEntity::getId).containsExactly(1, 2, 3, 4, 5);
+    }
+
+    @Test
+    void streamQuery() {
+        GlobalConfiguration.instance().setStreamFetchSize(2);
+        jdbcDataAccess.batchInsert(TestEntity.initUserEntities());
+
+        TestQuery testQuery = TestQuery.builder().usernameLike("name").build();
+        try (Stream<TestEntity> stream = jdbcDataAccess.stream(testQuery)) {
+            assertThat(stream.map(TestEntity::getUsername))
+                    .containsExactly("username1", "username2", "username3", "username4");
+        }
+    }
+
+    @Test
+    void keysetPaging() {
+        GlobalConfiguration.instance().setDialect(new SimpleDialect());
+        jdbcDataAccess.batchInsert(TestEntity.initUserEntities());
+
+        TestQuery testQuery = TestQuery.builder().pageSize(2).sort("valid,asc;username,desc").after("").build();
+        List<TestEntity> page = jdbcDataAccess.query(testQuery);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(3, 1);
+
+        testQuery.setAfter(KeysetCursor.next(page, testQuery));
+        page = jdbcDataAccess.query(testQuery);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(4, 2);
+
+        testQuery.setSort("id,desc").setAfter("");
+        testQuery.setAfter(KeysetCursor.next(jdbcDataAccess.query(testQuery), testQuery));
+        assertThat(jdbcDataAccess.query(testQuery)).extracting(TestEntity::getId).containsExactly(3, 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queryWithTotalByCountOver() throws SQLException {
+        GlobalConfiguration.instance().setDialect(new SimpleDialect() {
+            @Override
+            public boolean supportCountOver() {
+                return true;
+            }
+        });
+        JdbcOperations jdbcOperations = mock(JdbcOperations.class);
+        JdbcDataAccess<TestEntity, Integer, TestQuery> dataAccess =
+                new JdbcDataAccess<>(jdbcOperations, TestEntity.class, Integer.class, EntityRowMapper.of(TestEntity.class));
+        ArgumentCaptor<RowMapper<TestEntity>> captor = ArgumentCaptor.forClass(RowMapper.class);
+        TestQuery testQuery = TestQuery.builder().usernameLike("name").pageSize(2).build();
+        long[] total = {-1};
+
+        dataAccess.queryWithTotal(testQuery, t -> total[0] = t);
+
+        verify(jdbcOperations).query(eq("SELECT username, password, mobile, email, nickname, userLevel, memo, valid, id, " +
+                "COUNT(*) OVER() AS doyto_total FROM user WHERE username LIKE ? LIMIT 2 OFFSET 0"),
+                eq(new Object[]{"%name%"}), captor.capture());
+        ResultSet rs = mock(ResultSet.class, RETURNS_DEEP_STUBS);
+        when(rs.getLong("doyto_total")).thenReturn(4L);
+        captor.getValue().mapRow(rs, 1);
+        assertEquals(-1, total[0]);
+        captor.getValue().mapRow(rs, 0);
+        assertEquals(4, total[0]);
+    }
+
+    @Test
+    void approximateCountForLargeTable() {
+        GlobalConfiguration.instance().setDialect(new SimpleDialect() {
+            @Override
+            public SqlAndArgs buildApproximateCount(String tableName) {
+                return new SqlAndArgs("SELECT count(*) * 100 FROM " + tableName, Collections.emptyList());
+            }
+        });
+        jdbcDataAccess.batchInsert(TestEntity.initUserEntities());
+
+        GlobalConfiguration.instance().setApproximateCountThreshold(1000);
+        assertEquals(5, jdbcDataAccess.count(new TestQuery()));
+
+        GlobalConfiguration.instance().setApproximateCountThreshold(100);
+        assertEquals(500, jdbcDataAccess.count(new TestQuery()));
+        assertEquals(4, jdbcDataAccess.count(TestQuery.builder().usernameLike("name").build()));
+    }
+
+    @Test
+    void getByIdsInOrder() {
+        jdbcDataAccess.batchInsert(TestEntity.initUserEntities());
+
+        assertThat(jdbcDataAccess.get(Arrays.asList(5, 2, 9, 2)))
+                .extracting(TestEntity::getId).containsExactly(5, 2, 2);
+        assertThat(jdbcDataAccess.get(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    void getByIdsOfDynamicTable() {
+        JdbcOperations jdbcOperations = mock(JdbcOperations.class);
+        JdbcDataAccess<DynamicEntity, Integer, TestQuery> dataAccess =
+                new JdbcDataAccess<>(jdbcOperations, DynamicEntity.class, Integer.class, EntityRowMapper.of(DynamicEntity.class));
+
+        UnsupportedOperationException e = assertThrows(UnsupportedOperationException.class, () -> dataAccess.get(Arrays.asList(1, 2)));
+        assertEquals("Dynamic table can not be queried by ids, use get(IdWrapper) instead: t_dynamic_${user}_${project}", e.getMessage());
+        verifyNoInteractions(jdbcOperations);
+    }
+}
@@ -1,6 +1,7 @@
 package win.doyto.query.core;
 
 import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.DistinctRoleCountView;
 import win.doyto.query.core.test.TestEnum;
 import win.doyto.query.core.test.TestJoinQuery;
 import win.doyto.query.core.test.TestJoinView;
@@ -9,6 +10,7 @@ import win.doyto.query.service.JoinQueryService;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * JoinQueryServiceTest
@@ -77,4 +79,18 @@ class JoinQueryServiceTest {
         assertThat(sqlAndArgs.getArgs()).isEmpty();
     }
 
+    @Test
+    void parseViewInMemoryOnlyWhenQueried() {
+        JoinQueryService<DistinctRoleCountView, TestJoinQuery> joinQueryService = new JoinQueryService<>(DistinctRoleCountView.class);
+        String expected = "SELECT u.username AS username, count(DISTINCT ur.roleId) AS roleCount " +
+            "FROM user u " +
+            "left join t_user_and_role ur on ur.userId = u.id and ur.valid is true " +
+            "GROUP BY u.username";
+        assertEquals(expected, joinQueryService.buildJoinSelectAndArgs(new TestJoinQuery()).getSql());
+
+        JoinQueryService<DistinctRoleCountView, TestJoinQuery> inMemory = JoinQueryService.inMemory(DistinctRoleCountView.class);
+        TestJoinQuery testJoinQuery = new TestJoinQuery();
+        assertThrows(UnsupportedOperationException.class, () -> inMemory.count(testJoinQuery));
+    }
+
 }
\ No newline at end of file
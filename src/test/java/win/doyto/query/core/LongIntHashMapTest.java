@@ -0,0 +1,38 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * LongIntHashMapTest
+ *
+ * @author f0rb on 2021-07-28
+ */
+class LongIntHashMapTest {
+
+    @Test
+    void behaveLikeHashMap() {
+        LongIntHashMap longIntHashMap = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(5000) * 31L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, LongIntHashMap.ABSENT), longIntHashMap.remove(key));
+                expected.remove(key);
+            } else {
+                assertEquals(expected.getOrDefault(key, LongIntHashMap.ABSENT), longIntHashMap.put(key, i));
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), longIntHashMap.size());
+        for (long key = -31; key < 5000 * 31L; key += 31) {
+            assertEquals((int) expected.getOrDefault(key, LongIntHashMap.ABSENT), longIntHashMap.get(key));
+        }
+    }
+}
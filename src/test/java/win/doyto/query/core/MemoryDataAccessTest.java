@@ -2,16 +2,24 @@ package win.doyto.query.core;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.core.test.TestEntity;
 import win.doyto.query.core.test.TestEnum;
 import win.doyto.query.core.test.TestQuery;
+import win.doyto.query.core.test.UserAndRoleEntity;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.*;
 import static win.doyto.query.core.test.TestEntity.initUserEntities;
 
 /**
@@ -35,6 +43,40 @@ class MemoryDataAccessTest {
         assertEquals(1, testMemoryDataAccess.query(testQuery).size());
     }
 
+    @Test
+    void getByIdsInOrder() {
+        List<TestEntity> entities = testMemoryDataAccess.get(Arrays.asList(3, 1, 9));
+        assertThat(entities).extracting(TestEntity::getId).containsExactly(3, 1);
+
+        entities.get(0).setUsername("changed");
+        assertEquals("username3", testMemoryDataAccess.get(3).getUsername());
+    }
+
+    @Test
+    void streamWithPaging() {
+        TestQuery testQuery = TestQuery.builder().usernameLike("name").pageNumber(1).pageSize(3).build();
+        try (Stream<TestEntity> stream = testMemoryDataAccess.stream(testQuery)) {
+            assertEquals(1, stream.count());
+        }
+    }
+
+    @Test
+    void keysetPaging() {
+        TestQuery testQuery = TestQuery.builder().pageSize(2).sort("valid,desc").after("").build();
+
+        List<TestEntity> page = testMemoryDataAccess.query(testQuery);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(2, 4);
+
+        testQuery.setAfter(KeysetCursor.next(page, testQuery));
+        page = testMemoryDataAccess.query(testQuery);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(5, 1);
+
+        testQuery.setAfter(KeysetCursor.next(page, testQuery));
+        page = testMemoryDataAccess.query(testQuery);
+        assertThat(page).extracting(TestEntity::getId).containsExactly(3);
+        assertNull(KeysetCursor.next(page, testQuery));
+    }
+
     @Test
     void filterByUsernameEq() {
         TestQuery testQuery = TestQuery.builder().usernameEq("f0rb").build();
@@ -54,6 +96,17 @@ class MemoryDataAccessTest {
         assertEquals(5, testMemoryDataAccess.query(testQuery).size());
     }
 
+    @Test
+    void buildFilterOnceForQuery() {
+        TestQuery testQuery = TestQuery.builder().usernameOrEmailOrMobile("f0rb@163.com").valid(true).build();
+        Predicate<TestEntity> filter = testMemoryDataAccess.buildFilter(testQuery);
+
+        List<TestEntity> entities = initUserEntities();
+        assertThat(entities.stream().filter(filter)).extracting(TestEntity::getId).containsExactly(5);
+        entities.get(1).setUsername("f0rb@163.com");
+        assertThat(entities.stream().filter(filter)).extracting(TestEntity::getId).containsExactly(2, 5);
+    }
+
     @Test
     void filterByLike() {
         TestQuery testQuery = TestQuery.builder().usernameLike("name").build();
@@ -86,6 +139,15 @@ class MemoryDataAccessTest {
         assertNotSame(u1, u2);
     }
 
+    @Test
+    void queryShouldNotExposeStoredEntities() {
+        TestQuery testQuery = TestQuery.builder().username("f0rb").build();
+        testMemoryDataAccess.query(testQuery).get(0).setUsername("changed");
+
+        assertEquals(1, testMemoryDataAccess.count(testQuery));
+        assertEquals("f0rb", testMemoryDataAccess.get(5).getUsername());
+    }
+
     @Test
     void filterByMultiConditions() {
         TestQuery testQuery = TestQuery.builder().valid(true).usernameLikeOrEmailLikeOrMobileLike("username").build();
@@ -109,9 +171,14 @@ class MemoryDataAccessTest {
     }
 
     @Test
-    void ignoreFieldWithSubQuery() {
-        TestQuery byNoneNullMemo = TestQuery.builder().roleId(1).build();
-        assertEquals(5, testMemoryDataAccess.count(byNoneNullMemo));
+    void filterByNestedQuery() {
+        new MemoryDataAccess<UserAndRoleEntity, Integer, PageQuery>(UserAndRoleEntity.class)
+                .batchInsert(UserAndRoleEntity.build(1, 1, 1, 2, 3, 1, 4, 1, 4, 2));
+
+        TestQuery byRoleId = TestQuery.builder().roleId(1).build();
+        assertThat(testMemoryDataAccess.queryIds(byRoleId)).containsExactlyInAnyOrder(1, 3, 4);
+        byRoleId.setValid(true);
+        assertEquals(1, testMemoryDataAccess.count(byRoleId));
     }
 
     @Test
@@ -146,11 +213,49 @@ class MemoryDataAccessTest {
         TestEntity testEntity = new TestEntity();
         testEntity.setMemo("invalid");
         TestQuery byNotValid = TestQuery.builder().valid(false).build();
-        testMemoryDataAccess.patch(testEntity, byNotValid);
+        assertEquals(2, testMemoryDataAccess.patch(testEntity, byNotValid));
+        assertNull(testEntity.getId());
 
         assertThat(testMemoryDataAccess.query(byNotValid)).extracting(TestEntity::getMemo).containsExactly("invalid", "invalid");
     }
 
+    @Test
+    void readWholeEntitiesWhilePatching() throws Exception {
+        TestQuery byValid = TestQuery.builder().valid(true).build();
+        TestEntity init = new TestEntity();
+        init.setUsername("user");
+        init.setNickname("user");
+        testMemoryDataAccess.patch(init, byValid);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    TestEntity patch = new TestEntity();
+                    patch.setUsername("user" + thread + "-" + i);
+                    patch.setNickname("user" + thread + "-" + i);
+                    testMemoryDataAccess.patch(patch, byValid);
+                }
+            }));
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    for (TestEntity entity : testMemoryDataAccess.query(byValid)) {
+                        assertEquals(entity.getUsername(), entity.getNickname());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(testMemoryDataAccess.query(byValid)).hasSize(3).allMatch(e -> e.getUsername().equals(e.getNickname()));
+        assertEquals(1, testMemoryDataAccess.count(TestQuery.builder().username("username1").build()));
+    }
+
     @Test
     void sort() {
         TestQuery sort = TestQuery.builder().build();
@@ -163,4 +268,89 @@ class MemoryDataAccessTest {
         sort.setValid(true);
         assertThat(testMemoryDataAccess.query(sort)).extracting(TestEntity::getId).containsExactly(5, 4, 2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void queryByIndexes() {
+        testMemoryDataAccess.addIndex("userLevel");
+        testMemoryDataAccess.addIndex("valid");
+        testMemoryDataAccess.addSortedIndex("username");
+        testMemoryDataAccess.addSortedIndex("id");
+
+        assertEquals(1, testMemoryDataAccess.count(TestQuery.builder().username("f0rb").build()));
+        assertEquals(4, testMemoryDataAccess.count(TestQuery.builder().usernameStart("user").build()));
+        assertEquals(4, testMemoryDataAccess.count(TestQuery.builder().userLevelIn(Arrays.asList(TestEnum.NORMAL)).build()));
+        assertThat(testMemoryDataAccess.query(TestQuery.builder().idLe(3).valid(false).sort("id,desc").build()))
+                .extracting(TestEntity::getId).containsExactly(3, 1);
+        assertEquals(0, testMemoryDataAccess.count(TestQuery.builder().usernameStart("user").userLevel(TestEnum.VIP).build()));
+    }
+
+    @Test
+    void maintainIndexesOnWrites() {
+        testMemoryDataAccess.addIndex("userLevel");
+        testMemoryDataAccess.addSortedIndex("username");
+        TestQuery byVip = TestQuery.builder().userLevel(TestEnum.VIP).build();
+
+        TestEntity patch = new TestEntity();
+        patch.setId(1);
+        patch.setUserLevel(TestEnum.VIP);
+        testMemoryDataAccess.patch(patch);
+        assertThat(testMemoryDataAccess.query(byVip)).extracting(TestEntity::getId).containsExactlyInAnyOrder(1, 5);
+
+        TestEntity update = testMemoryDataAccess.get(5);
+        update.setUserLevel(TestEnum.NORMAL);
+        update.setUsername("username5");
+        testMemoryDataAccess.update(update);
+        assertThat(testMemoryDataAccess.query(byVip)).extracting(TestEntity::getId).containsExactly(1);
+        assertEquals(5, testMemoryDataAccess.count(TestQuery.builder().usernameStart("user").build()));
+
+        testMemoryDataAccess.delete(1);
+        assertEquals(0, testMemoryDataAccess.count(byVip));
+        testMemoryDataAccess.delete(TestQuery.builder().usernameStart("username").valid(true).build());
+        assertThat(testMemoryDataAccess.queryIds(TestQuery.builder().usernameStart("user").build())).containsExactly(3);
+    }
+
+    @Test
+    void indexWritesDuringBackfill() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        TestEntity entity = new TestEntity();
+                        entity.setUserLevel(TestEnum.VIP);
+                        testMemoryDataAccess.create(entity);
+                    }
+                }));
+            }
+            testMemoryDataAccess.addIndex("userLevel");
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8001, testMemoryDataAccess.count(TestQuery.builder().userLevel(TestEnum.VIP).build()));
+    }
+
+    @Test
+    void sortTopLikeStableSort() {
+        List<Integer> list = Arrays.asList(5, 3, 8, 1, 3, 9, 2, 7, 3, 6);
+        List<Integer> top = MemoryDataAccess.sortTop(new ArrayList<>(list), Comparator.comparing(i -> i / 3), 4);
+
+        assertThat(top).containsExactly(1, 2, 5, 3);
+        assertThat(MemoryDataAccess.sortTop(new ArrayList<>(list), Comparator.naturalOrder(), 0)).isEmpty();
+    }
+
+    @Test
+    void pageWithSortInParallel() {
+        GlobalConfiguration.instance().setParallelScanThreshold(1);
+        try {
+            TestQuery testQuery = TestQuery.builder().usernameLike("name").sort("valid,desc;id,asc").pageNumber(1).pageSize(1).build();
+            assertThat(testMemoryDataAccess.query(testQuery)).extracting(TestEntity::getId).containsExactly(4);
+            assertEquals(4, testMemoryDataAccess.count(testQuery));
+        } finally {
+            GlobalConfiguration.instance().setParallelScanThreshold(10000);
+        }
+    }
+}
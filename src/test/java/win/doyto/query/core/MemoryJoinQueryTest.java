@@ -0,0 +1,82 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.*;
+import win.doyto.query.demo.module.role.RoleEntity;
+import win.doyto.query.service.JoinQueryService;
+import win.doyto.query.service.PageList;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static win.doyto.query.core.test.TestEntity.initUserEntities;
+
+/**
+ * MemoryJoinQueryTest
+ *
+ * @author f0rb on 2021-07-28
+ */
+class MemoryJoinQueryTest {
+
+    @BeforeEach
+    void setUp() {
+        new MemoryDataAccess<TestEntity, Integer, TestQuery>(TestEntity.class).batchInsert(initUserEntities());
+
+        MemoryDataAccess<RoleEntity, Long, PageQuery> roleDataAccess = new MemoryDataAccess<>(RoleEntity.class);
+        RoleEntity normal = new RoleEntity();
+        normal.setRoleName("测试");
+        normal.setRoleCode("TEST");
+        RoleEntity vip = new RoleEntity();
+        vip.setRoleName("高级");
+        vip.setRoleCode("VIP");
+        roleDataAccess.batchInsert(Arrays.asList(normal, vip));
+
+        new MemoryDataAccess<UserAndRoleEntity, Integer, PageQuery>(UserAndRoleEntity.class)
+                .batchInsert(UserAndRoleEntity.build(1, 1, 1, 2, 3, 1, 4, 1, 4, 2));
+    }
+
+    @Test
+    void joinByPlaceholderAndConditions() {
+        JoinQueryService<TestJoinView, TestJoinQuery> joinQueryService = JoinQueryService.inMemory(TestJoinView.class);
+        TestJoinQuery testJoinQuery = new TestJoinQuery();
+        testJoinQuery.setRoleName("高级");
+        testJoinQuery.setSort("username,desc");
+
+        PageList<TestJoinView> page = joinQueryService.page(testJoinQuery);
+        assertEquals(2, page.getTotal());
+        assertThat(page.getList()).extracting(TestJoinView::getUsername).containsExactly("username4", "username1");
+        assertThat(page.getList()).extracting(TestJoinView::getRoleName).containsOnly("高级");
+        assertEquals("高级", testJoinQuery.getRoleName());
+
+        testJoinQuery.setRoleNameLikeOrRoleCodeLike("VI");
+        testJoinQuery.setUserLevel(TestEnum.VIP);
+        assertEquals(0, joinQueryService.count(testJoinQuery));
+    }
+
+    @Test
+    void groupByWithHaving() {
+        TestJoinQuery testJoinQuery = new TestJoinQuery();
+        testJoinQuery.setSort("userCount,desc");
+
+        List<UserCountByRoleView> list = new MemoryJoinQuery<>(UserCountByRoleView.class).query(testJoinQuery);
+        assertThat(list).extracting(UserCountByRoleView::getRoleName).containsExactly("测试", "高级");
+        assertThat(list).extracting(UserCountByRoleView::getUserCount).containsExactly(3, 2);
+    }
+
+    @Test
+    void leftJoinKeepsUnmatchedRows() {
+        TestJoinQuery testJoinQuery = new TestJoinQuery();
+        testJoinQuery.setSort("username,asc");
+
+        MemoryJoinQuery<RoleCountByUserView> memoryJoinQuery = new MemoryJoinQuery<>(RoleCountByUserView.class);
+        List<RoleCountByUserView> list = memoryJoinQuery.query(testJoinQuery);
+        assertThat(list).extracting(RoleCountByUserView::getUsername).containsExactly("f0rb", "username2", "username3");
+        assertThat(list).extracting(RoleCountByUserView::getRoleCount).containsExactly(0L, 0L, 1L);
+
+        testJoinQuery.setUserLevel(TestEnum.VIP);
+        assertEquals(1, memoryJoinQuery.count(testJoinQuery));
+    }
+}
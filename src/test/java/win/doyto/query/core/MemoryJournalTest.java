@@ -0,0 +1,153 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+import win.doyto.query.core.test.TestQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static win.doyto.query.core.test.TestEntity.initUserEntities;
+
+/**
+ * MemoryJournalTest
+ *
+ * @author f0rb on 2021-07-27
+ */
+class MemoryJournalTest {
+
+    @TempDir
+    File directory;
+
+    private MemoryDataAccess<TestEntity, Integer, TestQuery> open() {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = new MemoryDataAccess<>(TestEntity.class);
+        dataAccess.enablePersistence(directory);
+        return dataAccess;
+    }
+
+    @Test
+    void replayLogAfterRestart() {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+        dataAccess.batchInsert(initUserEntities());
+        TestEntity patch = new TestEntity();
+        patch.setId(2);
+        patch.setUserLevel(TestEnum.VIP);
+        dataAccess.patch(patch);
+        TestEntity update = dataAccess.get(4);
+        update.setCreateTime(new Date(1000L));
+        dataAccess.update(update);
+        dataAccess.delete(3);
+
+        MemoryDataAccess<TestEntity, Integer, TestQuery> reopened = open();
+
+        assertThat(reopened.query(new TestQuery())).extracting(TestEntity::getId).containsExactlyInAnyOrder(1, 2, 4, 5);
+        TestEntity entity = reopened.get(2);
+        assertEquals("username2", entity.getUsername());
+        assertEquals(TestEnum.VIP, entity.getUserLevel());
+        assertEquals(true, entity.getValid());
+        assertEquals(new Date(1000L), reopened.get(4).getCreateTime());
+
+        TestEntity created = new TestEntity();
+        reopened.create(created);
+        assertEquals(6, created.getId());
+    }
+
+    @Test
+    void loadSnapshotAndLogTail() {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+        dataAccess.batchInsert(initUserEntities());
+        dataAccess.snapshot();
+        dataAccess.delete(1);
+        TestEntity update = dataAccess.get(5);
+        update.setMemo("updated");
+        dataAccess.update(update);
+
+        MemoryDataAccess<TestEntity, Integer, TestQuery> reopened = open();
+
+        assertEquals(4, reopened.count(new TestQuery()));
+        assertEquals("updated", reopened.get(5).getMemo());
+        assertEquals("f0rb", reopened.get(5).getUsername());
+    }
+
+    @Test
+    void truncateIncompleteLogTail() throws IOException {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+        dataAccess.batchInsert(initUserEntities());
+        File logFile = new File(directory, TestEntity.class.getName() + ".wal");
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+
+        MemoryDataAccess<TestEntity, Integer, TestQuery> reopened = open();
+        reopened.delete(5);
+
+        assertEquals(4, open().count(new TestQuery()));
+    }
+
+    @Test
+    void snapshotAcrossInterval() throws InterruptedException {
+        int interval = GlobalConfiguration.instance().getMemorySnapshotInterval();
+        GlobalConfiguration.instance().setMemorySnapshotInterval(3);
+        try {
+            MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+            for (int i = 0; i < 3; i++) {
+                dataAccess.create(new TestEntity());
+            }
+            awaitSnapshot();
+            assertEquals(3, open().count(new TestQuery()));
+
+            for (int i = 1; i <= 3; i++) {
+                dataAccess.delete(i);
+            }
+            awaitSnapshot();
+            assertEquals(0, open().count(new TestQuery()));
+        } finally {
+            GlobalConfiguration.instance().setMemorySnapshotInterval(interval);
+        }
+    }
+
+    @SuppressWarnings("java:S2925")
+    private void awaitSnapshot() throws InterruptedException {
+        File snapshot = new File(directory, TestEntity.class.getName() + ".snapshot");
+        File rotatedLog = new File(directory, TestEntity.class.getName() + ".wal.old");
+        for (int i = 0; i < 200 && (!snapshot.exists() || rotatedLog.exists()); i++) {
+            Thread.sleep(5L);
+        }
+        assertTrue(snapshot.exists());
+        assertFalse(rotatedLog.exists());
+    }
+
+    @Test
+    void replayRotatedLogBeforeSnapshotWritten() {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+        dataAccess.batchInsert(initUserEntities());
+        dataAccess.snapshot();
+        dataAccess.delete(1);
+        File logFile = new File(directory, TestEntity.class.getName() + ".wal");
+        assertTrue(logFile.renameTo(new File(directory, TestEntity.class.getName() + ".wal.old")));
+
+        MemoryDataAccess<TestEntity, Integer, TestQuery> reopened = open();
+        reopened.delete(2);
+
+        assertThat(open().queryIds(new TestQuery())).containsExactlyInAnyOrder(3, 4, 5);
+    }
+
+    @Test
+    void disablePersistence() {
+        MemoryDataAccess<TestEntity, Integer, TestQuery> dataAccess = open();
+        dataAccess.batchInsert(initUserEntities());
+        dataAccess.disablePersistence();
+        dataAccess.delete(1);
+
+        assertEquals(5, open().count(new TestQuery()));
+        assertThrows(IllegalStateException.class, dataAccess::snapshot);
+    }
+}
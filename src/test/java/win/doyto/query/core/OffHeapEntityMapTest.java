@@ -0,0 +1,78 @@
+package win.doyto.query.core;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.test.TestEntity;
+import win.doyto.query.core.test.TestEnum;
+import win.doyto.query.entity.Persistable;
+
+import java.util.Date;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OffHeapEntityMapTest
+ *
+ * @author f0rb on 2021-07-28
+ */
+class OffHeapEntityMapTest {
+
+    @Test
+    void rewriteAndRelocateRecords() {
+        OffHeapEntityMap<Integer, TestEntity> entityMap = new OffHeapEntityMap<>(TestEntity.class);
+        for (TestEntity testEntity : TestEntity.initUserEntities()) {
+            entityMap.put(testEntity.getId(), testEntity);
+        }
+
+        TestEntity shorter = entityMap.get(5);
+        shorter.setMemo(null);
+        assertEquals("master", entityMap.put(5, shorter).getMemo());
+        TestEntity longer = entityMap.get(1);
+        longer.setMemo("a memo longer than the original record");
+        longer.setCreateTime(new Date(1000L));
+        entityMap.put(1, longer);
+
+        assertNull(entityMap.get(5).getMemo());
+        assertEquals(TestEnum.VIP, entityMap.get(5).getUserLevel());
+        assertEquals(new Date(1000L), entityMap.get(1).getCreateTime());
+        assertNotSame(entityMap.get(1), entityMap.get(1));
+
+        assertEquals("username2", entityMap.remove(2).getUsername());
+        assertNull(entityMap.remove(2));
+        assertFalse(entityMap.containsKey(2));
+        assertThat(entityMap.values().stream().map(TestEntity::getId).collect(Collectors.toList())).containsExactly(1, 3, 4, 5);
+    }
+
+    @Test
+    void compactReleasedRecords() {
+        OffHeapEntityMap<Long, LongEntity> entityMap = new OffHeapEntityMap<>(LongEntity.class);
+        StringBuilder name = new StringBuilder();
+        for (long id = 0; id < 2000; id++) {
+            name.append('x');
+            entityMap.put(id % 10, new LongEntity(id % 10, name.toString()));
+        }
+
+        assertEquals(10, entityMap.size());
+        assertEquals(1991, entityMap.get(0L).getName().length());
+        assertEquals(2000, entityMap.get(9L).getName().length());
+        assertEquals(10, entityMap.values().parallelStream().count());
+    }
+
+    @Getter
+    @Setter
+    private static class LongEntity implements Persistable<Long> {
+        private Long id;
+        private String name;
+
+        LongEntity() {
+        }
+
+        LongEntity(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
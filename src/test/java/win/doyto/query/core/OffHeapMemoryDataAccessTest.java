@@ -0,0 +1,21 @@
+package win.doyto.query.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import win.doyto.query.core.test.TestEntity;
+
+import static win.doyto.query.core.test.TestEntity.initUserEntities;
+
+/**
+ * Run the tests of MemoryDataAccess with the entities stored off the heap.
+ *
+ * @author f0rb on 2021-07-28
+ */
+class OffHeapMemoryDataAccessTest extends MemoryDataAccessTest {
+
+    @BeforeEach
+    @Override
+    void setUp() {
+        testMemoryDataAccess = new MemoryDataAccess<>(TestEntity.class, true);
+        testMemoryDataAccess.batchInsert(initUserEntities());
+    }
+}
@@ -1,17 +1,19 @@
 package win.doyto.query.core;
 
+import lombok.Getter;
+import lombok.Setter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.config.MySQLDialect;
 import win.doyto.query.core.test.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import javax.persistence.Column;
+import javax.persistence.Id;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * QueryBuilderTest
@@ -53,6 +55,63 @@ class QueryBuilderTest {
                      testQueryBuilder.buildSelectAndArgs(testQuery, argList));
     }
 
+    @Test
+    void buildSelectWithKeysetPaging() {
+        TestQuery testQuery = TestQuery.builder().username("test").build();
+        testQuery.setPageNumber(3).setPageSize(10).setSort("valid,desc;createTime,desc").setAfter("");
+        assertEquals("SELECT * FROM user WHERE username = ? ORDER BY valid desc, createTime desc, id asc LIMIT 10 OFFSET 0",
+                     testQueryBuilder.buildSelectAndArgs(testQuery, argList));
+
+        TestEntity last = new TestEntity();
+        last.setId(5);
+        last.setValid(true);
+        last.setCreateTime(new Date(1627000000000L));
+        testQuery.setAfter(KeysetCursor.of(testQuery, "id").encode(last));
+        argList.clear();
+        assertEquals("SELECT * FROM user WHERE username = ? AND (valid < ? OR valid = ? AND (createTime < ? OR createTime = ? AND id > ?)) " +
+                             "ORDER BY valid desc, createTime desc, id asc LIMIT 10 OFFSET 0",
+                     testQueryBuilder.buildSelectAndArgs(testQuery, argList));
+        assertThat(argList).containsExactly("test", true, true, new java.sql.Timestamp(1627000000000L), new java.sql.Timestamp(1627000000000L), 5);
+
+        SqlAndArgs sqlAndArgs = testQueryBuilder.buildCountAndArgs(testQuery);
+        assertEquals("SELECT count(*) FROM user WHERE username = ?", sqlAndArgs.getSql());
+    }
+
+    @Test
+    void buildSelectWithKeysetPagingInSameDirection() {
+        TestQuery testQuery = TestQuery.builder().build();
+        testQuery.setPageSize(10).setSort("username,asc");
+
+        TestEntity last = new TestEntity();
+        last.setId(5);
+        last.setUsername("f0rb");
+        testQuery.setAfter(KeysetCursor.of(testQuery.setAfter(""), "id").encode(last));
+        assertEquals("SELECT * FROM user WHERE (username, id) > (?, ?) ORDER BY username asc, id asc LIMIT 10 OFFSET 0",
+                     testQueryBuilder.buildSelectAndArgs(testQuery, argList));
+        assertThat(argList).containsExactly("f0rb", 5);
+    }
+
+    @Test
+    void buildSelectWithKeysetPagingByIdColumn() {
+        TestQuery testQuery = TestQuery.builder().build();
+        testQuery.setPageSize(1).setSort("user_id,desc").setAfter("");
+
+        UserIdEntity last = new UserIdEntity();
+        last.setId(5);
+        testQuery.setAfter(KeysetCursor.next(Collections.singletonList(last), testQuery));
+        assertEquals("SELECT * FROM user WHERE user_id < ? ORDER BY user_id desc LIMIT 1 OFFSET 0",
+                     new QueryBuilder("user", "user_id").buildSelectAndArgs(testQuery, argList));
+        assertThat(argList).containsExactly(5);
+    }
+
+    @Getter
+    @Setter
+    private static class UserIdEntity {
+        @Id
+        @Column(name = "user_id")
+        private Integer id;
+    }
+
     @Test
     void buildSelectWithCustomWhere() {
         TestQuery testQuery = TestQuery.builder().account("test").build();
@@ -412,4 +471,24 @@ class QueryBuilderTest {
         assertEquals("SELECT locale_zh FROM t_dynamic_f0rb_i18n WHERE id = ?", sqlAndArgs.getSql());
         assertThat(sqlAndArgs.getArgs()).containsExactly(2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void buildSelectByIds() {
+        SqlAndArgs sqlAndArgs = testQueryBuilder.buildSelectByIds(Arrays.asList(1, 3, 5), "username", "id");
+
+        assertEquals("SELECT username, id FROM user WHERE id IN (?, ?, ?)", sqlAndArgs.getSql());
+        assertThat(sqlAndArgs.getArgs()).containsExactly(1, 3, 5);
+        assertTrue(testQueryBuilder.supportSelectByIds("username", "id"));
+        assertFalse(dynamicQueryBuilder.supportSelectByIds("locale_${locale}"));
+    }
+
+    @Test
+    void buildApproximateCountOnlyWithoutConditions() {
+        assertNull(testQueryBuilder.buildApproximateCountAndArgs(TestQuery.builder().build()));
+
+        GlobalConfiguration.instance().setDialect(new MySQLDialect());
+        SqlAndArgs sqlAndArgs = testQueryBuilder.buildApproximateCountAndArgs(TestQuery.builder().pageSize(5).build());
+        assertThat(sqlAndArgs.getArgs()).containsExactly("user");
+        assertNull(testQueryBuilder.buildApproximateCountAndArgs(TestQuery.builder().username("test").build()));
+    }
+}
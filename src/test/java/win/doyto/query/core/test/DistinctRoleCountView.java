@@ -0,0 +1,29 @@
+package win.doyto.query.core.test;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.annotation.Joins;
+
+import javax.persistence.Column;
+import javax.persistence.Table;
+
+/**
+ * DistinctRoleCountView
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+@Table(name = "user u")
+@Joins(value = {
+    @Joins.Join("left join t_user_and_role ur on ur.userId = u.id and ur.valid is true")
+}, groupBy = "u.username")
+public class DistinctRoleCountView {
+
+    @Column(name = "u.username")
+    private String username;
+
+    @Column(name = "count(DISTINCT ur.roleId)")
+    private Long roleCount;
+
+}
@@ -0,0 +1,26 @@
+package win.doyto.query.core.test;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.annotation.Joins;
+
+import javax.persistence.Column;
+import javax.persistence.Table;
+
+/**
+ * RoleCountByUserView
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+@Table(name = "user u")
+@Joins(value = @Joins.Join("left join t_user_and_role ur on ur.userId = u.id"), groupBy = "u.id", having = "count(ur.roleId) < 2")
+public class RoleCountByUserView {
+
+    private String username;
+
+    @Column(name = "count(ur.roleId)")
+    private Long roleCount;
+
+}
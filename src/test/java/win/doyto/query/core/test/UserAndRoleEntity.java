@@ -0,0 +1,39 @@
+package win.doyto.query.core.test;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.entity.AbstractPersistable;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+/**
+ * UserAndRoleEntity
+ *
+ * @author f0rb on 2021-07-28
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "t_user_and_role")
+public class UserAndRoleEntity extends AbstractPersistable<Integer> {
+
+    private Integer userId;
+    private Integer roleId;
+
+    /**
+     * @param pairs the pairs of the user id and the role id
+     */
+    public static List<UserAndRoleEntity> build(int... pairs) {
+        List<UserAndRoleEntity> entities = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            UserAndRoleEntity entity = new UserAndRoleEntity();
+            entity.setUserId(pairs[i]);
+            entity.setRoleId(pairs[i + 1]);
+            entities.add(entity);
+        }
+        return entities;
+    }
+}
@@ -3,14 +3,21 @@ package win.doyto.query.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import win.doyto.query.cache.CacheWrapper;
+import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.core.IdWrapper;
 import win.doyto.query.core.test.TestEntity;
 import win.doyto.query.core.test.TestQuery;
 import win.doyto.query.core.test.TestService;
 import win.doyto.query.entity.EntityAspect;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static win.doyto.query.core.test.TestEntity.initUserEntities;
@@ -43,6 +50,22 @@ class AbstractDynamicServiceTest {
         verify(testService.dataAccess, times(1)).get(IdWrapper.build(1));
     }
 
+    @Test
+    void getByIdsFromCacheAndDataAccess() throws InterruptedException {
+        testService.setCacheManager(new ConcurrentMapCacheManager());
+        testService.setCacheList("");
+        testService.get(2);
+        awaitCached(testService.entityCacheWrapper, 1);
+
+        List<TestEntity> entities = testService.get(Arrays.asList(3, 2, 9, 1));
+        assertThat(entities).extracting(TestEntity::getId).containsExactly(3, 2, 1);
+        verify(testService.dataAccess, times(1)).get(Arrays.asList(3, 9, 1));
+
+        awaitCached(testService.entityCacheWrapper, 4);
+        assertEquals(3, testService.get(Arrays.asList(1, 2, 3, 9)).size());
+        verify(testService.dataAccess, times(1)).get(anyCollection());
+    }
+
     @Test
     void supportEvictCache() {
         testService.setCacheManager(new ConcurrentMapCacheManager());
@@ -123,4 +146,112 @@ class AbstractDynamicServiceTest {
         assertEquals(0, (int) testQuery.getPageNumber());
         assertEquals(10, (int) testQuery.getPageSize());
     }
-}
\ No newline at end of file
+
+    @Test
+    void pageWithKeysetCursor() {
+        TestQuery testQuery = TestQuery.builder().pageSize(3).after("").build();
+        PageList<TestEntity> pageList = testService.page(testQuery, e -> e);
+        assertEquals(5, pageList.getTotal());
+        assertNotNull(pageList.getNext());
+
+        testQuery.setAfter(pageList.getNext());
+        pageList = testService.page(testQuery);
+        assertEquals(2, pageList.getList().size());
+        assertEquals(5, pageList.getTotal());
+        assertNull(pageList.getNext());
+    }
+
+    @Test
+    void pageWithoutCountForShortPage() {
+        TestQuery testQuery = TestQuery.builder().usernameLike("username").pageSize(3).build();
+        assertEquals(4, testService.page(testQuery).getTotal());
+
+        testService.setCacheManager(new ConcurrentMapCacheManager());
+        testService.setCacheList("");
+        testQuery.setPageNumber(1);
+        PageList<TestEntity> pageList = testService.page(testQuery);
+        assertEquals(1, pageList.getList().size());
+        assertEquals(4, pageList.getTotal());
+        verify(testService.dataAccess, never()).count(any());
+
+        testQuery.setPageNumber(0);
+        assertEquals(4, testService.page(testQuery).getTotal());
+        verify(testService.dataAccess, times(1)).count(any());
+    }
+
+    @Test
+    void pageCountedConcurrently() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        GlobalConfiguration.instance().setPageCountExecutor(executor);
+        try {
+            TestQuery testQuery = TestQuery.builder().pageSize(2).build();
+            PageList<TestEntity> pageList = testService.page(testQuery);
+            assertEquals(2, pageList.getList().size());
+            assertEquals(5, pageList.getTotal());
+            verify(testService.dataAccess, times(1)).count(testQuery);
+        } finally {
+            GlobalConfiguration.instance().setPageCountExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void supportCountCache() throws InterruptedException {
+        testService.setCacheManager(new ConcurrentMapCacheManager());
+        testService.setCacheList("");
+        TestQuery testQuery = TestQuery.builder().usernameLike("username").build();
+
+        assertEquals(4, testService.count(testQuery));
+        awaitCached(testService.countCacheWrapper, 1);
+        testQuery.setPageNumber(2);
+        assertEquals(4, testService.count(testQuery));
+        verify(testService.dataAccess, times(1)).count(any());
+
+        testService.delete(1);
+        assertEquals(3, testService.count(testQuery));
+        verify(testService.dataAccess, times(2)).count(any());
+    }
+
+    @SuppressWarnings("java:S2925")
+    private static void awaitCached(CacheWrapper<?> cacheWrapper, int size) throws InterruptedException {
+        Map<?, ?> cache = (Map<?, ?>) cacheWrapper.getCache().getNativeCache();
+        for (int i = 0; i < 100 && cache.size() < size; i++) {
+            Thread.sleep(5L);
+        }
+    }
+
+    @Test
+    void evictQueryCacheByIdAndChangedProperties() throws InterruptedException {
+        GlobalConfiguration.instance().setFineGrainedCacheEviction(true);
+        try {
+            testService.setCacheManager(new ConcurrentMapCacheManager());
+            testService.setCacheList("");
+            TestQuery likeQuery = TestQuery.builder().usernameLike("username").build();
+            TestQuery validQuery = TestQuery.builder().valid(true).build();
+            testService.query(likeQuery);
+            testService.query(validQuery);
+            awaitCached(testService.queryCacheWrapper, 2);
+
+            TestEntity patch = new TestEntity();
+            patch.setId(5);
+            patch.setMemo("memo");
+            testService.patch(patch);
+            testService.query(likeQuery);
+            testService.query(validQuery);
+            verify(testService.dataAccess, times(1)).query(likeQuery);
+            verify(testService.dataAccess, times(2)).query(validQuery);
+            awaitCached(testService.queryCacheWrapper, 2);
+
+            patch.setValid(false);
+            testService.patch(patch);
+            testService.query(likeQuery);
+            verify(testService.dataAccess, times(1)).query(likeQuery);
+
+            testService.delete(1);
+            assertEquals(3, testService.query(likeQuery).size());
+            verify(testService.dataAccess, times(2)).query(likeQuery);
+        } finally {
+            GlobalConfiguration.instance().setFineGrainedCacheEviction(false);
+        }
+    }
+}